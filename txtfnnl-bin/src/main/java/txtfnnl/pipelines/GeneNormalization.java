@@ -263,15 +263,18 @@ class GeneNormalization extends Pipeline {
     try {
       // 0:tika, 1:splitter, 2:tokenizer, 3:linnaeus, 4:gazetteer, 5:filter, 6: mapIDs, 7: rank
       final Pipeline gn = new Pipeline(8);
+      gn.setPhaseBoundary(2); // preprocessing: tika, splitter, tokenizer
       gn.setReader(cmd);
       gn.configureTika(cmd);
-      gn.set(1, Pipeline.textEngine(Pipeline.getSentenceAnnotator(cmd)));
-      if (geniaDir == null) {
-        gn.set(2, Pipeline.textEngine(TokenAnnotator.configure().create()));
-      } else {
-        GeniaTaggerAnnotator.Builder tagger = GeniaTaggerAnnotator.configure();
-        tagger.setDirectory(geniaDir);
-        gn.set(2, Pipeline.textEngine(tagger.create()));
+      if (!gn.isSkipped(2)) {
+        gn.set(1, Pipeline.textEngine(Pipeline.getSentenceAnnotator(cmd)));
+        if (geniaDir == null) {
+          gn.set(2, Pipeline.textEngine(TokenAnnotator.configure().create()));
+        } else {
+          GeniaTaggerAnnotator.Builder tagger = GeniaTaggerAnnotator.configure();
+          tagger.setDirectory(geniaDir);
+          gn.set(2, Pipeline.textEngine(tagger.create()));
+        }
       }
       gn.set(3, Pipeline.textEngine(linnaeus.create()));
       gn.set(4, Pipeline.textEngine(geneAnnotator.create()));
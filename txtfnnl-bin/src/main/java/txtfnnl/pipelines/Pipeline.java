@@ -22,11 +22,15 @@ import txtfnnl.tika.uima.TikaAnnotator;
 import txtfnnl.tika.uima.TikaExtractor;
 import txtfnnl.uima.Views;
 import txtfnnl.uima.analysis_component.opennlp.SentenceAnnotator;
+import txtfnnl.uima.collection.ArchiveReader;
+import txtfnnl.uima.collection.BinaryCasReader;
+import txtfnnl.uima.collection.BinaryCasWriter;
 import txtfnnl.uima.collection.DirectoryReader;
 import txtfnnl.uima.collection.FileReader;
 import txtfnnl.uima.collection.OutputWriter;
 import txtfnnl.uima.resource.AuthenticationResourceBuilder;
 import txtfnnl.uima.resource.JdbcConnectionResourceImpl;
+import txtfnnl.uima.resource.JdbcResponseCacheResource;
 import txtfnnl.utils.IOUtils;
 
 import java.io.File;
@@ -50,6 +54,12 @@ import java.util.logging.*;
  * <p/>
  * This will generate a simple pipeline that reads all files in the CWD ("user.dir"), extracts their
  * content with Tika, and writes that content to STDOUT.
+ * <p/>
+ * A pipeline can be split into two <b>phases</b> at a {@link #setPhaseBoundary(int) boundary}
+ * engine: A run can {@link #dumpPhase(File) dump} the CASes (in binary form) after that engine,
+ * and a later run can {@link #resumePhase(File) resume} from those dumps, skipping all engines up
+ * to and including the boundary. This way, (expensive) preprocessing only has to be done once
+ * while the downstream engines change.
  *
  * @author Florian Leitner
  */
@@ -57,12 +67,24 @@ public
 class Pipeline {
   private CollectionReader collectionReader;
   private AnalysisEngine[] pipeline;
+  /** The maximum size of the shards the CASes are dumped to at the phase boundary. */
+  static final int PHASE_SHARD_SIZE = 1 << 26;
+  /** The index of the last engine of the first phase (or -1 if the pipeline is not split). */
+  private int phaseBoundary = -1;
+  /** The directory to dump the CASes to at the phase boundary (or <code>null</code>). */
+  private File dumpDirectory = null;
+  /** The engine dumping the CASes at the phase boundary (or <code>null</code>). */
+  private AnalysisEngine dumpWriter = null;
+  /** <code>true</code> if resuming from dumped CASes after the phase boundary. */
+  private boolean resuming = false;
 
   /**
    * Add default command-line options for any pipeline. The added options are: <ul>
-   * <li><code>R</code>, <code>recursive</code></li> <li><code>mime</code></li> <li><code>h</code>,
-   * <code>help</code></li> <li><code>i</code>, <code>info</code></li> <li><code>q</code>,
-   * <code>quiet</code></li> <li><code>v</code>, <code>verbose</code></li> </ul>
+   * <li><code>R</code>, <code>recursive</code></li> <li><code>A</code>, <code>archives</code></li>
+   * <li><code>archivethreads</code></li> <li><code>prefetch</code></li> <li><code>mime</code></li>
+   * <li><code>phase</code></li> <li><code>dumpphase</code></li> <li><code>resumephase</code></li>
+   * <li><code>h</code>, <code>help</code></li> <li><code>i</code>, <code>info</code></li>
+   * <li><code>q</code>, <code>quiet</code></li> <li><code>v</code>, <code>verbose</code></li> </ul>
    *
    * @param opts to expand
    */
@@ -72,8 +94,17 @@ class Pipeline {
     opts.addOption(
         "R", "recursive", false, "include files in all sub-directories of input directory [false]"
     );
+    opts.addOption("A", "archives", false, "read the entries of tar, zip, or gzip input files");
+    opts.addOption("archivethreads", true, "number of archives to read in parallel [1]");
+    opts.addOption("prefetch", true, "number of input files to read ahead [0]");
     opts.addOption("mime", true,
                    "define one MIME type for all input files [auto-detect]");
+    // Phase options
+    opts.addOption("phase", true, "index of the last engine of the first phase [pipeline]");
+    opts.addOption("dumpphase", true, "dump the CASes to this directory after the first phase");
+    opts.addOption(
+        "resumephase", true, "skip the first phase and read the CASes dumped to this directory"
+    );
     // Logger options
     opts.addOption("h", "help", false, "show this help document");
     opts.addOption("i", "info", false, "log INFO-level messages [WARN]");
@@ -84,7 +115,9 @@ class Pipeline {
   /**
    * Add standard output options for any pipeline. The added options are: <ul> <li><code>E</code>,
    * <code>output-encoding</code></li> <li><code>o</code>, <code>output-directory</code></li>
-   * <li><code>r</code>, <code>replace-files</code></li> </ul>
+   * <li><code>r</code>, <code>replace-files</code></li> <li><code>asyncoutput</code></li>
+   * <li><code>shardsize</code></li> <li><code>sharddocs</code></li>
+   * <li><code>gzipshards</code></li> </ul>
    *
    * @param opts to expand
    */
@@ -100,12 +133,16 @@ class Pipeline {
     opts.addOption(
         "r", "replace-files", false, "replace files in the output directory if they exist [false]"
     );
+    opts.addOption("asyncoutput", false, "write the output on a background thread [false]");
+    opts.addOption("shardsize", true, "append the output to shard files of this size in MB [off]");
+    opts.addOption("sharddocs", true, "append the output to shard files of N documents [off]");
+    opts.addOption("gzipshards", false, "compress the documents in the shard files [false]");
   }
 
   /**
    * Add Tika command-line options for any pipeline. The added options are <ul> <li><code>e</code>,
    * <code>input-encoding</code></li> <li><code>x</code>, <code>xml-handler</code></li>
-   * <li><code>normalgreek</code></li> </ul>
+   * <li><code>normalgreek</code></li> <li><code>extractioncache</code></li> </ul>
    *
    * @param opts to expand
    */
@@ -117,12 +154,16 @@ class Pipeline {
         "x", "xml-handler", true,
         "select XML handler: 'default' (Tika), 'clean' (skips whitespaces), 'pmc', or 'elsevier'"
     );
+    opts.addOption(
+        "extractioncache", true, "cache extracted content in this H2 database file [none]"
+    );
   }
 
   /**
    * Add OpenNLP sentence segmentation command-line options for any pipeline. The added options are
    * <ul> <li><code>s</code>, <code>split-anywhere</code></li> <li><code>S</code>,
-   * <code>single-newlines</code></li> <li><code>J</code>, <code>sentence-model</code></li> </ul>
+   * <code>single-newlines</code></li> <li><code>sentenceperline</code></li> <li><code>J</code>,
+   * <code>sentence-model</code></li> </ul>
    *
    * @param opts to expand
    */
@@ -130,6 +171,7 @@ class Pipeline {
   void addSentenceAnnotatorOptions(Options opts) {
     opts.addOption("S", "split-anywhere", false, "do not use newlines for splitting");
     opts.addOption("s", "single-newlines", false, "split sentences on single newlines");
+    opts.addOption("sentenceperline", false, "use each line as a sentence (no detection)");
     opts.addOption("sentencemodel", true, "set a different model file (default: en)");
   }
 
@@ -267,6 +309,16 @@ class Pipeline {
     if (Pipeline.outputDirectory(cmd) != null)
       writer.setOutputDirectory(Pipeline.outputDirectory(cmd));
     if (Pipeline.outputOverwriteFiles(cmd)) writer.overwriteFiles();
+    if (cmd.hasOption("asyncoutput")) writer.asyncOutput();
+    if (cmd.hasOption("shardsize") || cmd.hasOption("sharddocs")) {
+      final int megabytes = Integer.parseInt(cmd.getOptionValue("shardsize", "0"));
+      if (megabytes < 0 || megabytes >= 2048) {
+        System.err.println("shard size must be between 0 and 2047 MB");
+        System.exit(1); // == EXIT ==
+      }
+      writer.shardOutput(megabytes << 20, Integer.parseInt(cmd.getOptionValue("sharddocs", "0")));
+      if (cmd.hasOption("gzipshards")) writer.compressShards();
+    }
     return writer;
   }
 
@@ -287,7 +339,8 @@ class Pipeline {
   AnalysisEngineDescription getSentenceAnnotator(CommandLine cmd) throws
       ResourceInitializationException {
     SentenceAnnotator.Builder b = SentenceAnnotator.configure();
-    if (cmd.hasOption('s')) b.splitOnSingleNewlines();
+    if (cmd.hasOption("sentenceperline")) b.splitLineByLine();
+    else if (cmd.hasOption('s')) b.splitOnSingleNewlines();
     else if (cmd.hasOption('S')) b.splitIgnoringNewlines();
     else b.splitOnSuccessiveNewlines();
     if (cmd.hasOption("sentencemodel"))
@@ -546,10 +599,22 @@ class Pipeline {
    */
   public
   CollectionReader setReader(CommandLine cmd) throws IOException, UIMAException {
+    setPhases(cmd);
+    if (resuming) return collectionReader;
     final String[] inputFiles = cmd.getArgs();
     final boolean recursive = cmd.hasOption('R');
     final String mimeType = cmd.getOptionValue("mime");
     File inputDirectory = null;
+    if (cmd.hasOption('A')) {
+      for (final String fn : inputFiles) {
+        final File tmp = new File(fn);
+        if (!tmp.canRead() || !tmp.isFile()) throwNotReadable(fn);
+      }
+      final ArchiveReader.Builder b = ArchiveReader.configure(inputFiles).setMimeType(mimeType);
+      if (cmd.hasOption("archivethreads"))
+        b.setThreads(Integer.parseInt(cmd.getOptionValue("archivethreads")));
+      return setReader(b.create());
+    }
     // check input path arguments
     if (inputFiles.length > 0) {
       if (inputFiles.length == 1) {
@@ -573,10 +638,43 @@ class Pipeline {
       // if no arguments were given, use the current directory as input
       inputDirectory = new File(System.getProperty("user.dir"));
     }
+    if (cmd.hasOption("prefetch")) {
+      final int prefetch = Integer.parseInt(cmd.getOptionValue("prefetch"));
+      if (inputDirectory == null) {
+        return setReader(FileReader.configure(inputFiles).setMimeType(mimeType)
+            .prefetch(prefetch).create());
+      } else {
+        final DirectoryReader.Builder b = DirectoryReader.configure(inputDirectory)
+            .setMimeType(mimeType).prefetch(prefetch);
+        if (recursive) b.recurseSubdirectories();
+        return setReader(b.create());
+      }
+    }
     if (inputDirectory == null) return setReader(inputFiles, mimeType); // directory reader
     else return setReader(inputDirectory, mimeType, recursive); // file reader
   }
 
+  /**
+   * Configure the pipeline phases using the command line options: the phase boundary, and
+   * dumping or resuming the CASes at that boundary.
+   * <p/>
+   * Does a {@link System#exit(int)} with value <code>1</code> if dumping or resuming is requested
+   * without a phase boundary.
+   *
+   * @throws IOException if the dump directory cannot be used
+   * @throws UIMAException if the dump reader cannot be configured
+   */
+  public
+  void setPhases(CommandLine cmd) throws IOException, UIMAException {
+    if (cmd.hasOption("phase")) setPhaseBoundary(Integer.parseInt(cmd.getOptionValue("phase")));
+    if ((cmd.hasOption("dumpphase") || cmd.hasOption("resumephase")) && phaseBoundary == -1) {
+      System.err.println("this pipeline has no default phase boundary; use -phase");
+      System.exit(1); // == EXIT ==
+    }
+    if (cmd.hasOption("dumpphase")) dumpPhase(new File(cmd.getOptionValue("dumpphase")));
+    if (cmd.hasOption("resumephase")) resumePhase(new File(cmd.getOptionValue("resumephase")));
+  }
+
   /** Helper method to throw similar errors when a file or directory path cannot be read. */
   protected
   void throwNotReadable(final String path) throws IOException {
@@ -739,11 +837,27 @@ class Pipeline {
   public
   AnalysisEngine configureTika(int idx, boolean simple, String encoding, boolean normalizeGreek,
                                XmlHandler handler) throws UIMAException, IOException {
+    return configureTika(idx, simple, encoding, normalizeGreek, handler, null);
+  }
+
+  /**
+   * Configure the Tika extraction system for the pipeline, caching the extraction results.
+   *
+   * @param extractionCache an optional {@link txtfnnl.uima.resource.ResponseCacheResource} for the
+   *                        extraction results; may be <code>null</code>
+   *
+   * @see Pipeline#configureTika(int, boolean, String, boolean, XmlHandler)
+   */
+  public
+  AnalysisEngine configureTika(int idx, boolean simple, String encoding, boolean normalizeGreek,
+                               XmlHandler handler, ExternalResourceDescription extractionCache)
+      throws UIMAException, IOException {
     if (pipeline.length < 2)
       throw new IllegalStateException("trying to configure a Tika AE on a pipeline of length 1");
     if (idx + 1 == pipeline.length) throw new IllegalStateException(
         "trying to configure a Tike AE as last element of a pipeline"
     );
+    if (isSkipped(idx)) return pipeline[idx]; // resuming after the Tika AE
     AbstractTikaAnnotator.Builder tikaConfig =
         (simple) ? TikaExtractor.configure() : TikaAnnotator.configure();
     switch (handler) {
@@ -762,6 +876,7 @@ class Pipeline {
     }
     tikaConfig.setEncoding(encoding);
     if (normalizeGreek) tikaConfig.normalizeGreek();
+    if (extractionCache != null) tikaConfig.setExtractionCache(extractionCache);
     return set(idx, AnalysisEngineFactory.createPrimitive(tikaConfig.create()));
   }
 
@@ -792,7 +907,11 @@ class Pipeline {
     final XmlHandler handler = Pipeline.getTikaXmlHandler(cmd);
     final String encoding = cmd.getOptionValue('e');
     final boolean normalizeGreek = cmd.hasOption("normalgreek");
-    return configureTika(idx, simple, encoding, normalizeGreek, handler);
+    ExternalResourceDescription extractionCache = null;
+    if (cmd.hasOption("extractioncache")) extractionCache = JdbcResponseCacheResource.configure(
+        new File(cmd.getOptionValue("extractioncache")).getAbsolutePath()
+    ).setTableName("extractions").create();
+    return configureTika(idx, simple, encoding, normalizeGreek, handler, extractionCache);
   }
 
   /**
@@ -873,24 +992,113 @@ class Pipeline {
     return pipeline.length - 1;
   }
 
+  // PHASES
+
+  /**
+   * Split the pipeline into two phases after the engine at the given index.
+   *
+   * @param lastEngine the index of the last engine of the first phase
+   */
+  public
+  void setPhaseBoundary(int lastEngine) {
+    if (lastEngine < 0 || lastEngine >= size())
+      throw new IllegalArgumentException("no engine at phase boundary " + lastEngine);
+    phaseBoundary = lastEngine;
+  }
+
+  /** Return the index of the last engine of the first phase (or -1 if not split). */
+  public
+  int getPhaseBoundary() {
+    return phaseBoundary;
+  }
+
+  /**
+   * Dump the CASes in binary form to a directory at the phase boundary, while running the whole
+   * pipeline.
+   *
+   * @param directory to dump the CASes to; must not contain any dumped CASes yet
+   *
+   * @throws IOException if the directory cannot be created or already contains dumped CASes
+   */
+  public
+  void dumpPhase(File directory) throws IOException {
+    if (phaseBoundary == -1) throw new IllegalStateException("no phase boundary set");
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException("cannot create dump directory '" + directory + "'");
+    for (final String name : directory.list())
+      if (name.contains("." + BinaryCasWriter.EXTENSION))
+        throw new IOException("dump directory '" + directory + "' already contains CASes");
+    dumpDirectory = directory;
+  }
+
+  /**
+   * Resume the pipeline after the phase boundary, reading the CASes dumped to a directory.
+   * <p/>
+   * This replaces the collection reader; the engines of the first phase are not run and need not
+   * be set (see {@link #isSkipped(int)}).
+   *
+   * @param directory containing the dumped CASes
+   *
+   * @throws UIMAException if the dump reader cannot be configured
+   */
+  public
+  void resumePhase(File directory) throws UIMAException, IOException {
+    if (phaseBoundary == -1) throw new IllegalStateException("no phase boundary set");
+    if (!directory.isDirectory() || !directory.canRead()) throwNotReadable(directory.getPath());
+    setReader(BinaryCasReader.configure(new String[] { directory.getPath() }).create());
+    resuming = true;
+  }
+
+  /**
+   * <code>true</code> if the engine at the given index is not run because the pipeline resumes
+   * after the phase boundary. Pipelines can use this to avoid setting up expensive engines.
+   */
+  public
+  boolean isSkipped(int index) {
+    return resuming && index <= phaseBoundary;
+  }
+
   // GENERAL
 
   /**
    * <code>true</code> if all AEs, the CAS consumer, and the collection reader are set (i.e., are
-   * not <code>null</code>).
+   * not <code>null</code>), ignoring skipped engines.
    */
   public
   boolean isReady() {
     if (collectionReader == null) return false;
-    for (final AnalysisEngine engine : pipeline)
-      if (engine == null) return false;
+    for (int i = 0; i < pipeline.length; ++i)
+      if (pipeline[i] == null && !isSkipped(i)) return false;
     return true;
   }
 
   /** Run the pipeline. */
   public
   void run() throws UIMAException, IOException {
-    SimplePipeline.runPipeline(collectionReader, pipeline);
+    SimplePipeline.runPipeline(collectionReader, engines());
+  }
+
+  /** Return the engines to run wrt. the pipeline phases. */
+  private
+  AnalysisEngine[] engines() throws ResourceInitializationException {
+    if (resuming) {
+      final AnalysisEngine[] engines = new AnalysisEngine[pipeline.length - phaseBoundary - 1];
+      System.arraycopy(pipeline, phaseBoundary + 1, engines, 0, engines.length);
+      return engines;
+    } else if (dumpDirectory != null) {
+      if (dumpWriter == null) dumpWriter = Pipeline.multiviewEngine(
+          BinaryCasWriter.configure(dumpDirectory).shardOutput(PHASE_SHARD_SIZE, 0).asyncOutput()
+                         .create()
+      );
+      final AnalysisEngine[] engines = new AnalysisEngine[pipeline.length + 1];
+      System.arraycopy(pipeline, 0, engines, 0, phaseBoundary + 1);
+      engines[phaseBoundary + 1] = dumpWriter;
+      System.arraycopy(
+          pipeline, phaseBoundary + 1, engines, phaseBoundary + 2, size() - phaseBoundary
+      );
+      return engines;
+    }
+    return pipeline;
   }
 
   /** Destroy the pipeline. */
@@ -898,8 +1106,10 @@ class Pipeline {
   void destroy() {
     collectionReader.destroy();
     for (AnalysisEngine ae : pipeline)
-      ae.destroy();
+      if (ae != null) ae.destroy();
+    if (dumpWriter != null) dumpWriter.destroy();
     collectionReader = null;
+    dumpWriter = null;
     pipeline = new AnalysisEngine[pipeline.length];
   }
 }
@@ -34,6 +34,7 @@ import org.uimafit.factory.CollectionReaderFactory;
 import txtfnnl.pipelines.Pipeline.XmlHandler;
 import txtfnnl.tika.uima.TikaAnnotator;
 import txtfnnl.tika.uima.TikaExtractor;
+import txtfnnl.uima.analysis_component.NOOPAnnotator;
 import txtfnnl.uima.collection.DirectoryReader;
 import txtfnnl.uima.collection.FileReader;
 import txtfnnl.uima.collection.TextWriter;
@@ -475,4 +476,75 @@ public class TestPipeline {
       Assert.assertEquals("this is a test", result);
     }
   }
+
+  /** Run the pipeline, capturing STDOUT. */
+  static String run(Pipeline p) throws IOException, UIMAException {
+    final ByteArrayOutputStream tmpout = new ByteArrayOutputStream();
+    final PrintStream stdout = System.out;
+    try {
+      System.setOut(new PrintStream(tmpout, true, "UTF-8")); // redirect STDOUT
+      p.run();
+    } finally {
+      System.setOut(stdout);
+    }
+    return tmpout.toString("UTF-8"); // capture STDOUT
+  }
+
+  @Test
+  public final void testRunPhases() throws IOException, UIMAException {
+    final File tmp = File.createTempFile("test_", "txt");
+    tmp.deleteOnExit();
+    final BufferedWriter bw = new BufferedWriter(new FileWriter(tmp));
+    bw.write("this is a test");
+    bw.close();
+    final File dump = File.createTempFile("test_", "dump");
+    Assert.assertTrue(dump.delete());
+    // first run: extract with Tika and dump after the Tika AE
+    Pipeline p = new Pipeline(2);
+    p.setPhaseBoundary(0);
+    p.setReader(new String[] { tmp.getAbsolutePath() });
+    p.configureTika();
+    p.set(1, Pipeline.textEngine(NOOPAnnotator.configure().create()));
+    p.setConsumer(Pipeline.textEngine(TextWriter.configure().printToStdout().create()));
+    p.dumpPhase(dump);
+    Assert.assertEquals("this is a test", run(p));
+    p.destroy();
+    Assert.assertTrue(dump.list().length > 0);
+    // second run: resume after the Tika AE
+    p = new Pipeline(2);
+    p.setPhaseBoundary(0);
+    p.resumePhase(dump);
+    Assert.assertTrue(p.isSkipped(0));
+    Assert.assertFalse(p.isSkipped(1));
+    Assert.assertNull(p.configureTika());
+    p.set(1, Pipeline.textEngine(NOOPAnnotator.configure().create()));
+    p.setConsumer(Pipeline.textEngine(TextWriter.configure().printToStdout().create()));
+    Assert.assertTrue(p.isReady());
+    Assert.assertEquals("this is a test", run(p));
+    p.destroy();
+    for (final File f : dump.listFiles())
+      f.delete();
+    dump.delete();
+  }
+
+  @Test(expected = IOException.class)
+  public final void testDumpPhase_NotEmpty() throws IOException {
+    final File dump = File.createTempFile("test_", "dump");
+    Assert.assertTrue(dump.delete() && dump.mkdir());
+    final File shard = new File(dump, "BinaryCasWriter-00000.bcas.gz");
+    Assert.assertTrue(shard.createNewFile());
+    final Pipeline p = new Pipeline(2);
+    p.setPhaseBoundary(0);
+    try {
+      p.dumpPhase(dump);
+    } finally {
+      shard.delete();
+      dump.delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testSetPhaseBoundary_Consumer() {
+    new Pipeline(2).setPhaseBoundary(2);
+  }
 }
@@ -0,0 +1,290 @@
+package txtfnnl.tika.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Stack;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+
+import txtfnnl.uima.cas.Property;
+import txtfnnl.uima.tcas.StructureAnnotation;
+
+/**
+ * A single-pass StAX extractor producing the same plain-text and
+ * {@link txtfnnl.uima.tcas.StructureAnnotation StructureAnnotations} as the
+ * {@link txtfnnl.tika.parser.xml.UnembeddedXMLParser UnembeddedXMLParser} would with the
+ * {@link ElsevierXMLContentHandler} or {@link PubMedCentralXMLContentHandler}, (optionally) the
+ * {@link GreekLetterContentHandler}, and the {@link UIMAContentHandler} decorator chain.
+ * <p>
+ * Instead of passing every SAX event through several decorators, the line-break and whitespace
+ * states of the {@link HTMLContentHandler} are tracked directly while reading the XML stream, and
+ * the text is collected in a single buffer. The only difference to the SAX handlers is that the
+ * end of "break" elements (BR, VSP, HR) is ignored, too, while the {@link UIMAContentHandler}
+ * would fail to find the matching (not annotated) start of that element.
+ * <p>
+ * Extractors are immutable and can be used by any number of threads.
+ *
+ * @author Florian Leitner
+ */
+public class XMLStreamContentExtractor {
+  /** An extractor for XML in Elsevier's DTD format. */
+  public static final XMLStreamContentExtractor ELSEVIER = new XMLStreamContentExtractor(
+      ElsevierXMLContentHandler.ADD_LINEBREAK, ElsevierXMLContentHandler.ADD_TWO_LINEBREAKS,
+      new String[] { "ce:br", "ce:vsp" }, "ce:glyph");
+  /** An extractor for XML in NLM's archive DTD format. */
+  public static final XMLStreamContentExtractor PUBMED_CENTRAL = new XMLStreamContentExtractor(
+      PubMedCentralXMLContentHandler.ADD_LINEBREAK,
+      PubMedCentralXMLContentHandler.ADD_TWO_LINEBREAKS, new String[] { "break", "hr" }, null);
+  /** The attributes that the {@link HTMLContentHandler} adds to the text. */
+  static final String[] TEXT_ATTRIBUTES = new String[] { "title", "label", "alt" };
+  /** The shared (configured) StAX input factory. */
+  private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+  static {
+    FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    FACTORY.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+    // never make any (DTD) lookups, like Tika's OfflineContentHandler
+    FACTORY.setXMLResolver(new XMLResolver() {
+      public Object resolveEntity(String publicID, String systemID, String baseURI,
+          String namespace) {
+        return new ByteArrayInputStream(new byte[0]);
+      }
+    });
+  }
+  /** Parser states, as in the {@link HTMLContentHandler}. */
+  private static final int NORMAL = 0, WHITESPACE = 1, NEWLINE = 2, DOUBLE_NEWLINE = 3;
+  /** Block elements that should be followed by one newline. */
+  private final Set<String> lineBreak;
+  /** Block elements that should be followed by two newlines. */
+  private final Set<String> twoLineBreaks;
+  /** Elements that are replaced by a newline. */
+  private final Set<String> breaks;
+  /** The element name with a "name" attribute that should be extracted (or <code>null</code>). */
+  private final String glyph;
+
+  /**
+   * Create a new extractor.
+   *
+   * @param lineBreak elements that should be followed by one newline
+   * @param twoLineBreaks elements that should be followed by two newlines
+   * @param breaks elements that are replaced by a newline
+   * @param glyph element with a "name" attribute that should be extracted (may be
+   *        <code>null</code>)
+   */
+  public XMLStreamContentExtractor(Set<String> lineBreak, Set<String> twoLineBreaks,
+      String[] breaks, String glyph) {
+    this.lineBreak = lineBreak;
+    this.twoLineBreaks = twoLineBreaks;
+    final Set<String> breakSet = new HashSet<String>();
+    Collections.addAll(breakSet, breaks);
+    this.breaks = Collections.unmodifiableSet(breakSet);
+    this.glyph = glyph;
+  }
+
+  /**
+   * Extract the text content of an XML stream into a CAS view.
+   *
+   * @param stream to extract (that is not closed by this method)
+   * @param view to set the plain-text SOFA on and add the structure annotations to
+   * @param annotatorURI to use for the structure annotations; if <code>null</code>, only the text
+   *        is extracted
+   * @param normalizeGreek if Greek letters should be replaced with their Latin names
+   * @throws XMLStreamException if the XML is not well-formed
+   */
+  public void extract(InputStream stream, JCas view, String annotatorURI, boolean normalizeGreek)
+      throws XMLStreamException {
+    final XMLStreamReader reader = FACTORY.createXMLStreamReader(stream);
+    try {
+      new Extraction(view, annotatorURI, normalizeGreek).run(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /** The state of a single extraction. */
+  private class Extraction {
+    final JCas view;
+    final String annotatorURI;
+    final boolean normalizeGreek;
+    final StringBuilder text = new StringBuilder();
+    final Stack<StructureAnnotation> annotationStack = new Stack<StructureAnnotation>();
+    int state = NORMAL;
+    boolean hadContent = false;
+
+    Extraction(JCas view, String annotatorURI, boolean normalizeGreek) {
+      this.view = view;
+      this.annotatorURI = annotatorURI;
+      this.normalizeGreek = normalizeGreek;
+    }
+
+    void run(XMLStreamReader reader) throws XMLStreamException {
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          startElement(reader);
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          endElement(qName(reader.getPrefix(), reader.getLocalName()));
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+          characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+        default:
+          // ignorable whitespace, comments, processing instructions, DTDs, ...
+        }
+      }
+      view.setSofaDataString(text.toString(), "text/plain");
+    }
+
+    void startElement(XMLStreamReader reader) {
+      final String name = qName(reader.getPrefix(), reader.getLocalName());
+      if (breaks.contains(name)) {
+        text.append('\n');
+        return;
+      }
+      if (annotatorURI != null) annotationStack.push(annotate(reader, name));
+      final int numAtts = reader.getAttributeCount();
+      if (numAtts > 0) {
+        for (final String key : TEXT_ATTRIBUTES) {
+          final String value = getAttribute(reader, key);
+          if (value != null && value.length() > 0) {
+            setWhitespaceState();
+            characters(value.toCharArray(), 0, value.length());
+          }
+        }
+        if (name.equals(glyph)) {
+          final String value = getAttribute(reader, "name");
+          if (value != null && value.length() > 0) {
+            setWhitespaceState();
+            characters(value.toCharArray(), 0, value.length());
+          }
+        }
+      }
+      if (twoLineBreaks.contains(name) || lineBreak.contains(name)) setNewlineState();
+      else setWhitespaceState();
+    }
+
+    void endElement(String name) {
+      if (breaks.contains(name)) return;
+      if (annotatorURI != null) {
+        final StructureAnnotation ann = annotationStack.pop();
+        ann.setEnd(text.length());
+        ann.addToIndexes();
+      }
+      if (twoLineBreaks.contains(name)) state = DOUBLE_NEWLINE;
+      else if (lineBreak.contains(name)) setNewlineState();
+      else setWhitespaceState();
+    }
+
+    /** Create the structure annotation for the current element. */
+    StructureAnnotation annotate(XMLStreamReader reader, String name) {
+      final StructureAnnotation ann = new StructureAnnotation(view);
+      String uri = reader.getNamespaceURI();
+      if (uri == null) uri = "";
+      if (!(uri.endsWith("#") || uri.endsWith("/") || uri.endsWith("="))) uri += "#";
+      ann.setBegin(text.length());
+      ann.setNamespace(uri);
+      ann.setIdentifier(name);
+      ann.setAnnotator(annotatorURI);
+      ann.setConfidence(1.0);
+      final int numAtts = reader.getAttributeCount();
+      if (numAtts > 0) {
+        final FSArray attributes = new FSArray(view, numAtts);
+        for (int idx = 0; idx < numAtts; ++idx) {
+          final Property prop = new Property(view);
+          prop.setName(qName(reader.getAttributePrefix(idx), reader.getAttributeLocalName(idx)));
+          prop.setValue(reader.getAttributeValue(idx));
+          attributes.set(idx, prop);
+        }
+        ann.setProperties(attributes);
+      }
+      return ann;
+    }
+
+    /** Handle characters as {@link HTMLContentHandler#characters(char[], int, int)} does. */
+    void characters(char[] ch, int start, int length) {
+      if (length == 0) return;
+      final int end = start + length;
+      int pos = start;
+      length = start;
+      while (pos < end) {
+        if (HTMLContentHandler.isDisplayedAsSpace(ch[pos])) {
+          if (length > start) handleCharacters(ch, start, length - start);
+          setWhitespaceState();
+          start = ++pos;
+        } else {
+          length = ++pos;
+        }
+      }
+      if (length > start) handleCharacters(ch, start, length - start);
+      else setWhitespaceState();
+    }
+
+    /** Add the spaces required by the current state and the (content) characters. */
+    void handleCharacters(char[] ch, int start, int length) {
+      if (hadContent) {
+        switch (state) {
+        case WHITESPACE:
+          text.append(' ');
+          break;
+        case NEWLINE:
+          text.append('\n');
+          hadContent = false;
+          break;
+        case DOUBLE_NEWLINE:
+          text.append("\n\n");
+          hadContent = false;
+          break;
+        default:
+        }
+      }
+      if (normalizeGreek) appendNormalized(ch, start, length);
+      else text.append(ch, start, length);
+      hadContent = true;
+      state = NORMAL;
+    }
+
+    /** Append characters, replacing Greek letters as the {@link GreekLetterContentHandler}. */
+    void appendNormalized(char[] ch, int start, int length) {
+      final int end = start + length;
+      for (int pos = start; pos < end; ++pos) {
+        int idx = GreekLetterContentHandler.GREEK_CHARS.length;
+        while (idx-- > 0 && GreekLetterContentHandler.GREEK_CHARS[idx] != ch[pos]) {}
+        if (idx < 0) text.append(ch[pos]);
+        else text.append(GreekLetterContentHandler.GREEK_NAMES[idx]);
+      }
+    }
+
+    void setWhitespaceState() {
+      if (state == NORMAL) state = WHITESPACE;
+    }
+
+    void setNewlineState() {
+      if (state != DOUBLE_NEWLINE) state = NEWLINE;
+    }
+  }
+
+  /** Return the (trimmed) value of the attribute with the given qualified name. */
+  static String getAttribute(XMLStreamReader reader, String qName) {
+    for (int idx = reader.getAttributeCount() - 1; idx > -1; --idx) {
+      if (qName.equals(qName(reader.getAttributePrefix(idx), reader.getAttributeLocalName(idx))))
+        return reader.getAttributeValue(idx).trim();
+    }
+    return null;
+  }
+
+  /** Return the qualified name, as reported by a namespace-aware SAX parser. */
+  static String qName(String prefix, String localName) {
+    return (prefix == null || prefix.length() == 0) ? localName : prefix + ":" + localName;
+  }
+}
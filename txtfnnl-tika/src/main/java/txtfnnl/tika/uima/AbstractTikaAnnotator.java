@@ -6,6 +6,7 @@ package txtfnnl.tika.uima;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.IOUtils;
 import org.apache.tika.metadata.HttpHeaders;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaMetadataKeys;
@@ -20,11 +21,13 @@ import org.apache.uima.analysis_component.AnalysisComponent;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.ExternalResource;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import txtfnnl.tika.TikaWrapper;
@@ -33,9 +36,13 @@ import txtfnnl.tika.parser.xml.UnembeddedXMLParser;
 import txtfnnl.tika.sax.*;
 import txtfnnl.uima.AnalysisComponentBuilder;
 import txtfnnl.uima.Views;
+import txtfnnl.uima.collection.RawContent;
+import txtfnnl.uima.resource.ResponseCacheResource;
 import txtfnnl.uima.tcas.DocumentAnnotation;
 
 import javax.swing.text.View;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -61,7 +68,9 @@ import java.net.URL;
  * {@link txtfnnl.tika.sax.HTMLContentHandler} is used; if it is <code>text/xml</code> or starts
  * with <code>application/xml</code>, the {@link txtfnnl.tika.sax.XMLContentHandler} will be used.
  * For XML, in addition, any other known content handler can be set using the {@link
- * #PARAM_XML_HANDLER} setting (see parameter documentation). For all other MIME types, Tika's
+ * #PARAM_XML_HANDLER} setting (see parameter documentation). For the Elsevier and PubMed Central
+ * handlers, the text is extracted in a single pass by the {@link
+ * txtfnnl.tika.sax.XMLStreamContentExtractor} instead. For all other MIME types, Tika's
  * {@link AutoDetectParser} will be used. If Tika detects {@link org.apache.tika.metadata.Metadata},
  * it is added as {@link txtfnnl.uima.tcas.DocumentAnnotation} to the output view.
  *
@@ -94,6 +103,19 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
   @ConfigurationParameter(name = PARAM_XML_HANDLER,
                           defaultValue = "txtfnnl.tika.sax.XMLContentHandler")
   private String xmlHandlerClass;
+  /**
+   * The key used for the (optional) {@link ResponseCacheResource} of extraction results.
+   * <p>
+   * If set, the raw content is looked up in the cache before it is parsed, and all new extraction
+   * results - the plain-text, its structure annotations, and the metadata - are added to the
+   * cache. Results are keyed by the SHA-1 digest of the raw content, its MIME type and resource
+   * name, the configuration of this AE, and the Tika version.
+   */
+  public static final String MODEL_KEY_EXTRACTION_CACHE = "ExtractionCache";
+  @ExternalResource(key = MODEL_KEY_EXTRACTION_CACHE, mandatory = false)
+  private ResponseCacheResource extractionCache;
+  /** The cache namespace of this AE's configuration. */
+  private String cacheNamespace;
   /** A logger for this AE. */
   Logger logger;
   /** The Tika API wrapper for this AE. */
@@ -127,13 +149,78 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
       setOptionalParameter(PARAM_NORMALIZE_GREEK_CHARACTERS, Boolean.TRUE);
       return this;
     }
+
+    /**
+     * Supply a {@link ResponseCacheResource} to store the extraction results in, so that Tika only
+     * has to parse content it has not seen before.
+     */
+    public
+    Builder setExtractionCache(ExternalResourceDescription desc) {
+      setOptionalParameter(MODEL_KEY_EXTRACTION_CACHE, desc);
+      return this;
+    }
+  }
+
+  /** The known XML handlers, see {@link #PARAM_XML_HANDLER}. */
+  enum XmlHandler {
+    DEFAULT, ELSEVIER, PUBMED_CENTRAL, CLEAN_BODY
   }
 
+  /*
+   * Tika's parsers and detectors are stateless, and therefore thread-safe, so one instance of each
+   * is shared by all annotators in the JVM. Loading the default Tika configuration does a service
+   * loader scan, so it (and the detector and auto-detecting parser depending on it) is only
+   * loaded once, by the first annotator to be initialized.
+   */
+  private static final Parser HTML_PARSER = new HtmlParser();
+  private static final Parser XML_PARSER = new XMLParser();
+  private static final Parser UNEMBEDDED_XML_PARSER = new UnembeddedXMLParser();
+  private static TikaConfig defaultConfig = null;
+  private static Detector defaultDetector = null;
+  private static Parser defaultAutoDetectParser = null;
+  /** The detector used by this AE. */
+  private Detector detector;
+  /** The parser used by this AE for all media types except HTML and XML. */
+  private Parser autoDetectParser;
+  /** The XML handler used by this AE. */
+  private XmlHandler xmlHandler;
+
   @Override
   public
   void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
+    synchronized (AbstractTikaAnnotator.class) {
+      if (defaultConfig == null) {
+        defaultConfig = TikaConfig.getDefaultConfig();
+        defaultDetector = defaultConfig.getDetector();
+        defaultAutoDetectParser = new AutoDetectParser(defaultDetector);
+      }
+      detector = defaultDetector;
+      autoDetectParser = defaultAutoDetectParser;
+    }
+    xmlHandler = getXmlHandler(xmlHandlerClass);
+    cacheNamespace = String.format(
+        "%s/%s;greek=%s;encoding=%s;tika=%s;v%s", getClass().getName(), xmlHandler,
+        normalizeGreek, encoding, TikaConfig.class.getPackage().getImplementationVersion(),
+        CachedExtraction.VERSION
+    );
+  }
+
+  /** Select the XML handler for the given class name. */
+  XmlHandler getXmlHandler(String className) {
+    if (XMLContentHandler.class.getName().equals(className)) {
+      return XmlHandler.DEFAULT;
+    } else if (ElsevierXMLContentHandler.class.getName().equals(className)) {
+      return XmlHandler.ELSEVIER;
+    } else if (PubMedCentralXMLContentHandler.class.getName().equals(className)) {
+      return XmlHandler.PUBMED_CENTRAL;
+    } else if (CleanBodyContentHandler.class.getName().equals(className)) {
+      return XmlHandler.CLEAN_BODY;
+    } else {
+      logger.log(Level.WARNING, "unknown XML handler {0} - using default", className);
+      return XmlHandler.DEFAULT;
+    }
   }
 
   /**
@@ -150,14 +237,14 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
     } catch (final CASException e) {
       throw new AnalysisEngineProcessException(e);
     }
-    final InputStream stream = aJCas.getSofaDataStream();
+    InputStream stream = aJCas.getSofaDataStream();
+    final String sourceURI = RawContent.getSourceURI(aJCas);
     if (stream == null) {
       logger.log(Level.SEVERE, "no data stream for view {0}", aJCas.getViewName());
       throw new AnalysisEngineProcessException(new AssertionError("no SOFA data stream"));
     } else {
       logger.log(
-          Level.INFO, "parsing {0} from {1}",
-          new Object[] {aJCas.getSofaMimeType(), aJCas.getSofaDataURI()}
+          Level.INFO, "parsing {0} from {1}", new Object[] {aJCas.getSofaMimeType(), sourceURI}
       );
     }
     final Metadata metadata = new Metadata();
@@ -167,15 +254,13 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
     if (encoding != null) {
       metadata.set(HttpHeaders.CONTENT_ENCODING, encoding);
     }
-    if (aJCas.getSofaDataURI() != null) {
+    if (sourceURI != null) {
       try {
-        metadata.set(
-            TikaMetadataKeys.RESOURCE_NAME_KEY, resourceName(new URI(aJCas.getSofaDataURI()))
-        );
+        metadata.set(TikaMetadataKeys.RESOURCE_NAME_KEY, resourceName(new URI(sourceURI)));
       } catch (final URISyntaxException e) {
-        logger.log(Level.WARNING, "URI ''{0}'' not valid", aJCas.getSofaDataURI());
+        logger.log(Level.WARNING, "URI ''{0}'' not valid", sourceURI);
       } catch (final MalformedURLException e) {
-        logger.log(Level.WARNING, "URI ''{0}'' not valid", aJCas.getSofaDataURI());
+        logger.log(Level.WARNING, "URI ''{0}'' not valid", sourceURI);
       }
     }
     try {
@@ -183,14 +268,40 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
     } catch (final CASException e) {
       throw new AnalysisEngineProcessException(e);
     }
+    String cacheKey = null;
+    if (extractionCache != null) {
+      final byte[] content;
+      try {
+        content = IOUtils.toByteArray(stream);
+        stream.close();
+      } catch (final IOException e) {
+        throw new AnalysisEngineProcessException(e);
+      }
+      stream = new ByteArrayInputStream(content);
+      cacheKey = String.format(
+          "%s\t%s\t%s", CachedExtraction.digest(content), aJCas.getSofaMimeType(),
+          metadata.get(TikaMetadataKeys.RESOURCE_NAME_KEY)
+      );
+      final String cached = extractionCache.get(cacheNamespace, cacheKey);
+      if (cached != null) {
+        try {
+          final CachedExtraction extraction = CachedExtraction.decode(cached);
+          handleMetadata(extraction.restore(newJCas), newJCas);
+          newJCas.setDocumentLanguage(aJCas.getDocumentLanguage());
+          return;
+        } catch (final IllegalArgumentException e) {
+          logger.log(Level.WARNING, "ignoring malformed cached extraction: {0}", e.getMessage());
+        }
+      }
+    }
     ContentHandler handler = getContentHandler(newJCas);
     if (normalizeGreek) {
       handler = new GreekLetterContentHandler(handler);
     }
-    final Detector detector = TikaConfig.getDefaultConfig().getDetector();
     final ParseContext context = new ParseContext();
     String mediaType = metadata.get(HttpHeaders.CONTENT_TYPE);
     Parser parser;
+    XMLStreamContentExtractor extractor = null;
     try {
       if (mediaType == null) {
         mediaType = detector.detect(stream, metadata).getBaseType().toString();
@@ -198,42 +309,61 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
       if ("text/html".equals(mediaType) || mediaType.startsWith("application/xhtml")) {
         context.set(HtmlMapper.class, CleanHtmlMapper.INSTANCE);
         handler = new HTMLContentHandler(new CleanBodyContentHandler(handler));
-        parser = new HtmlParser();
+        parser = HTML_PARSER;
       } else if ("text/xml".equals(mediaType) || mediaType.startsWith("application/xml")) {
-        if (XMLContentHandler.class.getName().equals(xmlHandlerClass)) {
-          handler = new XMLContentHandler(handler);
-          parser = new UnembeddedXMLParser();
-        } else if (ElsevierXMLContentHandler.class.getName().equals(xmlHandlerClass)) {
-          handler = new ElsevierXMLContentHandler(handler);
-          parser = new UnembeddedXMLParser();
-        } else if (PubMedCentralXMLContentHandler.class.getName().equals(xmlHandlerClass)) {
-          handler = new PubMedCentralXMLContentHandler(handler);
-          parser = new UnembeddedXMLParser();
-        } else if (CleanBodyContentHandler.class.getName().equals(xmlHandlerClass)) {
+        switch (xmlHandler) {
+        case ELSEVIER:
+          extractor = XMLStreamContentExtractor.ELSEVIER;
+          parser = null;
+          break;
+        case PUBMED_CENTRAL:
+          extractor = XMLStreamContentExtractor.PUBMED_CENTRAL;
+          parser = null;
+          break;
+        case CLEAN_BODY:
           handler = new CleanBodyContentHandler(handler);
-          parser = new XMLParser();
-        } else {
-          logger.log(Level.WARNING, "unknown XML handler {0} - using default", xmlHandlerClass);
+          parser = XML_PARSER;
+          break;
+        default:
           handler = new XMLContentHandler(handler);
-          parser = new UnembeddedXMLParser();
+          parser = UNEMBEDDED_XML_PARSER;
         }
       } else {
         handler = new CleanBodyContentHandler(handler);
-        parser = new AutoDetectParser(detector);
+        parser = autoDetectParser;
       }
-      context.set(Parser.class, parser);
-      try {
-        parser.parse(stream, handler, metadata, context);
-      } catch (final SAXException e) {
-        throw new TikaException("SAX processing failure", e);
-      } finally {
-        stream.close();
+      if (extractor != null) {
+        // as the UnembeddedXMLParser would
+        if (metadata.get(HttpHeaders.CONTENT_TYPE) == null) {
+          metadata.set(HttpHeaders.CONTENT_TYPE, "application/xml");
+        }
+        try {
+          extractor.extract(
+              stream, newJCas, annotatesStructure() ? getAnnotatorURI() : null, normalizeGreek
+          );
+        } catch (final XMLStreamException e) {
+          throw new TikaException("XML parse error", e);
+        } finally {
+          stream.close();
+        }
+      } else {
+        context.set(Parser.class, parser);
+        try {
+          parser.parse(stream, handler, metadata, context);
+        } catch (final SAXException e) {
+          throw new TikaException("SAX processing failure", e);
+        } finally {
+          stream.close();
+        }
       }
     } catch (final IOException e) {
       throw new AnalysisEngineProcessException(e);
     } catch (final TikaException e) {
       throw new AnalysisEngineProcessException(e);
     }
+    if (cacheKey != null) {
+      extractionCache.put(cacheNamespace, cacheKey, CachedExtraction.encode(newJCas, metadata));
+    }
     handleMetadata(metadata, newJCas);
     newJCas.setDocumentLanguage(aJCas.getDocumentLanguage());
   }
@@ -260,6 +390,9 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
     if ("file".equalsIgnoreCase(uri.getScheme())) {
       final File file = new File(uri);
       if (file.isFile()) return resourceName(file);
+      // archive entries: "archive!/path/name"
+      final String path = uri.getPath();
+      if (path.indexOf("!/") > -1) return path.substring(path.lastIndexOf('/') + 1);
     }
     return resourceName(uri.toURL());
   }
@@ -283,4 +416,12 @@ class AbstractTikaAnnotator extends JCasAnnotator_ImplBase {
   /** Fetch the URI of this AE (for the structured annotations). */
   abstract
   String getAnnotatorURI();
+
+  /**
+   * Return <code>true</code> if the core content handler adds {@link
+   * txtfnnl.uima.tcas.StructureAnnotation StructureAnnotations}, which the {@link
+   * XMLStreamContentExtractor} then has to add, too.
+   */
+  abstract
+  boolean annotatesStructure();
 }
@@ -0,0 +1,222 @@
+package txtfnnl.tika.uima;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+
+import org.uimafit.util.JCasUtil;
+
+import txtfnnl.uima.cas.Property;
+import txtfnnl.uima.tcas.StructureAnnotation;
+
+/**
+ * Encode and decode the result of a Tika extraction - the plain-text, its
+ * {@link StructureAnnotation StructureAnnotations}, and the {@link Metadata} - to and from the
+ * compact string representation stored in an extraction cache.
+ * <p>
+ * All values are written length-prefixed (<code>length:value</code>), so the text and the
+ * annotation values may contain any character. A <code>null</code> value has the length
+ * <code>-1</code>. The annotations are restored in index order, but as the sorted UIMA indexes do
+ * not define any order among annotations with equal spans, such annotations might be iterated in
+ * a different order than after the original extraction.
+ *
+ * @author Florian Leitner
+ */
+final class CachedExtraction {
+  /** The version of the encoding; Increment it if the representation changes. */
+  static final String VERSION = "1";
+
+  /** The extracted plain-text. */
+  private final String text;
+  /** The structure annotations on the text. */
+  private final List<Structure> structure = new ArrayList<Structure>();
+  /** The extracted metadata. */
+  private final Metadata metadata = new Metadata();
+
+  /** The values of a structure annotation. */
+  private static class Structure {
+    int begin, end;
+    String annotator, namespace, identifier;
+    double confidence;
+    /** Alternating property names and values (or <code>null</code>). */
+    String[] properties = null;
+  }
+
+  private CachedExtraction(String text) {
+    if (text == null) throw new IllegalArgumentException("no cached text");
+    this.text = text;
+  }
+
+  /**
+   * Encode the extracted text view and the metadata.
+   *
+   * @param view with the plain-text and its structure annotations
+   * @param metadata detected by Tika
+   * @return the cacheable representation
+   */
+  static String encode(JCas view, Metadata metadata) {
+    final String text = view.getDocumentText();
+    final StringBuilder sb = new StringBuilder(text.length() + 1024);
+    write(sb, text);
+    write(sb, JCasUtil.select(view, StructureAnnotation.class).size());
+    for (final StructureAnnotation ann : JCasUtil.select(view, StructureAnnotation.class)) {
+      write(sb, ann.getBegin());
+      write(sb, ann.getEnd());
+      write(sb, ann.getAnnotator());
+      write(sb, ann.getNamespace());
+      write(sb, ann.getIdentifier());
+      write(sb, Double.toString(ann.getConfidence()));
+      final FSArray props = ann.getProperties();
+      if (props == null) {
+        write(sb, -1);
+      } else {
+        write(sb, props.size());
+        for (int i = 0; i < props.size(); ++i) {
+          write(sb, ann.getProperties(i).getName());
+          write(sb, ann.getProperties(i).getValue());
+        }
+      }
+    }
+    final String[] names = metadata.names();
+    write(sb, names.length);
+    for (final String name : names) {
+      final String[] values = metadata.getValues(name);
+      write(sb, name);
+      write(sb, values.length);
+      for (final String value : values)
+        write(sb, value);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Decode a cached extraction.
+   *
+   * @param data to decode
+   * @return the extraction result
+   * @throws IllegalArgumentException if the data is malformed
+   */
+  static CachedExtraction decode(String data) {
+    final Reader reader = new Reader(data);
+    final CachedExtraction extraction = new CachedExtraction(reader.string());
+    for (int count = reader.integer(); count > 0; --count) {
+      final Structure ann = new Structure();
+      ann.begin = reader.integer();
+      ann.end = reader.integer();
+      ann.annotator = reader.string();
+      ann.namespace = reader.string();
+      ann.identifier = reader.string();
+      try {
+        ann.confidence = Double.parseDouble(reader.string());
+      } catch (final NullPointerException e) {
+        throw new IllegalArgumentException("no confidence value");
+      }
+      final int numProps = reader.integer();
+      if (numProps > -1) {
+        ann.properties = new String[2 * numProps];
+        for (int i = 0; i < ann.properties.length; ++i)
+          ann.properties[i] = reader.string();
+      }
+      extraction.structure.add(ann);
+    }
+    for (int count = reader.integer(); count > 0; --count) {
+      final String name = reader.string();
+      for (int numValues = reader.integer(); numValues > 0; --numValues)
+        extraction.metadata.add(name, reader.string());
+    }
+    if (!reader.done()) throw new IllegalArgumentException("trailing cache data");
+    return extraction;
+  }
+
+  /**
+   * Restore the plain-text and the structure annotations on the text view.
+   *
+   * @param view to populate
+   * @return the metadata of the extraction
+   */
+  Metadata restore(JCas view) {
+    view.setSofaDataString(text, "text/plain");
+    for (final Structure s : structure) {
+      final StructureAnnotation ann = new StructureAnnotation(view, s.begin, s.end);
+      ann.setAnnotator(s.annotator);
+      ann.setNamespace(s.namespace);
+      ann.setIdentifier(s.identifier);
+      ann.setConfidence(s.confidence);
+      if (s.properties != null) {
+        final FSArray props = new FSArray(view, s.properties.length / 2);
+        for (int i = 0; i < s.properties.length; i += 2) {
+          final Property prop = new Property(view);
+          prop.setName(s.properties[i]);
+          prop.setValue(s.properties[i + 1]);
+          props.set(i / 2, prop);
+        }
+        ann.setProperties(props);
+      }
+      ann.addToIndexes();
+    }
+    return metadata;
+  }
+
+  /** Return the hex-encoded SHA-1 digest of the content. */
+  static String digest(byte[] content) {
+    try {
+      final byte[] hash = MessageDigest.getInstance("SHA-1").digest(content);
+      final StringBuilder hex = new StringBuilder(2 * hash.length);
+      for (final byte b : hash)
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      return hex.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void write(StringBuilder sb, int value) {
+    sb.append(value).append(':');
+  }
+
+  private static void write(StringBuilder sb, String value) {
+    if (value == null) {
+      sb.append("-1:");
+    } else {
+      sb.append(value.length()).append(':').append(value);
+    }
+  }
+
+  /** Read length-prefixed values. */
+  private static class Reader {
+    final String data;
+    int pos = 0;
+
+    Reader(String data) {
+      this.data = data;
+    }
+
+    int integer() {
+      final int colon = data.indexOf(':', pos);
+      if (colon == -1) throw new IllegalArgumentException("truncated cache data");
+      // NumberFormatExceptions are IllegalArgumentExceptions, too
+      final int value = Integer.parseInt(data.substring(pos, colon));
+      pos = colon + 1;
+      return value;
+    }
+
+    String string() {
+      final int length = integer();
+      if (length == -1) return null;
+      if (length < -1 || pos + length > data.length())
+        throw new IllegalArgumentException("truncated cache data");
+      final String value = data.substring(pos, pos + length);
+      pos += length;
+      return value;
+    }
+
+    boolean done() {
+      return pos == data.length();
+    }
+  }
+}
@@ -51,4 +51,9 @@ public class TikaAnnotator extends AbstractTikaAnnotator {
   String getAnnotatorURI() {
     return URI;
   }
+
+  @Override
+  boolean annotatesStructure() {
+    return true;
+  }
 }
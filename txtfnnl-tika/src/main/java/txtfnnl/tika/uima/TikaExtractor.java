@@ -39,4 +39,9 @@ public class TikaExtractor extends AbstractTikaAnnotator {
   String getAnnotatorURI() {
     return URI;
   }
+
+  @Override
+  boolean annotatesStructure() {
+    return false;
+  }
 }
@@ -0,0 +1,165 @@
+package txtfnnl.tika.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.uima.UIMAException;
+import org.apache.uima.jcas.JCas;
+
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.util.JCasUtil;
+
+import txtfnnl.tika.parser.xml.UnembeddedXMLParser;
+import txtfnnl.uima.tcas.StructureAnnotation;
+
+/**
+ * Conformance tests of the StAX extractor against the Tika (SAX) handler chain.
+ *
+ * @author Florian Leitner
+ */
+public class TestXMLStreamContentExtractor {
+  static final String URI = "test-annotator";
+  static final File ELSEVIER = new File("src/test/resources/elsevier.xml");
+  static final File PMC = new File("src/test/resources/pmc.xml");
+  static final File XML = new File("src/test/resources/test.xml");
+
+  /** Extract the content with the UnembeddedXMLParser and the given handler chain. */
+  JCas parse(InputStream stream, boolean elsevier, boolean normalizeGreek)
+      throws UIMAException, IOException, SAXException, TikaException {
+    final JCas jcas = JCasFactory.createJCas();
+    ContentHandler handler = new UIMAContentHandler(jcas, URI);
+    if (normalizeGreek) handler = new GreekLetterContentHandler(handler);
+    handler = elsevier ? new ElsevierXMLContentHandler(handler)
+        : new PubMedCentralXMLContentHandler(handler);
+    try {
+      new UnembeddedXMLParser().parse(stream, handler, new Metadata(), new ParseContext());
+    } finally {
+      stream.close();
+    }
+    return jcas;
+  }
+
+  /** Extract the content with the StAX extractor. */
+  JCas extract(InputStream stream, boolean elsevier, boolean normalizeGreek)
+      throws UIMAException, IOException, XMLStreamException {
+    final JCas jcas = JCasFactory.createJCas();
+    final XMLStreamContentExtractor extractor = elsevier ? XMLStreamContentExtractor.ELSEVIER
+        : XMLStreamContentExtractor.PUBMED_CENTRAL;
+    try {
+      extractor.extract(stream, jcas, URI, normalizeGreek);
+    } finally {
+      stream.close();
+    }
+    return jcas;
+  }
+
+  /** Describe all structure annotations of the view, in index order. */
+  static List<String> describe(JCas jcas) {
+    final List<String> result = new ArrayList<String>();
+    for (final StructureAnnotation ann : JCasUtil.select(jcas, StructureAnnotation.class)) {
+      final StringBuilder sb = new StringBuilder(ann.toString());
+      sb.append('@').append(ann.getBegin()).append(':').append(ann.getEnd());
+      for (int i = 0; ann.getProperties() != null && i < ann.getProperties().size(); ++i)
+        sb.append(' ').append(ann.getProperties(i).getName()).append('=')
+            .append(ann.getProperties(i).getValue());
+      result.add(sb.toString());
+    }
+    return result;
+  }
+
+  void assertConforms(File file, boolean elsevier, boolean normalizeGreek) throws Exception {
+    final JCas expected = parse(new FileInputStream(file), elsevier, normalizeGreek);
+    final JCas actual = extract(new FileInputStream(file), elsevier, normalizeGreek);
+    Assert.assertEquals(expected.getDocumentText(), actual.getDocumentText());
+    Assert.assertEquals(describe(expected), describe(actual));
+    Assert.assertTrue(describe(actual).size() > 0);
+  }
+
+  @Test
+  public void testElsevierConformance() throws Exception {
+    assertConforms(ELSEVIER, true, false);
+    assertConforms(ELSEVIER, true, true);
+    assertConforms(XML, true, false);
+  }
+
+  @Test
+  public void testPubMedCentralConformance() throws Exception {
+    assertConforms(PMC, false, false);
+    assertConforms(PMC, false, true);
+    assertConforms(XML, false, false);
+  }
+
+  @Test
+  public void testGreekNormalization() throws Exception {
+    final String text = extract(new FileInputStream(PMC), false, true).getDocumentText();
+    Assert.assertTrue(text, text.indexOf("TNF-alpha signalling in Mus musculus cells") > -1);
+    Assert.assertTrue(text, text.indexOf("Strabetae & <raw> text") > -1);
+  }
+
+  @Test
+  public void testGlyph() throws Exception {
+    final String xml = "<ce:para xmlns:ce='url'>a <ce:glyph name='sbnd'/> b</ce:para>";
+    assertConforms(xml, true);
+    Assert.assertEquals("a sbnd b", extract(xml, true).getDocumentText());
+  }
+
+  @Test
+  public void testTextAttributes() throws Exception {
+    final String xml = "<sec><p>see<graphic alt=' the figure ' title='Fig. 1'/>here</p></sec>";
+    assertConforms(xml, false);
+    Assert.assertEquals("see Fig. 1 the figure\n\nhere", extract(xml, false).getDocumentText());
+  }
+
+  @Test
+  public void testBreaks() throws Exception {
+    Assert.assertEquals("line\none", extract("<p>line<break/>one</p>", false).getDocumentText());
+    final JCas jcas = extract("<ce:para xmlns:ce='url'>a<ce:br/>b<ce:vsp/>c</ce:para>", true);
+    Assert.assertEquals("a\nb\nc", jcas.getDocumentText());
+    Assert.assertEquals(1, describe(jcas).size());
+  }
+
+  @Test
+  public void testTextOnly() throws Exception {
+    final JCas jcas = JCasFactory.createJCas();
+    XMLStreamContentExtractor.PUBMED_CENTRAL.extract(new FileInputStream(PMC), jcas, null, false);
+    Assert.assertEquals(parse(new FileInputStream(PMC), false, false).getDocumentText(),
+        jcas.getDocumentText());
+    Assert.assertEquals(0, describe(jcas).size());
+  }
+
+  @Test(expected = XMLStreamException.class)
+  public void testMalformedXML() throws Exception {
+    extract("<p>unclosed", false);
+  }
+
+  void assertConforms(String xml, boolean elsevier) throws Exception {
+    final JCas expected = parse(stream(xml), elsevier, false);
+    final JCas actual = extract(xml, elsevier);
+    Assert.assertEquals(expected.getDocumentText(), actual.getDocumentText());
+    Assert.assertEquals(describe(expected), describe(actual));
+  }
+
+  JCas extract(String xml, boolean elsevier) throws Exception {
+    return extract(stream(xml), elsevier, false);
+  }
+
+  static InputStream stream(String xml) throws IOException {
+    return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+  }
+}
@@ -2,23 +2,33 @@ package txtfnnl.tika.uima;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import org.xml.sax.ContentHandler;
 
+import org.apache.tika.config.TikaConfig;
 import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CASRuntimeException;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.DataResource;
 
 import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ExternalResourceFactory;
 import org.uimafit.testing.util.DisableLogging;
 import org.uimafit.util.JCasUtil;
 
@@ -26,10 +36,30 @@ import txtfnnl.tika.sax.ElsevierXMLContentHandler;
 import txtfnnl.tika.uima.TikaAnnotator.Builder;
 import txtfnnl.uima.Views;
 import txtfnnl.uima.cas.Property;
+import txtfnnl.uima.resource.ResponseCacheResource;
 import txtfnnl.uima.tcas.DocumentAnnotation;
 import txtfnnl.uima.tcas.StructureAnnotation;
+import txtfnnl.uima.tcas.TextAnnotation;
 
 public class TestTikaAnnotator {
+  /** An in-memory extraction cache. */
+  public static class MapCache implements ResponseCacheResource {
+    static final Map<String, String> MAP = new HashMap<String, String>();
+    static int hits = 0;
+
+    public void load(DataResource aData) {}
+
+    public String get(String namespace, String input) {
+      final String response = MAP.get(namespace + ":" + input);
+      if (response != null) ++hits;
+      return response;
+    }
+
+    public void put(String namespace, String input, String response) {
+      MAP.put(namespace + ":" + input, response);
+    }
+  }
+
   @Before
   public void setUp() throws UIMAException, IOException {
     DisableLogging.enableLogging(Level.WARNING);
@@ -199,4 +229,89 @@ public class TestTikaAnnotator {
     }
     Assert.assertEquals(4, count);
   }
+
+  /**
+   * A manual benchmark of the per-document time with the shared parser vs. the time with an
+   * additional parser set up per document; wall-clock timings are too unreliable to assert on.
+   */
+  @Ignore("manual benchmark")
+  @Test
+  public void testSharedParserOverhead() throws UIMAException, IOException {
+    final AnalysisEngine tikaAnnotator = getEngine();
+    final JCas baseJCas = tikaAnnotator.newJCas();
+    final int numDocs = 100;
+    for (int i = 0; i < numDocs; ++i)
+      process(tikaAnnotator, baseJCas, i); // warm up
+    long start = System.nanoTime();
+    for (int i = 0; i < numDocs; ++i)
+      process(tikaAnnotator, baseJCas, i);
+    final long sharedTime = (System.nanoTime() - start) / 1000L / numDocs;
+    // add the per-document setup done before the parser instances were shared
+    start = System.nanoTime();
+    for (int i = 0; i < numDocs; ++i) {
+      Assert.assertNotNull(new AutoDetectParser(TikaConfig.getDefaultConfig().getDetector()));
+      process(tikaAnnotator, baseJCas, i);
+    }
+    final long setupTime = (System.nanoTime() - start) / 1000L / numDocs;
+    System.err.println("Time per document: " + sharedTime + " us; with setup: " + setupTime +
+        " us");
+  }
+
+  /** Extract a small plain-text document (i.e., using the auto-detecting parser). */
+  private void process(AnalysisEngine engine, JCas baseJCas, int i) throws UIMAException {
+    baseJCas.reset();
+    baseJCas.createView(Views.CONTENT_RAW.toString()).setSofaDataString("text " + i,
+        "text/plain");
+    engine.process(baseJCas);
+    Assert.assertEquals("text " + i, baseJCas.getView(Views.CONTENT_TEXT.toString())
+        .getDocumentText());
+  }
+
+  @Test
+  public void testExtractionCache() throws UIMAException, IOException {
+    MapCache.MAP.clear();
+    MapCache.hits = 0;
+    final AnalysisEngine tikaAnnotator = AnalysisEngineFactory.createPrimitive(TikaAnnotator
+        .configure().setEncoding("UTF-8").setExtractionCache(
+            ExternalResourceFactory.createExternalResourceDescription(MapCache.class, "file:cache")
+        ).create());
+    final File infile = new File("src/test/resources/encoding.html");
+    final List<String> extracted = extract(tikaAnnotator, infile);
+    Assert.assertEquals(1, MapCache.MAP.size());
+    Assert.assertEquals(0, MapCache.hits);
+    Assert.assertEquals(extracted, extract(tikaAnnotator, infile));
+    Assert.assertEquals(1, MapCache.MAP.size());
+    Assert.assertEquals(1, MapCache.hits);
+    // malformed cache entries are ignored
+    final String key = MapCache.MAP.keySet().iterator().next();
+    MapCache.MAP.put(key, MapCache.MAP.get(key).substring(0, 100));
+    Assert.assertEquals(extracted, extract(tikaAnnotator, infile));
+    Assert.assertEquals(2, MapCache.hits);
+  }
+
+  /**
+   * Extract a file and describe the resulting text and its (sorted) annotations; The index order
+   * of annotations with equal spans is not defined.
+   */
+  private List<String> extract(AnalysisEngine engine, File file) throws UIMAException,
+      IOException {
+    final JCas baseJCas = engine.newJCas();
+    baseJCas.createView(Views.CONTENT_RAW.toString()).setSofaDataURI(
+        "file:" + file.getCanonicalPath(), null);
+    engine.process(baseJCas);
+    final JCas jCas = baseJCas.getView(Views.CONTENT_TEXT.toString());
+    final List<String> result = new ArrayList<String>();
+    result.add(jCas.getDocumentText());
+    for (final TextAnnotation ann : JCasUtil.select(jCas, TextAnnotation.class)) {
+      final StringBuilder sb = new StringBuilder(ann.toString());
+      sb.append('@').append(ann.getBegin()).append(':').append(ann.getEnd());
+      for (int i = 0; ann.getProperties() != null && i < ann.getProperties().size(); ++i)
+        sb.append(' ').append(ann.getProperties(i).getName()).append('=')
+            .append(ann.getProperties(i).getValue());
+      result.add(sb.toString());
+    }
+    Collections.sort(result.subList(1, result.size()));
+    Assert.assertTrue(result.size() > 10);
+    return result;
+  }
 }
@@ -20,6 +20,7 @@ import org.uimafit.descriptor.ExternalResource;
 
 import txtfnnl.uima.AnalysisComponentBuilder;
 import txtfnnl.uima.Views;
+import txtfnnl.uima.collection.RawContent;
 import txtfnnl.uima.resource.LineBasedStringMapResource;
 
 /**
@@ -106,12 +107,16 @@ public abstract class KnownEvidenceAnnotator<Evidence> extends JCasAnnotator_Imp
   public void process(JCas jcas) throws AnalysisEngineProcessException {
     // Setup ...
     JCas textCas;
-    JCas rawCas;
+    String sourceURI;
     String documentId;
     try {
       textCas = jcas.getView(textView);
-      rawCas = jcas.getView(rawView);
-      documentId = new File(new URI(rawCas.getSofaDataURI()).getPath()).getName();
+      sourceURI = RawContent.getSourceURI(jcas.getView(rawView));
+      if (sourceURI == null) {
+        logger.log(Level.WARNING, "no source URI for the document");
+        return;
+      }
+      documentId = new File(new URI(sourceURI).getPath()).getName();
     } catch (final CASException e) {
       throw new AnalysisEngineProcessException(e);
     } catch (final URISyntaxException e) {
@@ -124,7 +129,7 @@ public abstract class KnownEvidenceAnnotator<Evidence> extends JCasAnnotator_Imp
     final Evidence evidence = documentEvidenceMap.get(documentId);
     if (evidence == null) {
       logger.log(Level.WARNING, "no evidence mapped to doc {0} ({1})", new Object[] { documentId,
-          rawCas.getSofaDataURI() });
+          sourceURI });
     } else {
       logger.log(Level.INFO, "{0} processing doc {1}", new Object[] {
           this.getClass().getSimpleName(), documentId });
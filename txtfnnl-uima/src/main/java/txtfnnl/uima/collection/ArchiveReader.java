@@ -0,0 +1,414 @@
+package txtfnnl.uima.collection;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.tika.Tika;
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceConfigurationException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import org.uimafit.component.CasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+
+import txtfnnl.uima.CollectionReaderBuilder;
+import txtfnnl.uima.Views;
+
+/**
+ * A collection reader streaming the file entries of tar, zip, or gzip archives, without unpacking
+ * them to disk. Supported are archives with the suffixes <code>.tar</code>, <code>.tar.gz</code>,
+ * <code>.tgz</code>, <code>.zip</code>, and (single, compressed files) <code>.gz</code>. The
+ * MIME type of the entries can be predetermined or automatically detected.
+ * <p>
+ * The content of each entry is placed in the {@link Views#CONTENT_RAW} view as a byte array SOFA,
+ * and the URI of the entry, <code>archive-uri!/entry-path</code>, is annotated as its
+ * {@link RawContent#SOURCE_URI}.
+ * <p>
+ * Archives are read sequentially by background threads, ahead of the processing, into a bounded
+ * queue; If more than one {@link #PARAM_THREADS thread} is used, several archives are read in
+ * parallel, and the order of the entries between archives is not defined.
+ *
+ * @author Florian Leitner
+ */
+public class ArchiveReader extends CasCollectionReader_ImplBase {
+  /** The URI of this reader. */
+  public static final String URI = ArchiveReader.class.getName();
+  /** A list of input archives for this reader to process. At least one archive is required. */
+  public static final String PARAM_INPUT_ARCHIVES = "InputArchives";
+  @ConfigurationParameter(name = PARAM_INPUT_ARCHIVES, mandatory = true)
+  private String[] inputArchives;
+  /**
+   * Optional parameter defining the MIME type of all archive entries. If not given, the MIME type
+   * of each entry will be detected by Tika.
+   *
+   * @see http://www.iana.org/assignments/media-types/index.html
+   */
+  public static final String PARAM_MIME_TYPE = "MimeType";
+  @ConfigurationParameter(name = PARAM_MIME_TYPE)
+  private String mimeType;
+  /** Optional number of archives to read in parallel; defaults to one. */
+  public static final String PARAM_THREADS = "Threads";
+  @ConfigurationParameter(name = PARAM_THREADS, defaultValue = "1")
+  private int numThreads;
+  /** The maximum number of entries read ahead of the processing. */
+  static final int QUEUE_SIZE = 256;
+  /** The size of the read-ahead buffer for each archive file. */
+  static final int BUFFER_SIZE = 1 << 20;
+  /** Marks the end of all archives in the entry queue. */
+  private static final Entry END = new Entry(null, null, null);
+  private File[] archives;
+  /** The entries read from the archives. */
+  private BlockingQueue<Entry> entries;
+  /** The archive reading threads. */
+  private ExecutorService producers;
+  /** The next entry (or {@link #END}), once it has been taken from the queue. */
+  private Entry nextEntry;
+  /** The number of entries read from the archives so far. */
+  private final AtomicInteger found = new AtomicInteger();
+  /** The number of archives that have not been read completely. */
+  private final AtomicInteger pending = new AtomicInteger();
+  /** Count processed entries. */
+  private int counter;
+  private final Tika tika = new Tika(); // for the MIME type detection
+
+  /** An archive entry (or a failure to read an archive). */
+  private static class Entry {
+    final String uri;
+    final byte[] data;
+    final IOException error;
+
+    Entry(String uri, byte[] data, IOException error) {
+      this.uri = uri;
+      this.data = data;
+      this.error = error;
+    }
+  }
+
+  public static class Builder extends CollectionReaderBuilder {
+    protected Builder(Class<? extends CollectionReader> klass, String[] archivePaths) {
+      super(klass);
+      setRequiredParameter(PARAM_INPUT_ARCHIVES, archivePaths);
+    }
+
+    public Builder(String[] archivePaths) {
+      this(ArchiveReader.class, archivePaths);
+    }
+
+    public Builder setMimeType(String mimeType) {
+      setOptionalParameter(PARAM_MIME_TYPE, mimeType);
+      return this;
+    }
+
+    /** Read several archives in parallel. */
+    public Builder setThreads(int threads) {
+      if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+      setOptionalParameter(PARAM_THREADS, threads);
+      return this;
+    }
+  }
+
+  /**
+   * Configure the descriptor builder.
+   *
+   * @param archivePaths the list of input archives to read
+   */
+  public static Builder configure(final String[] archivePaths) {
+    return new Builder(archivePaths);
+  }
+
+  @Override
+  public void initialize(UimaContext ctx) throws ResourceInitializationException {
+    super.initialize(ctx);
+    archives = new File[inputArchives.length];
+    int idx = 0;
+    for (final String fn : inputArchives) {
+      final File f = new File(fn);
+      if (f.isFile() && f.canRead() && isArchive(fn)) {
+        archives[idx++] = f;
+      } else throw new ResourceInitializationException(
+          ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] { fn,
+              PARAM_INPUT_ARCHIVES });
+    }
+    entries = new ArrayBlockingQueue<Entry>(QUEUE_SIZE);
+    nextEntry = null;
+    counter = 0;
+    found.set(0);
+    pending.set(archives.length);
+    producers = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread t = new Thread(r, "ArchiveReader");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    if (archives.length == 0) entries.add(END);
+    for (final File archive : archives) {
+      producers.execute(new Runnable() {
+        public void run() {
+          try {
+            read(archive);
+          } catch (final IOException e) {
+            enqueue(new Entry(archive.getPath(), null, e));
+          } catch (final RuntimeException e) {
+            final IOException error = new IOException("failed to read " + archive.getPath() +
+                ": " + e);
+            error.initCause(e);
+            enqueue(new Entry(archive.getPath(), null, error));
+          } catch (final InterruptedException e) {
+            // the reader was closed
+          } finally {
+            if (pending.decrementAndGet() == 0) enqueue(END);
+          }
+        }
+      });
+    }
+  }
+
+  /** Put an entry on the queue unless the reader was closed. */
+  private void enqueue(Entry entry) {
+    try {
+      entries.put(entry);
+    } catch (final InterruptedException e) {
+      // the reader was closed
+    }
+  }
+
+  /** Return <code>true</code> if the file name has a known archive suffix. */
+  static boolean isArchive(String fileName) {
+    final String name = fileName.toLowerCase();
+    return name.endsWith(".tar") || name.endsWith(".tgz") || name.endsWith(".gz") ||
+        name.endsWith(".zip");
+  }
+
+  /** Put all file entries of an archive on the queue. */
+  private void read(File archive) throws IOException, InterruptedException {
+    final String base = archive.getCanonicalFile().toURI().toString() + "!/";
+    final String name = archive.getName().toLowerCase();
+    InputStream in = new BufferedInputStream(new FileInputStream(archive), BUFFER_SIZE);
+    try {
+      if (name.endsWith(".zip")) {
+        final ZipInputStream zip = new ZipInputStream(in);
+        in = zip;
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+          if (!entry.isDirectory()) put(base, entry.getName(), readAll(zip, entry.getSize()));
+        }
+      } else if (name.endsWith(".gz") || name.endsWith(".tgz")) {
+        in = new GZIPInputStream(in, BUFFER_SIZE / 16);
+        if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+          readTar(in, base);
+        } else {
+          // a single, compressed file
+          put(base, archive.getName().substring(0, name.length() - 3), readAll(in, -1));
+        }
+      } else {
+        readTar(in, base);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Put all regular file entries of a tar stream on the queue. */
+  private void readTar(InputStream in, String base) throws IOException, InterruptedException {
+    final byte[] header = new byte[512];
+    String longName = null;
+    while (readBlock(in, header)) {
+      if (header[0] == 0) break; // end-of-archive marker
+      String path = longName;
+      longName = null;
+      if (path == null) {
+        path = field(header, 0, 100);
+        // ustar archives might split long names into a prefix and a name
+        if ("ustar".equals(field(header, 257, 6).trim()) && header[345] != 0)
+          path = field(header, 345, 155) + "/" + path;
+      }
+      final long size = octal(header, 124, 12);
+      final byte type = header[156];
+      if (type == '0' || type == 0 || type == 'L' || type == 'x') {
+        final byte[] data = readAll(in, size);
+        if (type == 'L') longName = field(data, 0, data.length); // GNU long name
+        else if (type == 'x') longName = paxPath(data); // POSIX extended header
+        else put(base, path, data);
+      } else {
+        skip(in, size);
+      }
+      skip(in, (512 - size % 512) % 512);
+    }
+  }
+
+  /** Add an entry to the queue. */
+  private void put(String base, String path, byte[] data) throws IOException,
+      InterruptedException {
+    try {
+      final String uri = base + new URI(null, null, path, null).getRawPath();
+      found.incrementAndGet();
+      entries.put(new Entry(uri, data, null));
+    } catch (final URISyntaxException e) {
+      throw new IOException("illegal entry path '" + path + "' in " + base);
+    }
+  }
+
+  /** Read a complete block; Return <code>false</code> if the stream has no more data. */
+  private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+    int offset = 0;
+    while (offset < block.length) {
+      final int read = in.read(block, offset, block.length - offset);
+      if (read == -1) {
+        if (offset == 0) return false;
+        throw new EOFException("truncated tar block");
+      }
+      offset += read;
+    }
+    return true;
+  }
+
+  /** Read <code>size</code> bytes or, if the size is unknown (negative), the rest of the stream. */
+  private static byte[] readAll(InputStream in, long size) throws IOException {
+    if (size > Integer.MAX_VALUE) throw new IOException("entry too large: " + size + " bytes");
+    if (size > -1) {
+      final byte[] data = new byte[(int) size];
+      if (size > 0 && !readBlock(in, data)) throw new EOFException("truncated entry");
+      return data;
+    }
+    byte[] data = new byte[8192];
+    int length = 0;
+    int read;
+    while ((read = in.read(data, length, data.length - length)) != -1) {
+      length += read;
+      if (length == data.length) {
+        final byte[] tmp = new byte[data.length * 2];
+        System.arraycopy(data, 0, tmp, 0, length);
+        data = tmp;
+      }
+    }
+    final byte[] result = new byte[length];
+    System.arraycopy(data, 0, result, 0, length);
+    return result;
+  }
+
+  private static void skip(InputStream in, long bytes) throws IOException {
+    while (bytes > 0) {
+      final long skipped = in.skip(bytes);
+      if (skipped < 1) {
+        if (in.read() == -1) throw new EOFException("truncated tar entry");
+        --bytes;
+      } else {
+        bytes -= skipped;
+      }
+    }
+  }
+
+  /** Read a NUL-terminated tar header field. */
+  private static String field(byte[] header, int offset, int length) throws IOException {
+    int end = offset;
+    while (end < offset + length && header[end] != 0)
+      ++end;
+    return new String(header, offset, end - offset, "UTF-8");
+  }
+
+  /** Read a numeric tar header field. */
+  private static long octal(byte[] header, int offset, int length) throws IOException {
+    final String value = field(header, offset, length).trim();
+    try {
+      return value.length() == 0 ? 0 : Long.parseLong(value, 8);
+    } catch (final NumberFormatException e) {
+      throw new IOException("not a tar archive (illegal header field '" + value + "')");
+    }
+  }
+
+  /** Return the path of a POSIX extended header, or <code>null</code> if it has none. */
+  private static String paxPath(byte[] data) throws IOException {
+    // records have the format "length key=value\n", where length includes the whole record
+    int pos = 0;
+    while (pos < data.length) {
+      final int space = indexOf(data, (byte) ' ', pos);
+      if (space == -1) break;
+      final int length;
+      try {
+        length = Integer.parseInt(new String(data, pos, space - pos, "UTF-8"));
+      } catch (final NumberFormatException e) {
+        throw new IOException("illegal extended header record length at byte " + pos);
+      }
+      if (length < space - pos + 2 || pos + length > data.length)
+        throw new IOException("illegal extended header record length " + length);
+      final String record = new String(data, space + 1, length - (space - pos) - 2, "UTF-8");
+      if (record.startsWith("path=")) return record.substring(5);
+      pos += length;
+    }
+    return null;
+  }
+
+  private static int indexOf(byte[] data, byte b, int from) {
+    for (int i = from; i < data.length; ++i)
+      if (data[i] == b) return i;
+    return -1;
+  }
+
+  public void getNext(CAS aCAS) throws IOException, CollectionException {
+    if (!hasNext()) throw new NoSuchElementException();
+    final Entry entry = nextEntry;
+    nextEntry = null;
+    if (entry.error != null) throw entry.error;
+    JCas jcas;
+    try {
+      jcas = aCAS.createView(Views.CONTENT_RAW.toString()).getJCas();
+    } catch (final CASException e) {
+      throw new CollectionException(e);
+    }
+    // set the new SOFA's data and MIME type
+    RawContent.setLocalData(jcas, entry.data,
+        mimeType == null ? tika.detect(entry.data, entry.uri) : mimeType, entry.uri, URI);
+    counter++;
+  }
+
+  /** Wait until the next entry has been read or all archives are complete. */
+  public boolean hasNext() throws IOException, CollectionException {
+    if (nextEntry == null) {
+      try {
+        nextEntry = entries.take();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CollectionException(e);
+      }
+    }
+    return nextEntry != END;
+  }
+
+  /**
+   * Report the processed entries; Until all archives have been read, the total is an estimate:
+   * the number of entries read so far.
+   */
+  public Progress[] getProgress() {
+    final boolean done = pending.get() == 0;
+    return new Progress[] { new ProgressImpl(counter, found.get(), Progress.ENTITIES, !done) };
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (producers != null) producers.shutdownNow();
+  }
+}
@@ -0,0 +1,208 @@
+package txtfnnl.uima.collection;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.admin.CASMgr;
+import org.apache.uima.cas.impl.CASImpl;
+import org.apache.uima.cas.impl.CASMgrSerializer;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.ResourceConfigurationException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import org.uimafit.component.CasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+
+import txtfnnl.uima.CollectionReaderBuilder;
+
+/**
+ * A collection reader for the binary CAS files (or shards) written by the
+ * {@link BinaryCasWriter}. Each CAS is restored completely, with all its views, so the pipeline
+ * can continue where the writer left off.
+ * <p>
+ * The type system in the header of each file is compared to the type system of the reader's CAS;
+ * reading fails if they differ.
+ *
+ * @author Florian Leitner
+ */
+public class BinaryCasReader extends CasCollectionReader_ImplBase {
+  /**
+   * A list of binary CAS files or directories for this reader to process; all
+   * <code>.bcas</code> and <code>.bcas.gz</code> files in a directory are read, in name order. At
+   * least one input file is required.
+   */
+  public static final String PARAM_INPUT_FILES = "InputFiles";
+  @ConfigurationParameter(name = PARAM_INPUT_FILES, mandatory = true)
+  private String[] inputFiles;
+  private File[] files;
+  /** The index of the file being read. */
+  private int fileIdx;
+  /** The stream of the file being read (or <code>null</code>). */
+  private DataInputStream input;
+  /** The type system of the file being read (or <code>null</code> before its header). */
+  private CASMgrSerializer typeSystem;
+  /** <code>true</code> if the type system of the file being read has been verified. */
+  private boolean verified;
+  /** The next serialized CAS (or <code>null</code> if there are no more). */
+  private byte[] next;
+  /** Count read CASes. */
+  private int counter;
+
+  public static class Builder extends CollectionReaderBuilder {
+    protected Builder(Class<? extends CollectionReader> klass, String[] filePaths) {
+      super(klass);
+      setRequiredParameter(PARAM_INPUT_FILES, filePaths);
+    }
+
+    public Builder(String[] filePaths) {
+      this(BinaryCasReader.class, filePaths);
+    }
+  }
+
+  /**
+   * Configure the descriptor builder.
+   *
+   * @param filePaths the list of input files or directories to read
+   */
+  public static Builder configure(final String[] filePaths) {
+    return new Builder(filePaths);
+  }
+
+  @Override
+  public void initialize(UimaContext ctx) throws ResourceInitializationException {
+    super.initialize(ctx);
+    final List<File> list = new ArrayList<File>();
+    for (final String fn : inputFiles) {
+      final File f = new File(fn);
+      if (f.isDirectory() && f.canRead()) {
+        final File[] content = f.listFiles(new FileFilter() {
+          public boolean accept(File file) {
+            final String name = file.getName();
+            return file.isFile() &&
+                (name.endsWith("." + BinaryCasWriter.EXTENSION) || name.endsWith("." +
+                    BinaryCasWriter.EXTENSION + ".gz"));
+          }
+        });
+        Arrays.sort(content);
+        list.addAll(Arrays.asList(content));
+      } else if (f.exists() && f.canRead()) {
+        list.add(f);
+      } else throw new ResourceInitializationException(
+          ResourceConfigurationException.RESOURCE_DATA_NOT_VALID, new Object[] { fn,
+              PARAM_INPUT_FILES });
+    }
+    files = list.toArray(new File[list.size()]);
+    fileIdx = -1;
+    input = null;
+    counter = 0;
+    try {
+      next = readNext();
+    } catch (final IOException e) {
+      throw new ResourceInitializationException(e);
+    }
+  }
+
+  /**
+   * Read the next CAS block, opening the next files as necessary.
+   *
+   * @return the serialized CAS or <code>null</code> if all files have been read
+   */
+  private byte[] readNext() throws IOException {
+    while (true) {
+      if (input == null) {
+        if (++fileIdx == files.length) return null;
+        input = open(files[fileIdx]);
+        typeSystem = null;
+      }
+      final int tag = input.read();
+      if (tag == -1) {
+        input.close();
+        input = null;
+        continue;
+      }
+      final byte[] data = new byte[input.readInt()];
+      input.readFully(data);
+      if (tag == BinaryCasWriter.DOCUMENT) {
+        if (typeSystem == null)
+          throw new IOException("no type system header in " + files[fileIdx]);
+        return data;
+      } else if (tag == BinaryCasWriter.HEADER) {
+        try {
+          typeSystem = (CASMgrSerializer) new ObjectInputStream(new ByteArrayInputStream(data))
+              .readObject();
+        } catch (final ClassNotFoundException e) {
+          throw new IOException("illegal type system header in " + files[fileIdx]);
+        }
+        verified = false;
+      } else {
+        throw new IOException("illegal block tag " + tag + " in " + files[fileIdx]);
+      }
+    }
+  }
+
+  /** Open a (possibly GZIP-compressed) binary CAS file. */
+  static DataInputStream open(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), OutputWriter.BUFFER_SIZE);
+    in.mark(2);
+    final int magic = in.read() | (in.read() << 8);
+    in.reset();
+    if (magic == GZIPInputStream.GZIP_MAGIC)
+      in = new BufferedInputStream(new GZIPInputStream(in, OutputWriter.BUFFER_SIZE),
+          OutputWriter.BUFFER_SIZE);
+    return new DataInputStream(in);
+  }
+
+  public void getNext(CAS aCAS) throws IOException, CollectionException {
+    if (!hasNext()) throw new NoSuchElementException();
+    if (!verified) {
+      final CASMgrSerializer expected = Serialization.serializeCASMgr((CASMgr) ((CASImpl) aCAS)
+          .getBaseCAS());
+      if (!Arrays.equals(expected.typeNames, typeSystem.typeNames) ||
+          !Arrays.equals(expected.featureNames, typeSystem.featureNames))
+        throw new CollectionException(new IOException("the type system of " + files[fileIdx] +
+            " differs from the reader's type system"));
+      verified = true;
+    }
+    Serialization.deserializeCAS(aCAS, new ByteArrayInputStream(next));
+    counter++;
+    try {
+      next = readNext();
+    } catch (final EOFException e) {
+      throw new IOException(files[fileIdx] + " is truncated");
+    }
+  }
+
+  public boolean hasNext() throws IOException, CollectionException {
+    return next != null;
+  }
+
+  public Progress[] getProgress() {
+    return new Progress[] { new ProgressImpl(counter, counter + (next == null ? 0 : 1),
+        Progress.ENTITIES, next != null) };
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (input != null) input.close();
+    input = null;
+  }
+}
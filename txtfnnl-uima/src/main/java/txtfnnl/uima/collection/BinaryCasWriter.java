@@ -0,0 +1,166 @@
+package txtfnnl.uima.collection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_component.AnalysisComponent;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.admin.CASMgr;
+import org.apache.uima.cas.impl.CASImpl;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+import org.uimafit.descriptor.ConfigurationParameter;
+
+/**
+ * A CAS consumer that serializes the complete CAS (all views) in UIMA's binary format, to be
+ * read back by the {@link BinaryCasReader}. Compared to {@link XmiWriter XMI}, the files are far
+ * smaller and faster to load, which makes this the format of choice for pipelines that are split
+ * into several phases.
+ * <p>
+ * Each file (or {@link OutputWriter#PARAM_SHARD_MAX_BYTES shard}) starts with a header block that
+ * holds the type system and index definitions of the CAS, followed by one block per document.
+ * Each block is a tag byte (<code>'H'</code> or <code>'C'</code>), the length of the block's data
+ * (a 4-byte integer), and the data. By default, each document (the header included) is
+ * compressed as a separate GZIP member. Note that the binary format requires the reader to use
+ * the same type system as the writer.
+ *
+ * @author Florian Leitner
+ */
+public class BinaryCasWriter extends OutputWriter {
+  /** The tag of a header block. */
+  static final byte HEADER = 'H';
+  /** The tag of a CAS block. */
+  static final byte DOCUMENT = 'C';
+  /** The extension of the output files. */
+  public static final String EXTENSION = "bcas";
+  /**
+   * Compress each document with GZIP; defaults to <code>true</code>. If the output is sharded and
+   * {@link OutputWriter#PARAM_COMPRESS_SHARDS} is set, the shards compress the documents instead.
+   */
+  public static final String PARAM_COMPRESS = "Compress";
+  @ConfigurationParameter(name = PARAM_COMPRESS, defaultValue = "true")
+  private boolean compress;
+  private Logger logger;
+  /** The type system the current header was created for. */
+  private TypeSystem typeSystem = null;
+  private byte[] header = null;
+
+  public static class Builder extends OutputWriter.Builder {
+    protected Builder(Class<? extends AnalysisComponent> klass, File outputDirectory) {
+      super(klass);
+      setRequiredParameter(PARAM_OUTPUT_DIRECTORY, outputDirectory);
+    }
+
+    public Builder(File outputDirectory) {
+      this(BinaryCasWriter.class, outputDirectory);
+    }
+
+    /** Set an output directory instead of writing to STDOUT. */
+    @Override
+    public Builder setOutputDirectory(File outputDirectory) {
+      setRequiredParameter(PARAM_OUTPUT_DIRECTORY, outputDirectory);
+      return this;
+    }
+
+    /** Do not compress the serialized CASes. */
+    public Builder doNotCompress() {
+      setOptionalParameter(PARAM_COMPRESS, Boolean.FALSE);
+      return this;
+    }
+  }
+
+  /** Configure a default builder for writing binary CASes to a directory. */
+  public static Builder configure(File outputDirectory) {
+    return new Builder(outputDirectory);
+  }
+
+  @Override
+  public void initialize(UimaContext ctx) throws ResourceInitializationException {
+    super.initialize(ctx);
+    logger = ctx.getLogger();
+    if (!outputDirectory.exists()) {
+      outputDirectory.mkdirs();
+    }
+    if (!(outputDirectory.isDirectory() && outputDirectory.canWrite()))
+      throw new ResourceInitializationException(new IOException(PARAM_OUTPUT_DIRECTORY + "='" +
+          outputDirectory + "' not a writeable directory"));
+    if (isSharded() && compressShards) compress = false;
+    typeSystem = null;
+    header = null;
+    logger.log(Level.CONFIG, "initialized {0}", this.getClass().getName());
+  }
+
+  /**
+   * Serialize the CAS (with all its views) to a file or shard; the type system is written as the
+   * header of each file or shard.
+   *
+   * @param cas CAS to serialize
+   */
+  @Override
+  public void process(CAS cas) throws AnalysisEngineProcessException {
+    try {
+      if (cas.getTypeSystem() != typeSystem) {
+        typeSystem = cas.getTypeSystem();
+        header = compress(serializeHeader(cas));
+        setShardHeader(header);
+      }
+      final byte[] document = compress(serializeDocument(cas));
+      final String ext = compress ? EXTENSION + ".gz" : EXTENSION;
+      if (isSharded()) {
+        writeOutput(cas.getJCas(), ext, document);
+      } else {
+        final byte[] content = new byte[header.length + document.length];
+        System.arraycopy(header, 0, content, 0, header.length);
+        System.arraycopy(document, 0, content, header.length, document.length);
+        writeOutput(cas.getJCas(), ext, content);
+      }
+    } catch (final IOException e) {
+      throw new AnalysisEngineProcessException(e);
+    } catch (final CASException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+  }
+
+  private byte[] compress(byte[] block) throws IOException {
+    return compress ? ShardedOutput.gzip(block) : block;
+  }
+
+  /** Serialize the type system and index definitions of a CAS to a header block. */
+  static byte[] serializeHeader(CAS cas) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final ObjectOutputStream out = new ObjectOutputStream(buffer);
+    out.writeObject(Serialization.serializeCASMgr((CASMgr) ((CASImpl) cas).getBaseCAS()));
+    out.close();
+    return block(HEADER, buffer);
+  }
+
+  /** Serialize a CAS (with all its views) to a document block. */
+  static byte[] serializeDocument(CAS cas) {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+    Serialization.serializeCAS(cas, buffer);
+    return block(DOCUMENT, buffer);
+  }
+
+  private static byte[] block(byte tag, ByteArrayOutputStream data) {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.size() + 5);
+    final DataOutputStream out = new DataOutputStream(buffer);
+    try {
+      out.writeByte(tag);
+      out.writeInt(data.size());
+      data.writeTo(out);
+    } catch (final IOException e) {
+      throw new AssertionError(e); // never happens in memory
+    }
+    return buffer.toByteArray();
+  }
+}
@@ -2,13 +2,11 @@ package txtfnnl.uima.collection;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 
-import org.apache.tika.Tika;
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.collection.CollectionException;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.resource.ResourceConfigurationException;
@@ -26,6 +24,11 @@ import txtfnnl.uima.Views;
  * A collection reader from a directory containing the input files, possibly traversing any
  * sub-directories. The MIME type of the input files can be predetermined or automatically
  * detected.
+ * <p>
+ * The directory is traversed lazily by a background thread that feeds the files it finds into a
+ * bounded queue, so that reading can start as soon as the first file has been found. Until the
+ * traversal is complete, the {@link #getProgress() progress} total is an (approximate) estimate:
+ * the number of files found so far. The MIME types are detected on the traversal thread, too.
  * 
  * @author Florian Leitner
  */
@@ -34,11 +37,10 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
   public static final String PARAM_DIRECTORY = "InputDirectory";
   @ConfigurationParameter(name = PARAM_DIRECTORY, mandatory = true)
   private File inputDirectory;
-  /** Will be populated with the files found in the directory. */
-  private List<File> files;
   /**
    * Optional parameter defining the MIME type of all input files. If not given, the MIME type of
-   * each file will be detected by Tika.
+   * each file will be detected by its extension or, if ambiguous, by Tika (see
+   * {@link MimeTypeDetector}).
    * 
    * @see http://www.iana.org/assignments/media-types/index.html
    */
@@ -52,6 +54,14 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
   public static final String PARAM_RECURSIVE = "Recursive";
   @ConfigurationParameter(name = PARAM_RECURSIVE, defaultValue = "false")
   private boolean recursive;
+  /**
+   * Optional number of files to read ahead of the processing; By default, the files' content is
+   * not prefetched, but read from the SOFA data URI by the first AE. If prefetching, the content is
+   * set as local SOFA data, and the file URI is annotated as its {@link RawContent#SOURCE_URI}.
+   */
+  public static final String PARAM_PREFETCH = "Prefetch";
+  @ConfigurationParameter(name = PARAM_PREFETCH, defaultValue = "0")
+  private int prefetch;
   /* TODO: set document language
    * Optional parameter defining the language used in the input documents.
    * 
@@ -59,9 +69,14 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
   @ConfigurationParameter(name = PARAM_LANGUAGE)
   private String language;
    */
+  /** The traversal thread. */
+  private DirectoryWalker walker;
+  /**
+   * The next document to read (or {@link FileProducer#END}), once it has been taken from the
+   * queue.
+   */
+  private FileProducer.Document nextDocument;
   private int counter;
-  private Iterator<File> fileIter;
-  private final Tika tika = new Tika(); // for MIME type detection
 
   public static class Builder extends CollectionReaderBuilder {
     protected Builder(Class<? extends CollectionReader> klass, File dir) {
@@ -90,6 +105,17 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
       setOptionalParameter(PARAM_RECURSIVE, Boolean.TRUE);
       return this;
     }
+
+    /**
+     * Read the content of the next files ahead of the processing.
+     * 
+     * @param files the maximum number of files to read ahead
+     */
+    public Builder prefetch(int files) {
+      if (files < 0) throw new IllegalArgumentException("negative number of files");
+      setOptionalParameter(PARAM_PREFETCH, files);
+      return this;
+    }
   }
 
   /**
@@ -109,40 +135,73 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
       throw new ResourceInitializationException(
           ResourceConfigurationException.DIRECTORY_NOT_FOUND, new Object[] { PARAM_DIRECTORY,
               getMetaData().getName(), inputDirectory.getPath() });
-    files = DirectoryReader.addFilesFromDir(inputDirectory, recursive);
-    fileIter = files.iterator();
+    nextDocument = null;
     counter = 0;
+    walker = new DirectoryWalker(inputDirectory, recursive, mimeType, prefetch);
+    walker.start();
   }
 
-  /**
-   * Starting from a given directory, return all files in it. If recurse is <code>true</code>,
-   * include files in sub-directories, too.
-   * 
-   * @param dir to scan for files
-   * @param recurse determines if sub-directories are scanned, too
-   * @return the list of files found in the directory
-   */
-  private static List<File> addFilesFromDir(File dir, boolean recurse) {
-    final File[] entries = dir.listFiles();
-    final List<File> collector = new LinkedList<File>();
-    if (entries != null) {
-      for (int i = 0; i < entries.length; i++) {
-        if (entries[i].isFile()) {
-          collector.add(entries[i]);
-        } else if (recurse && entries[i].isDirectory()) {
-          collector.addAll(DirectoryReader.addFilesFromDir(entries[i], recurse));
+  /** A producer that traverses a directory and puts all files it finds on the queue. */
+  static class DirectoryWalker extends FileProducer {
+    private final File directory;
+    private final boolean recurse;
+
+    /**
+     * Create a new traversal thread.
+     * 
+     * @param dir to scan for files
+     * @param recurse determines if sub-directories are scanned, too
+     * @param mimeType of all files; if <code>null</code>, the type of each file is detected
+     * @param prefetch the maximum number of files to read ahead
+     */
+    DirectoryWalker(File dir, boolean recurse, String mimeType, int prefetch) {
+      super("DirectoryReader " + dir.getPath(), mimeType, prefetch);
+      directory = dir;
+      this.recurse = recurse;
+    }
+
+    @Override
+    void produce() throws InterruptedException {
+      walk(directory);
+    }
+
+    /**
+     * Put all files in a directory on the queue, traversing sub-directories in place if the
+     * traversal is recursive.
+     */
+    private void walk(File dir) throws InterruptedException {
+      final File[] entries = dir.listFiles();
+      if (entries != null) {
+        for (final File entry : entries) {
+          if (entry.isFile()) {
+            put(entry);
+          } else if (recurse && entry.isDirectory()) {
+            walk(entry);
+          }
         }
       }
     }
-    return collector;
   }
 
   public void getNext(CAS aCAS) throws IOException, CollectionException {
+    if (!hasNext()) throw new NoSuchElementException();
     final CAS rawDocument = aCAS.createView(Views.CONTENT_RAW.toString());
     // set the new SOFA's data URI and MIME type
-    final File file = fileIter.next();
+    final FileProducer.Document doc = nextDocument;
+    nextDocument = null;
+    if (doc.error != null) throw doc.error;
+    final File file = doc.file;
     final String uri = file.getCanonicalFile().toURI().toString();
-    rawDocument.setSofaDataURI(uri, mimeType == null ? tika.detect(file) : mimeType);
+    if (doc.content == null) {
+      rawDocument.setSofaDataURI(uri, doc.mimeType);
+    } else {
+      try {
+        RawContent.setLocalData(rawDocument.getJCas(), doc.getContent(), doc.mimeType, uri,
+            DirectoryReader.class.getName());
+      } catch (final CASException e) {
+        throw new CollectionException(e);
+      }
+    }
     /* TODO: set document language
     if (language != null) {
     	jcas.setDocumentLanguage(language);
@@ -155,14 +214,26 @@ public class DirectoryReader extends CasCollectionReader_ImplBase {
     counter++;
   }
 
+  /** Wait until the traversal has found the next file or is complete. */
   public boolean hasNext() throws IOException, CollectionException {
-    return fileIter.hasNext();
+    if (nextDocument == null) {
+      try {
+        nextDocument = walker.take();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CollectionException(e);
+      }
+    }
+    return nextDocument != FileProducer.END;
   }
 
   public Progress[] getProgress() {
-    return new Progress[] { new ProgressImpl(counter, files.size(), Progress.ENTITIES) };
+    final boolean done = walker.isDone();
+    return new Progress[] { new ProgressImpl(counter, walker.getFound(), Progress.ENTITIES, !done) };
   }
 
   @Override
-  public void close() throws IOException {}
+  public void close() throws IOException {
+    if (walker != null) walker.halt();
+  }
 }
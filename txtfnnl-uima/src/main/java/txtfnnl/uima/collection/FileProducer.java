@@ -0,0 +1,208 @@
+package txtfnnl.uima.collection;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A daemon thread that feeds the input files of a collection reader into a bounded queue, ahead of
+ * the reader, followed by an {@link #END} marker. The MIME type of each file is detected on this
+ * thread (unless predetermined), so the reader never blocks on detection I/O.
+ * <p>
+ * Optionally, the content of the next files is prefetched by a small pool of I/O threads, so that
+ * the (CPU-bound) analysis engines never wait for the disk. Each file is read through its channel
+ * directly into an array of its exact size.
+ *
+ * @author Florian Leitner
+ */
+abstract class FileProducer extends Thread {
+  /** The maximum number of files that wait to be read. */
+  static final int QUEUE_SIZE = 1024;
+  /** The maximum number of threads prefetching file content. */
+  static final int MAX_IO_THREADS = 4;
+  /** Marks the end of the input files in the queue. */
+  static final Document END = new Document(null, null, null);
+  private final BlockingQueue<Document> queue = new ArrayBlockingQueue<Document>(QUEUE_SIZE);
+  /** The predetermined MIME type of all files (or <code>null</code>). */
+  private final String mimeType;
+  private final MimeTypeDetector detector;
+  /** The prefetching I/O threads (or <code>null</code>). */
+  private final ExecutorService io;
+  /** Limits the number of files prefetched ahead of the reader. */
+  private final Semaphore prefetchLimit;
+  /** The number of files produced so far. */
+  private volatile int found = 0;
+  /** Set to <code>true</code> once all files have been produced. */
+  private volatile boolean done = false;
+
+  /** An input file and its MIME type (or the failure to detect the type). */
+  static class Document {
+    final File file;
+    final String mimeType;
+    final IOException error;
+    /** The prefetched content (or <code>null</code> if not prefetching). */
+    Future<byte[]> content = null;
+
+    Document(File file, String mimeType, IOException error) {
+      this.file = file;
+      this.mimeType = mimeType;
+      this.error = error;
+    }
+
+    /** Wait for the prefetched content of the file. */
+    byte[] getContent() throws IOException {
+      try {
+        return content.get();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while prefetching " + file);
+      } catch (final ExecutionException e) {
+        if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+        throw new IOException("prefetching " + file + " failed: " + e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Create a new producer thread.
+   *
+   * @param name of the thread
+   * @param mimeType of all files; if <code>null</code>, the type of each file is detected
+   */
+  FileProducer(String name, String mimeType) {
+    this(name, mimeType, 0);
+  }
+
+  /**
+   * Create a new producer thread that prefetches the content of the files.
+   *
+   * @param name of the thread
+   * @param mimeType of all files; if <code>null</code>, the type of each file is detected
+   * @param prefetch the maximum number of files to read ahead; if zero, no content is prefetched
+   */
+  FileProducer(final String name, String mimeType, int prefetch) {
+    super(name);
+    setDaemon(true);
+    this.mimeType = mimeType;
+    detector = (mimeType == null) ? new MimeTypeDetector() : null;
+    if (prefetch > 0) {
+      prefetchLimit = new Semaphore(prefetch);
+      io = Executors.newFixedThreadPool(Math.min(prefetch, MAX_IO_THREADS), new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread t = new Thread(r, name + " I/O");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    } else {
+      prefetchLimit = null;
+      io = null;
+    }
+  }
+
+  /** Produce all input files, using {@link #put(File)}. */
+  abstract void produce() throws InterruptedException;
+
+  @Override
+  public void run() {
+    boolean closed = false;
+    try {
+      produce();
+    } catch (final InterruptedException e) {
+      closed = true; // the reader was closed
+    } catch (final RuntimeException e) {
+      final IOException error = new IOException(getName() + " failed: " + e);
+      error.initCause(e);
+      closed = !enqueue(new Document(null, null, error));
+    } finally {
+      done = true;
+      if (!closed) enqueue(END);
+    }
+  }
+
+  /** Add a document to the queue; Return <code>false</code> if the reader was closed. */
+  private boolean enqueue(Document doc) {
+    try {
+      queue.put(doc);
+      return true;
+    } catch (final InterruptedException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Detect the MIME type of the file (if necessary), start prefetching its content (if enabled),
+   * and add it to the queue.
+   */
+  void put(final File file) throws InterruptedException {
+    Document doc;
+    try {
+      doc = new Document(file, (detector == null) ? mimeType : detector.detect(file), null);
+    } catch (final IOException e) {
+      doc = new Document(file, null, e);
+    }
+    if (io != null && doc.error == null) {
+      prefetchLimit.acquire();
+      doc.content = io.submit(new Callable<byte[]>() {
+        public byte[] call() throws IOException {
+          return read(file);
+        }
+      });
+    }
+    ++found;
+    queue.put(doc);
+  }
+
+  /** Wait for the next document (or the {@link #END} marker, which is returned repeatedly). */
+  Document take() throws InterruptedException {
+    final Document doc = queue.take();
+    if (doc == END) queue.put(END);
+    else if (doc.content != null) prefetchLimit.release();
+    return doc;
+  }
+
+  /** Stop producing files and prefetching their content. */
+  void halt() {
+    interrupt();
+    if (io != null) io.shutdownNow();
+  }
+
+  /** Read the whole content of a file. */
+  static byte[] read(File file) throws IOException {
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      final FileChannel channel = in.getChannel();
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) throw new IOException(file + " is too large");
+      final byte[] data = new byte[(int) size];
+      final ByteBuffer buffer = ByteBuffer.wrap(data);
+      while (buffer.hasRemaining())
+        if (channel.read(buffer) == -1) throw new EOFException(file + " was truncated");
+      return data;
+    } finally {
+      in.close();
+    }
+  }
+
+  /** Return the number of files produced so far. */
+  int getFound() {
+    return found;
+  }
+
+  /** Return <code>true</code> if all files have been produced. */
+  boolean isDone() {
+    return done;
+  }
+}
@@ -2,8 +2,8 @@ package txtfnnl.uima.collection;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.NoSuchElementException;
 
-import org.apache.tika.Tika;
 import org.apache.uima.UimaContext;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
@@ -23,7 +23,8 @@ import txtfnnl.uima.Views;
 
 /**
  * A collection reader for an array of file paths. The MIME type of the input files can be
- * predetermined or automatically detected.
+ * predetermined or automatically detected; Detection runs on a background thread ahead of the
+ * reader.
  * 
  * @author Florian Leitner
  */
@@ -37,13 +38,22 @@ public class FileReader extends CasCollectionReader_ImplBase {
   private File[] files;
   /**
    * Optional parameter defining the MIME type of all input files. If not given, the MIME type of
-   * each file will be detected by Tika.
+   * each file will be detected by its extension or, if ambiguous, by Tika (see
+   * {@link MimeTypeDetector}).
    * 
    * @see http://www.iana.org/assignments/media-types/index.html
    */
   public static final String PARAM_MIME_TYPE = "MimeType";
   @ConfigurationParameter(name = PARAM_MIME_TYPE)
   private String mimeType;
+  /**
+   * Optional number of files to read ahead of the processing; By default, the files' content is
+   * not prefetched, but read from the SOFA data URI by the first AE. If prefetching, the content is
+   * set as local SOFA data, and the file URI is annotated as its {@link RawContent#SOURCE_URI}.
+   */
+  public static final String PARAM_PREFETCH = "Prefetch";
+  @ConfigurationParameter(name = PARAM_PREFETCH, defaultValue = "0")
+  private int prefetch;
   /* TODO: set document language
    * Optional parameter defining the language used in the input documents.
    * 
@@ -53,7 +63,8 @@ public class FileReader extends CasCollectionReader_ImplBase {
    */
   /** Count processed files. */
   private int counter = 0;
-  private final Tika tika = new Tika(); // for the MIME type detection
+  /** The thread producing the files (and their MIME types). */
+  private FileProducer producer;
 
   public static class Builder extends CollectionReaderBuilder {
     protected Builder(Class<? extends CollectionReader> klass, String[] filePaths) {
@@ -69,6 +80,17 @@ public class FileReader extends CasCollectionReader_ImplBase {
       setOptionalParameter(PARAM_MIME_TYPE, mimeType);
       return this;
     }
+
+    /**
+     * Read the content of the next files ahead of the processing.
+     * 
+     * @param files the maximum number of files to read ahead
+     */
+    public Builder prefetch(int files) {
+      if (files < 0) throw new IllegalArgumentException("negative number of files");
+      setOptionalParameter(PARAM_PREFETCH, files);
+      return this;
+    }
   }
 
   /**
@@ -95,9 +117,18 @@ public class FileReader extends CasCollectionReader_ImplBase {
               PARAM_INPUT_FILES });
     }
     counter = 0;
+    producer = new FileProducer("FileReader", mimeType, prefetch) {
+      @Override
+      void produce() throws InterruptedException {
+        for (final File f : files)
+          put(f);
+      }
+    };
+    producer.start();
   }
 
   public void getNext(CAS aCAS) throws IOException, CollectionException {
+    if (!hasNext()) throw new NoSuchElementException();
     JCas jcas;
     try {
       jcas = aCAS.createView(Views.CONTENT_RAW.toString()).getJCas();
@@ -105,13 +136,19 @@ public class FileReader extends CasCollectionReader_ImplBase {
       throw new CollectionException(e);
     }
     // set the new SOFA's data URI and MIME type
-    final File file = files[counter];
-    final String uri = file.getCanonicalFile().toURI().toString();
-    String fileMime = mimeType;
-    if (mimeType == null) {
-      fileMime = tika.detect(file);
+    final FileProducer.Document doc;
+    try {
+      doc = producer.take();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CollectionException(e);
     }
-    jcas.setSofaDataURI(uri, fileMime);
+    if (doc == FileProducer.END) throw new IOException("no more files could be produced");
+    if (doc.error != null) throw doc.error;
+    final String uri = doc.file.getCanonicalFile().toURI().toString();
+    if (doc.content == null) jcas.setSofaDataURI(uri, doc.mimeType);
+    else RawContent.setLocalData(jcas, doc.getContent(), doc.mimeType, uri,
+        FileReader.class.getName());
     /* TODO: set document language
     if (language != null) {
     	jcas.setDocumentLanguage(language);
@@ -133,5 +170,7 @@ public class FileReader extends CasCollectionReader_ImplBase {
   }
 
   @Override
-  public void close() throws IOException {}
+  public void close() throws IOException {
+    if (producer != null) producer.halt();
+  }
 }
@@ -0,0 +1,56 @@
+package txtfnnl.uima.collection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MediaType;
+
+/**
+ * A MIME type detector for input files that avoids reading the files whenever possible.
+ * <p>
+ * The type is resolved by the file's extension first, and only if that type is ambiguous (unknown,
+ * plain-text, or generic XML), Tika inspects the magic bytes of the file. The result is cached per
+ * directory and extension, assuming that all files with the same extension in a directory have the
+ * same type. Files without an extension are always inspected.
+ *
+ * @author Florian Leitner
+ */
+class MimeTypeDetector {
+  /** Types detected by file name that need to be resolved by the file's magic bytes. */
+  static final String[] AMBIGUOUS = { MediaType.OCTET_STREAM.toString(),
+      MediaType.TEXT_PLAIN.toString(), MediaType.APPLICATION_XML.toString(), "text/xml" };
+  private final Tika tika = new Tika();
+  /** Detected types by directory and extension. */
+  private final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+
+  /**
+   * Detect the MIME type of a file.
+   *
+   * @param file to detect the type for
+   * @return the detected MIME type
+   * @throws IOException if the file has to be inspected and cannot be read
+   */
+  String detect(File file) throws IOException {
+    final String name = file.getName();
+    final int dot = name.lastIndexOf('.');
+    if (dot < 1 || dot == name.length() - 1) return tika.detect(file);
+    final String key = file.getParent() + File.separatorChar + name.substring(dot).toLowerCase();
+    String type = cache.get(key);
+    if (type == null) {
+      type = tika.detect(name);
+      if (isAmbiguous(type)) type = tika.detect(file);
+      cache.put(key, type);
+    }
+    return type;
+  }
+
+  /** Return <code>true</code> if the type has to be resolved by inspecting the content. */
+  static boolean isAmbiguous(String type) {
+    for (final String t : AMBIGUOUS)
+      if (t.equals(type)) return true;
+    return false;
+  }
+}
@@ -0,0 +1,126 @@
+package txtfnnl.uima.collection;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A daemon thread that writes the (encoded) output of documents handed off by an
+ * {@link OutputWriter}, so the pipeline thread can continue with the next CAS immediately. The
+ * hand-off queue is bounded, so the pipeline blocks if the output falls behind.
+ * <p>
+ * The first I/O error is kept and re-thrown on the pipeline thread by the next call to
+ * {@link #put(Output)} or {@link #flush()}.
+ *
+ * @author Florian Leitner
+ */
+class OutputQueue extends Thread {
+  /** The maximum number of documents that wait to be written. */
+  static final int QUEUE_SIZE = 64;
+  /** Marks a request to flush the queue. */
+  private static final Output FLUSH = new Output() {
+    public void write() {}
+  };
+  private final BlockingQueue<Output> queue = new ArrayBlockingQueue<Output>(QUEUE_SIZE);
+  /** Counted down once all outputs before a {@link #FLUSH} request are written. */
+  private volatile CountDownLatch flushed = null;
+  private volatile IOException error = null;
+
+  /** The output of a document, to be written on the writer thread. */
+  interface Output {
+    void write() throws IOException;
+  }
+
+  /**
+   * Create and start a new writer thread.
+   *
+   * @param name of the thread
+   */
+  OutputQueue(String name) {
+    super(name);
+    setDaemon(true);
+    start();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final Output out = queue.take();
+        if (out == FLUSH) {
+          flushed.countDown();
+        } else if (error == null) {
+          try {
+            out.write();
+          } catch (final IOException e) {
+            error = e;
+          }
+        }
+      }
+    } catch (final InterruptedException e) {
+      // the writer was destroyed
+    }
+  }
+
+  /**
+   * Hand off an output.
+   *
+   * @throws IOException if a previous output could not be written
+   */
+  void put(Output out) throws IOException {
+    checkError();
+    try {
+      queue.put(out);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while handing off the output");
+    }
+  }
+
+  /**
+   * Wait until all handed off content has been written.
+   *
+   * @throws IOException if any output could not be written
+   */
+  void flush() throws IOException {
+    flushed = new CountDownLatch(1);
+    try {
+      queue.put(FLUSH);
+      flushed.await();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while flushing the output");
+    }
+    checkError();
+  }
+
+  private void checkError() throws IOException {
+    if (error != null) {
+      final IOException e = error;
+      error = null;
+      throw e;
+    }
+  }
+
+  /** Write the content to a file or STDOUT (if the file is <code>null</code>). */
+  static void write(File file, byte[] content) throws IOException {
+    if (file == null) {
+      final PrintStream out = System.out;
+      out.write(content, 0, content.length);
+      out.flush();
+      if (out.checkError()) throw new IOException("writing to STDOUT failed");
+    } else {
+      final OutputStream out = new FileOutputStream(file);
+      try {
+        out.write(content);
+      } finally {
+        out.close();
+      }
+    }
+  }
+}
@@ -2,12 +2,20 @@
  * Copyright 2013. All rights reserved. */
 package txtfnnl.uima.collection;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.AnalysisComponent;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 
 import org.uimafit.component.CasConsumer_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
@@ -52,6 +60,49 @@ public abstract class OutputWriter extends CasConsumer_ImplBase {
   public static final String PARAM_PRINT_TO_STDOUT = "PrintToStdout";
   @ConfigurationParameter(name = PARAM_PRINT_TO_STDOUT, defaultValue = "false")
   protected Boolean printToStdout;
+  /**
+   * If <code>true</code>, the output of each document is handed off to a background thread that
+   * writes it, so the pipeline can continue with the next document immediately. All output is
+   * flushed when the collection is complete. By default, output is written synchronously.
+   */
+  public static final String PARAM_ASYNC_OUTPUT = "AsyncOutput";
+  @ConfigurationParameter(name = PARAM_ASYNC_OUTPUT, defaultValue = "false")
+  protected boolean asyncOutput;
+  /**
+   * Append the output of the documents to rolling shard files of (approximately) this maximum
+   * size (in bytes) in the output directory, instead of writing one file per document. The shards
+   * are named after the writer class, and an index file maps the source URI of each document to
+   * its shard, offset, and length. By default, the output is not sharded.
+   */
+  public static final String PARAM_SHARD_MAX_BYTES = "ShardMaxBytes";
+  @ConfigurationParameter(name = PARAM_SHARD_MAX_BYTES, defaultValue = "0")
+  protected int shardMaxBytes;
+  /**
+   * Append the output of the documents to rolling shard files with at most this number of
+   * documents (see {@link #PARAM_SHARD_MAX_BYTES}). By default, the output is not sharded.
+   */
+  public static final String PARAM_SHARD_MAX_DOCUMENTS = "ShardMaxDocuments";
+  @ConfigurationParameter(name = PARAM_SHARD_MAX_DOCUMENTS, defaultValue = "0")
+  protected int shardMaxDocuments;
+  /**
+   * If <code>true</code> and the output is sharded, each document is GZIP-compressed in its shard;
+   * defaults to <code>false</code>.
+   */
+  public static final String PARAM_COMPRESS_SHARDS = "CompressShards";
+  @ConfigurationParameter(name = PARAM_COMPRESS_SHARDS, defaultValue = "false")
+  protected boolean compressShards;
+  /** The size of the output stream buffers (in bytes). */
+  static final int BUFFER_SIZE = 1 << 16;
+  /** The background writer thread (or <code>null</code> if writing synchronously). */
+  private OutputQueue outputQueue;
+  /** The sharded output (or <code>null</code> if writing one file per document). */
+  private ShardedOutput shards;
+  /**
+   * The files opened for output that have not been written yet (if writing asynchronously); the
+   * writer thread removes each file once it is written.
+   */
+  private final ConcurrentHashMap<File, Boolean> pendingFiles =
+      new ConcurrentHashMap<File, Boolean>();
   protected int counter; // to create unique output file names if necessary
 
   public static class Builder extends AnalysisComponentBuilder {
@@ -79,33 +130,228 @@ public abstract class OutputWriter extends CasConsumer_ImplBase {
       setOptionalParameter(PARAM_OVERWRITE_FILES, Boolean.TRUE);
       return this;
     }
+
+    /** Write the output on a background thread. */
+    public Builder asyncOutput() {
+      setOptionalParameter(PARAM_ASYNC_OUTPUT, Boolean.TRUE);
+      return this;
+    }
+
+    /**
+     * Append the output to rolling shard files in the output directory.
+     *
+     * @param maxBytes per shard (or zero)
+     * @param maxDocuments per shard (or zero)
+     */
+    public Builder shardOutput(int maxBytes, int maxDocuments) {
+      setOptionalParameter(PARAM_SHARD_MAX_BYTES, maxBytes);
+      setOptionalParameter(PARAM_SHARD_MAX_DOCUMENTS, maxDocuments);
+      return this;
+    }
+
+    /** GZIP-compress the documents in the shard files. */
+    public Builder compressShards() {
+      setOptionalParameter(PARAM_COMPRESS_SHARDS, Boolean.TRUE);
+      return this;
+    }
   }
 
   @Override
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     counter = 0;
+    if (asyncOutput) outputQueue = new OutputQueue(getClass().getSimpleName() + " output");
+    if (outputDirectory != null && (shardMaxBytes > 0 || shardMaxDocuments > 0)) {
+      try {
+        shards = new ShardedOutput(outputDirectory, getClass().getSimpleName(), shardMaxBytes,
+            shardMaxDocuments, compressShards, overwriteFiles);
+      } catch (final IOException e) {
+        throw new ResourceInitializationException(e);
+      }
+    }
+  }
+
+  /** Wait until all output has been written and close the current shard (if any). */
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    super.collectionProcessComplete();
+    try {
+      completeOutput();
+    } catch (final IOException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
+  }
+
+  /** Write any pending output and stop the background writer thread. */
+  @Override
+  public void destroy() {
+    try {
+      completeOutput();
+    } catch (final IOException e) {
+      getContext().getLogger().log(Level.SEVERE, "failed to write the output: " + e.getMessage());
+    }
+    if (outputQueue != null) {
+      outputQueue.interrupt();
+      outputQueue = null;
+    }
+    super.destroy();
+  }
+
+  private void completeOutput() throws IOException {
+    if (outputQueue != null) outputQueue.flush();
+    if (shards != null) shards.close();
+  }
+
+  /** Open a large-buffered stream to an output file. */
+  protected OutputStream openOutputStream(File file) throws IOException {
+    return new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+  }
+
+  /**
+   * Hand off the complete (encoded) output of a document to the background writer thread or, if
+   * writing synchronously, write it immediately.
+   *
+   * @param file to write or <code>null</code> to write to STDOUT
+   * @param content of the file
+   * @throws IOException if this or any previously handed off output could not be written
+   */
+  protected void writeOutput(final File file, final byte[] content) throws IOException {
+    if (outputQueue != null) {
+      outputQueue.put(new OutputQueue.Output() {
+        public void write() throws IOException {
+          try {
+            OutputQueue.write(file, content);
+          } finally {
+            if (file != null) pendingFiles.remove(file);
+          }
+        }
+      });
+    } else {
+      OutputQueue.write(file, content);
+    }
+  }
+
+  /**
+   * Write (or hand off) the complete (encoded) output of a document to its output file or, if the
+   * output is sharded, append it to the current shard.
+   *
+   * @param jcas the output belongs to
+   * @param ext of the output file or shard
+   * @param content of the document
+   * @throws IOException if this or any previously handed off output could not be written
+   */
+  protected void writeOutput(JCas jcas, final String ext, final byte[] content)
+      throws IOException {
+    if (shards == null) {
+      writeOutput(openOutputFile(jcas, ext), content);
+    } else {
+      final String documentId = documentId(jcas);
+      if (outputQueue != null) {
+        outputQueue.put(new OutputQueue.Output() {
+          public void write() throws IOException {
+            shards.append(documentId, ext, content);
+          }
+        });
+      } else {
+        shards.append(documentId, ext, content);
+      }
+    }
   }
-  
+
+  /**
+   * Set the header written at the start of every shard (if the output is sharded).
+   *
+   * @param header of the shards or <code>null</code> for no header
+   * @throws IOException if any previously handed off output could not be written
+   */
+  protected void setShardHeader(final byte[] header) throws IOException {
+    if (shards == null) return;
+    if (outputQueue != null) {
+      outputQueue.put(new OutputQueue.Output() {
+        public void write() throws IOException {
+          shards.setHeader(header);
+        }
+      });
+    } else {
+      shards.setHeader(header);
+    }
+  }
+
+  /** Return <code>true</code> if the output is appended to shards. */
+  protected boolean isSharded() {
+    return shards != null;
+  }
+
+  /**
+   * Return <code>true</code> if the output of each document has to be collected and written with
+   * {@link #writeOutput(JCas, String, byte[])}, because it is written on a background thread or
+   * appended to shards.
+   */
+  protected boolean collectsOutput() {
+    return outputQueue != null || shards != null;
+  }
+
+  /**
+   * Open a (unique, unless overwriting) output file named after the resource the CAS was read
+   * from (see {@link #documentName(JCas)}).
+   */
   protected File openOutputFile(JCas jcas, String ext) {
+    final String resourceName = documentName(jcas);
+    File outputFile = new File(outputDirectory, resourceName + "." + ext);
+    if (!overwriteFiles && exists(outputFile)) {
+      int idx = 2;
+      while (exists(outputFile))
+        outputFile = new File(outputDirectory, resourceName + "." + idx++ + "." + ext);
+    }
+    if (outputQueue != null) pendingFiles.put(outputFile, Boolean.TRUE);
+    return outputFile;
+  }
+
+  /** Check if a file exists or has been handed off to the background writer thread. */
+  private boolean exists(File file) {
+    return file.exists() || pendingFiles.containsKey(file);
+  }
+
+  /** Return the number of files handed off to the background writer thread but not written. */
+  int countPendingFiles() {
+    return pendingFiles.size();
+  }
+
+  /**
+   * Return the ID of the document in the shard index: the full {@link RawContent#getSourceURI(JCas)
+   * source URI} of the CAS or, if it is not known, its {@link #documentName(JCas) name}.
+   */
+  protected String documentId(JCas jcas) {
+    final String sourceURI = RawContent.getSourceURI(jcas);
+    return sourceURI == null ? documentName(jcas) : sourceURI;
+  }
+
+  /**
+   * Return the name of the resource the CAS was read from, without its extension. The name is
+   * taken from the SOFA data URI, the {@link RawContent#SOURCE_URI} of local SOFA data (e.g.,
+   * <code>archive!/entry</code>), or the "resourceName" metadata, in that order. If no name is
+   * known, a "<code>doc-NNNNNN</code>" name is generated.
+   */
+  protected String documentName(JCas jcas) {
     String resourceName = null;
     if (jcas.getSofaDataURI() != null) {
       resourceName = (new File(jcas.getSofaDataURI())).getName();
     } else {
-      for (final DocumentAnnotation ann : JCasUtil.select(jcas, DocumentAnnotation.class))
+      String sourceURI = null;
+      for (final DocumentAnnotation ann : JCasUtil.select(jcas, DocumentAnnotation.class)) {
         if ("resourceName".equals(ann.getNamespace())) resourceName = ann.getIdentifier();
+        else if (RawContent.SOURCE_URI.equals(ann.getNamespace())) sourceURI = ann.getIdentifier();
+      }
+      if (sourceURI != null) {
+        final String path = URI.create(sourceURI).getPath();
+        resourceName = path.substring(path.lastIndexOf('/') + 1);
+      }
     }
     if (resourceName == null || resourceName.length() == 0) {
       resourceName = String.format("doc-%06d", ++counter);
     } else if (resourceName.lastIndexOf('.') > 0) {
       resourceName = resourceName.substring(0, resourceName.lastIndexOf('.'));
     }
-    File outputFile = new File(outputDirectory, resourceName + "." + ext);
-    if (!overwriteFiles && outputFile.exists()) {
-      int idx = 2;
-      while (outputFile.exists())
-        outputFile = new File(outputDirectory, resourceName + "." + idx++ + "." + ext);
-    }
-    return outputFile;
+    return resourceName;
   }
 }
@@ -0,0 +1,63 @@
+package txtfnnl.uima.collection;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.ByteArray;
+
+import org.uimafit.util.JCasUtil;
+
+import txtfnnl.uima.Views;
+import txtfnnl.uima.tcas.DocumentAnnotation;
+
+/**
+ * Utilities for {@link Views#CONTENT_RAW raw content} views with local SOFA data.
+ * <p>
+ * A SOFA cannot have both local data and a data URI. Therefore, readers that place the raw bytes
+ * of a document in the CAS record the URI the content was read from as a
+ * {@link DocumentAnnotation} in the {@link #SOURCE_URI} namespace.
+ *
+ * @author Florian Leitner
+ */
+public final class RawContent {
+  /** The namespace of the {@link DocumentAnnotation} with the URI of local SOFA data. */
+  public static final String SOURCE_URI = "sourceURI";
+
+  private RawContent() {
+    throw new AssertionError("n/a");
+  }
+
+  /**
+   * Set the content as a byte array SOFA and annotate the source URI.
+   *
+   * @param rawView to set the SOFA data on
+   * @param content of the document
+   * @param mimeType of the content
+   * @param uri the content was read from
+   * @param annotatorURI of the reader
+   */
+  public static void setLocalData(JCas rawView, byte[] content, String mimeType, String uri,
+      String annotatorURI) {
+    final ByteArray data = new ByteArray(rawView, content.length);
+    data.copyFromArray(content, 0, 0, content.length);
+    rawView.setSofaDataArray(data, mimeType);
+    final DocumentAnnotation ann = new DocumentAnnotation(rawView);
+    ann.setNamespace(SOURCE_URI);
+    ann.setIdentifier(uri);
+    ann.setAnnotator(annotatorURI);
+    ann.setConfidence(1.0);
+    ann.addToIndexes();
+  }
+
+  /**
+   * Return the URI the raw content was read from: the SOFA data URI or, for local SOFA data, the
+   * annotated {@link #SOURCE_URI}.
+   *
+   * @param rawView to inspect
+   * @return the URI or <code>null</code> if it is not known
+   */
+  public static String getSourceURI(JCas rawView) {
+    if (rawView.getSofaDataURI() != null) return rawView.getSofaDataURI();
+    for (final DocumentAnnotation ann : JCasUtil.select(rawView, DocumentAnnotation.class))
+      if (SOURCE_URI.equals(ann.getNamespace())) return ann.getIdentifier();
+    return null;
+  }
+}
@@ -170,8 +170,12 @@ public class RelationshipWriter extends TextWriter {
     } catch (final IOException e) {
       throw new AnalysisEngineProcessException(e);
     }
-    logger.log(Level.INFO, "dumped results for {0}", cas.getView(Views.CONTENT_RAW.toString())
-        .getSofaDataURI());
+    try {
+      logger.log(Level.INFO, "dumped results for {0}",
+          RawContent.getSourceURI(cas.getView(Views.CONTENT_RAW.toString()).getJCas()));
+    } catch (final CASException e) {
+      throw new AnalysisEngineProcessException(e);
+    }
   }
 
   private String annotateEvidence(SentenceAnnotation sentence, AnnotationIndex<Annotation> idx,
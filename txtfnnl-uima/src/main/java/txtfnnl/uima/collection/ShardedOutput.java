@@ -0,0 +1,170 @@
+package txtfnnl.uima.collection;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends the output of documents to rolling shard files, rather than writing one file per
+ * document. A shard is closed and the next one started once it has reached a maximum size or
+ * number of documents. The shards are named after the writer, e.g.,
+ * <code>TextWriter-00000.ext</code>, <code>TextWriter-00001.ext</code>, etc.; if not overwriting,
+ * a unique prefix (<code>TextWriter.2</code>, ...) is chosen, like for single output files, and
+ * claimed by creating its index file right away.
+ * <p>
+ * The index file (e.g., <code>TextWriter.idx</code>) lists one document per line, as the
+ * tab-separated document ID (usually, its source URI), shard file name, byte offset, and byte
+ * length of the document in that shard. If
+ * the shards are compressed, each document is a separate GZIP member: the shard as a whole is a
+ * valid GZIP file, while a single document can still be decompressed by reading its byte range
+ * only.
+ * <p>
+ * A {@link #setHeader(byte[]) header} can be written at the start of every shard, before the
+ * first document.
+ * <p>
+ * This class is not thread-safe; the output is either written from the pipeline thread or from
+ * a single {@link OutputQueue} thread.
+ *
+ * @author Florian Leitner
+ */
+class ShardedOutput {
+  /** The extension of the index file. */
+  static final String INDEX_EXT = "idx";
+  private final File directory;
+  private final String prefix;
+  private final long maxBytes;
+  private final int maxDocuments;
+  private final boolean compress;
+  /** The number of the current shard. */
+  private int shard = -1;
+  /** The file name of the current shard (or <code>null</code> if none is open). */
+  private String shardName = null;
+  private OutputStream out = null;
+  /** The number of bytes written to the current shard. */
+  private long offset = 0;
+  /** The number of documents written to the current shard. */
+  private int documents = 0;
+  private Writer index = null;
+  /** The (possibly compressed) header of each shard (or <code>null</code>). */
+  private byte[] header = null;
+
+  /**
+   * Create a new sharded output in a directory.
+   *
+   * @param directory to write the shards and the index to
+   * @param name of the shards and the index (unless it has to be made unique)
+   * @param maxBytes the maximum size of a shard (unless it contains a single document); if zero,
+   *        the size is not limited
+   * @param maxDocuments the maximum number of documents per shard; if zero, the number is not
+   *        limited
+   * @param compress the documents with GZIP
+   * @param overwrite existing shards (rather than choosing a unique prefix)
+   * @throws IOException if the index file cannot be created
+   */
+  ShardedOutput(File directory, String name, long maxBytes, int maxDocuments, boolean compress,
+      boolean overwrite) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.maxDocuments = maxDocuments;
+    this.compress = compress;
+    String unique = name;
+    if (!overwrite) {
+      int idx = 2;
+      while (!new File(directory, unique + "." + INDEX_EXT).createNewFile())
+        unique = name + "." + idx++;
+    }
+    prefix = unique;
+  }
+
+  /** Return the index file of the shards. */
+  File getIndexFile() {
+    return new File(directory, prefix + "." + INDEX_EXT);
+  }
+
+  /**
+   * Append the output of a document to the current shard, rolling over to a new shard if the
+   * current one is full.
+   *
+   * @param documentId to index the document with (must not contain tabs or line breaks)
+   * @param ext the extension of the shard files (of the document type)
+   * @param content of the document
+   * @throws IOException if the shard or the index cannot be written
+   */
+  void append(String documentId, String ext, byte[] content) throws IOException {
+    if (compress) content = gzip(content);
+    if (out != null && (maxDocuments > 0 && documents >= maxDocuments || maxBytes > 0 &&
+        offset + content.length > maxBytes)) closeShard();
+    if (out == null) openShard(ext);
+    out.write(content);
+    index.write(documentId + '\t' + shardName + '\t' + offset + '\t' + content.length + '\n');
+    offset += content.length;
+    ++documents;
+  }
+
+  /**
+   * Set the header written at the start of every shard; if the header changes, the current shard
+   * is closed.
+   *
+   * @param header of the shards or <code>null</code> for no header
+   */
+  void setHeader(byte[] header) throws IOException {
+    if (header != null && compress) header = gzip(header);
+    if (out != null) closeShard();
+    this.header = header;
+  }
+
+  /** Flush the current shard and the index. */
+  void flush() throws IOException {
+    if (out != null) {
+      out.flush();
+      index.flush();
+    }
+  }
+
+  /** Close the current shard and the index; any further documents start a new shard. */
+  void close() throws IOException {
+    if (out != null) closeShard();
+    if (index != null) {
+      index.close();
+      index = null;
+    }
+  }
+
+  private void openShard(String ext) throws IOException {
+    if (index == null)
+      index = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getIndexFile(),
+          shard != -1), "UTF-8"));
+    shardName = String.format("%s-%05d.%s%s", prefix, ++shard, ext, compress ? ".gz" : "");
+    out = new BufferedOutputStream(new FileOutputStream(new File(directory, shardName)),
+        OutputWriter.BUFFER_SIZE);
+    offset = 0;
+    documents = 0;
+    if (header != null) {
+      out.write(header);
+      offset = header.length;
+    }
+  }
+
+  private void closeShard() throws IOException {
+    out.close();
+    out = null;
+    shardName = null;
+    index.flush();
+  }
+
+  /** Compress the content as a single GZIP member. */
+  static byte[] gzip(byte[] content) throws IOException {
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length / 2 + 32);
+    final GZIPOutputStream gz = new GZIPOutputStream(buffer);
+    gz.write(content);
+    gz.close();
+    return buffer.toByteArray();
+  }
+}
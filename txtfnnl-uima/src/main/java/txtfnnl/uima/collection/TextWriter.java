@@ -1,9 +1,10 @@
 package txtfnnl.uima.collection;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 
@@ -26,12 +27,22 @@ import txtfnnl.utils.IOUtils;
  * consumer uses either the encoding defined by the <code>LANG</code> environment variable or
  * otherwise defaults to <b>UTF-8</b> as a far more sensible encoding instead. The output can be
  * written to individual files or STDOUT.
+ * <p>
+ * Output files are written through large buffers, while the output to STDOUT is collected and
+ * printed once per document. If {@link OutputWriter#PARAM_ASYNC_OUTPUT asynchronous output} or
+ * {@link OutputWriter#PARAM_SHARD_MAX_BYTES sharding} is enabled, the whole output of each
+ * document is collected and handed off to a background writer thread or appended to a shard
+ * instead.
  * 
  * @author Florian Leitner
  */
 public class TextWriter extends OutputWriter {
   protected Logger logger;
   protected Writer outputWriter;
+  /** The current document if its output is collected (or <code>null</code>). */
+  private JCas outputJCas;
+  /** The output to STDOUT of the current document. */
+  private final StringBuilder stdoutBuffer = new StringBuilder();
 
   public static class Builder extends OutputWriter.Builder {
     protected Builder(Class<? extends AnalysisComponent> klass) {
@@ -110,16 +121,7 @@ public class TextWriter extends OutputWriter {
     }
     try {
       setStream(jcas);
-      if (outputDirectory != null) {
-        try {
-          outputWriter.write(jcas.getDocumentText());
-        } catch (final IOException e) {
-          throw new AnalysisEngineProcessException(e);
-        }
-      }
-      if (printToStdout) {
-        System.out.print(jcas.getDocumentText());
-      }
+      write(jcas.getDocumentText());
       unsetStream();
     } catch (final IOException e2) {
       throw new AnalysisEngineProcessException(e2);
@@ -136,27 +138,44 @@ public class TextWriter extends OutputWriter {
    */
   void setStream(JCas jcas) throws IOException {
     if (outputDirectory != null) {
-      File outputFile = openOutputFile(jcas, "txt");
-      logger.log(Level.INFO, "writing ''{0}''", outputFile);
-      outputWriter = new OutputStreamWriter(new FileOutputStream(outputFile), encoding);
+      if (collectsOutput()) {
+        outputJCas = jcas;
+        outputWriter = new StringWriter();
+      } else {
+        final File outputFile = openOutputFile(jcas, "txt");
+        logger.log(Level.INFO, "writing ''{0}''", outputFile);
+        outputWriter = new BufferedWriter(new OutputStreamWriter(openOutputStream(outputFile),
+            encoding), BUFFER_SIZE);
+      }
     }
+    stdoutBuffer.setLength(0);
   }
 
   /**
-   * Close the currently open output file handle (if any).
+   * Close the currently open output file handle (if any) and print the output to STDOUT (if
+   * any), or hand off the collected output to the background writer thread or the shards.
    * 
    * @throws IOException
    */
   void unsetStream() throws IOException {
     if (outputDirectory != null) {
       outputWriter.close();
+      if (outputJCas != null)
+        writeOutput(outputJCas, "txt", outputWriter.toString().getBytes(encoding));
+      outputWriter = null;
+      outputJCas = null;
+    }
+    if (printToStdout && stdoutBuffer.length() > 0) {
+      if (collectsOutput()) writeOutput((File) null, stdoutBuffer.toString().getBytes(encoding));
+      else System.out.print(stdoutBuffer);
+      stdoutBuffer.setLength(0);
     }
   }
 
   /**
    * Write a string to the output stream(s).
    * 
-   * @param ch to write
+   * @param text to write
    * @throws IOException
    */
   void write(String text) throws IOException {
@@ -164,7 +183,7 @@ public class TextWriter extends OutputWriter {
       outputWriter.write(text);
     }
     if (printToStdout) {
-      System.out.print(text);
+      stdoutBuffer.append(text);
     }
   }
 
@@ -176,10 +195,10 @@ public class TextWriter extends OutputWriter {
    */
   void write(char ch) throws IOException {
     if (outputDirectory != null) {
-      outputWriter.append(ch);
+      outputWriter.write(ch);
     }
     if (printToStdout) {
-      System.out.append(ch);
+      stdoutBuffer.append(ch);
     }
   }
 }
@@ -1,8 +1,9 @@
 package txtfnnl.uima.collection;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.xml.transform.OutputKeys;
 
@@ -14,6 +15,7 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
@@ -103,7 +105,19 @@ public class XmiWriter extends OutputWriter {
   @Override
   public void process(CAS cas) throws AnalysisEngineProcessException {
     try {
-      writeXmi(cas, openOutputFile(cas.getJCas(), "xmi"));
+      final JCas jcas = cas.getJCas();
+      if (collectsOutput()) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        writeXmi(cas, out);
+        writeOutput(jcas, "xmi", out.toByteArray());
+      } else {
+        final OutputStream out = openOutputStream(openOutputFile(jcas, "xmi"));
+        try {
+          writeXmi(cas, out);
+        } finally {
+          out.close();
+        }
+      }
     } catch (final SAXException e) {
       throw new AnalysisEngineProcessException(e);
     } catch (final IOException e) {
@@ -114,27 +128,19 @@ public class XmiWriter extends OutputWriter {
   }
 
   /**
-   * Serialize a CAS to a file in XMI format.
+   * Serialize a CAS in XMI format. When writing asynchronously or to shards, the CAS is
+   * serialized to memory and the result handed off.
    * 
    * @param cas CAS to serialize
-   * @param file output file
+   * @param out stream to serialize to
    * @throws SAXException
-   * @throws IOException
    */
-  private void writeXmi(CAS cas, File file) throws IOException, SAXException {
-    FileOutputStream out = null;
-    try {
-      out = new FileOutputStream(file);
-      final XmiCasSerializer xmi = new XmiCasSerializer(cas.getTypeSystem());
-      final XMLSerializer xml = new XMLSerializer(out, formatXmi);
-      if (useXml11) xml.setOutputProperty(OutputKeys.VERSION, "1.1");
-      // else xml.setOutputProperty(OutputKeys.VERSION, "1.0");
-      if (encoding != null) xml.setOutputProperty(OutputKeys.ENCODING, encoding);
-      xmi.serialize(cas, xml.getContentHandler());
-    } finally {
-      if (out != null) {
-        out.close();
-      }
-    }
+  private void writeXmi(CAS cas, OutputStream out) throws SAXException {
+    final XmiCasSerializer xmi = new XmiCasSerializer(cas.getTypeSystem());
+    final XMLSerializer xml = new XMLSerializer(out, formatXmi);
+    if (useXml11) xml.setOutputProperty(OutputKeys.VERSION, "1.1");
+    // else xml.setOutputProperty(OutputKeys.VERSION, "1.0");
+    if (encoding != null) xml.setOutputProperty(OutputKeys.ENCODING, encoding);
+    xmi.serialize(cas, xml.getContentHandler());
   }
 }
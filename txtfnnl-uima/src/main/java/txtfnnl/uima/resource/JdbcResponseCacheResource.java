@@ -0,0 +1,152 @@
+package txtfnnl.uima.resource;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.uima.resource.SharedResourceObject;
+import org.apache.uima.util.Level;
+
+import org.uimafit.descriptor.ConfigurationParameter;
+
+/**
+ * A {@link ResponseCacheResource} stored in a JDBC database, usually an embedded H2 database file
+ * (e.g., <code>jdbc:h2:/path/to/cache</code>).
+ * <p>
+ * The cache is content-addressed: each response is stored under the SHA-1 digest of its namespace
+ * and input text, in a table (by default, <code>responses</code>) that is created if it does not
+ * exist yet. Failing cache look-ups or updates are logged, but otherwise ignored, so that the
+ * caller can always fall back to running the external tool. This resource is thread-safe.
+ *
+ * @author Florian Leitner
+ */
+public class JdbcResponseCacheResource extends JdbcConnectionResourceImpl implements
+    ResponseCacheResource {
+  /** The name of the table to store the responses in (default: <code>responses</code>). */
+  public static final String PARAM_TABLE_NAME = "TableName";
+  @ConfigurationParameter(name = PARAM_TABLE_NAME, mandatory = false, defaultValue = "responses")
+  private String tableName;
+  private Connection conn;
+  private PreparedStatement select;
+  private PreparedStatement insert;
+  private long hits = 0;
+  private long misses = 0;
+
+  public static class Builder extends JdbcConnectionResourceImpl.Builder {
+    protected Builder(Class<? extends SharedResourceObject> klass, String url, String driverClass) {
+      super(klass, url, driverClass);
+      setOptionalParameter(PARAM_READ_ONLY, Boolean.FALSE);
+    }
+
+    Builder(String url, String driverClass) {
+      this(JdbcResponseCacheResource.class, url, driverClass);
+    }
+
+    /** Define the name of the table used to store the responses. */
+    public Builder setTableName(String name) {
+      if (name == null || name.length() == 0)
+        throw new IllegalArgumentException("empty table name");
+      setOptionalParameter(PARAM_TABLE_NAME, name);
+      return this;
+    }
+  }
+
+  /**
+   * Configure a response cache in an embedded H2 database file.
+   *
+   * @param path of the H2 database (without the file suffix)
+   */
+  public static Builder configure(String path) {
+    return configure("jdbc:h2:" + path, "org.h2.Driver");
+  }
+
+  /**
+   * Configure a response cache in an arbitrary JDBC database.
+   *
+   * @param databaseUrl a JDBC database URL
+   * @param driverClassName a fully qualified JDBC driver class name
+   */
+  public static Builder configure(String databaseUrl, String driverClassName) {
+    return new Builder(databaseUrl, driverClassName);
+  }
+
+  /** Connect to the database and create the cache table if necessary. */
+  @Override
+  public void afterResourcesInitialized() {
+    super.afterResourcesInitialized();
+    try {
+      conn = getConnection();
+      conn.setAutoCommit(true);
+      final Statement stmt = conn.createStatement();
+      stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + tableName +
+          " (digest CHAR(40) PRIMARY KEY, response CLOB NOT NULL)");
+      stmt.close();
+      select = conn.prepareStatement("SELECT response FROM " + tableName + " WHERE digest = ?");
+      insert = conn.prepareStatement("INSERT INTO " + tableName + " VALUES (?, ?)");
+    } catch (final SQLException e) {
+      logger.log(Level.SEVERE, "SQL error", e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  public synchronized String get(String namespace, String input) {
+    try {
+      select.setString(1, digest(namespace, input));
+      final ResultSet result = select.executeQuery();
+      String response = null;
+      if (result.next()) response = result.getString(1);
+      result.close();
+      if (response == null) ++misses;
+      else ++hits;
+      if ((hits + misses) % 100000 == 0)
+        logger.log(Level.INFO, "response cache hits: {0}, misses: {1}", new Object[] { hits,
+            misses });
+      return response;
+    } catch (final SQLException e) {
+      logger.log(Level.WARNING, "response cache look-up failed: {0}", e.getMessage());
+      return null;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public synchronized void put(String namespace, String input, String response) {
+    final String digest = digest(namespace, input);
+    try {
+      select.setString(1, digest);
+      final ResultSet result = select.executeQuery();
+      final boolean exists = result.next();
+      result.close();
+      if (!exists) {
+        insert.setString(1, digest);
+        insert.setString(2, response);
+        insert.executeUpdate();
+      }
+    } catch (final SQLException e) {
+      logger.log(Level.WARNING, "response cache update failed: {0}", e.getMessage());
+    }
+  }
+
+  /** Return the hex-encoded SHA-1 digest of the namespace and the input. */
+  static String digest(String namespace, String input) {
+    try {
+      final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(namespace.getBytes("UTF-8"));
+      sha1.update((byte) 0);
+      final byte[] hash = sha1.digest(input.getBytes("UTF-8"));
+      final StringBuilder hex = new StringBuilder(2 * hash.length);
+      for (final byte b : hash)
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      return hex.toString();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    } catch (final UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
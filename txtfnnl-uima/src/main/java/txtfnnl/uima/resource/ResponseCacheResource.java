@@ -0,0 +1,33 @@
+package txtfnnl.uima.resource;
+
+import org.apache.uima.resource.SharedResourceObject;
+
+/**
+ * A resource specification for a persistent cache of the responses some (expensive) external tool
+ * produced for a given input, such as a tagged or parsed sentence.
+ * <p>
+ * Responses are addressed by their input text and a namespace that should capture the tool, its
+ * version, and its configuration, so that a cached response is only reused if the same tool would
+ * produce it again.
+ *
+ * @author Florian Leitner
+ */
+public interface ResponseCacheResource extends SharedResourceObject {
+  /**
+   * Fetch a cached response.
+   *
+   * @param namespace of the tool and its configuration
+   * @param input the response was produced for
+   * @return the cached response or <code>null</code> if there is none
+   */
+  public String get(String namespace, String input);
+
+  /**
+   * Store a response in the cache.
+   *
+   * @param namespace of the tool and its configuration
+   * @param input the response was produced for
+   * @param response to cache
+   */
+  public void put(String namespace, String input, String response);
+}
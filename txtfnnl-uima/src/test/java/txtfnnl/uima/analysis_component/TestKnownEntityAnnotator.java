@@ -33,6 +33,7 @@ import org.uimafit.util.JCasUtil;
 
 import txtfnnl.uima.Views;
 import txtfnnl.uima.cas.Property;
+import txtfnnl.uima.collection.RawContent;
 import txtfnnl.uima.resource.JdbcConnectionResourceImpl;
 import txtfnnl.uima.tcas.SemanticAnnotation;
 
@@ -139,6 +140,18 @@ public class TestKnownEntityAnnotator {
     Assert.assertEquals(1, count);
   }
 
+  @Test
+  public void testProcessLocalSofaData() throws CASRuntimeException, IOException,
+      AnalysisEngineProcessException {
+    // prefetched and archived documents have no SOFA data URI, only a source URI
+    final String text = "This is an " + ENTITY_NAME + " inside the text.\n";
+    textJCas.setDocumentText(text);
+    RawContent.setLocalData(rawJCas, text.getBytes("UTF-8"), "text/plain",
+        "file:/tmp/docs.tar!/" + textFile.getName(), "test");
+    annotator.process(baseJCas.getCas());
+    Assert.assertEquals(1, JCasUtil.select(textJCas, SemanticAnnotation.class).size());
+  }
+
   @Test
   public void testCaseInsensitiveMatching() throws CASRuntimeException, IOException,
       AnalysisEngineProcessException {
@@ -0,0 +1,201 @@
+package txtfnnl.uima.collection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.JCasFactory;
+
+import txtfnnl.uima.Views;
+
+public class TestArchiveReader {
+  File dir;
+  CollectionReader reader;
+  static final String LONG_NAME = "a/very/long/path/to/some/file/in/a/tar/archive/that/does/not/fit/" +
+      "into/the/one/hundred/bytes/of/the/name/field.txt";
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("txtfnnl-", "-archives");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (reader != null) reader.close();
+    for (final File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  /** Read all entries, mapping their URIs to their content. */
+  Map<String, String> readAll(String mimeType, int threads, String... archives)
+      throws UIMAException, IOException {
+    final String[] paths = new String[archives.length];
+    for (int i = 0; i < archives.length; ++i)
+      paths[i] = new File(dir, archives[i]).getPath();
+    reader = CollectionReaderFactory.createCollectionReader(ArchiveReader.configure(paths)
+        .setMimeType(mimeType).setThreads(threads).create());
+    final Map<String, String> result = new HashMap<String, String>();
+    final CAS cas = JCasFactory.createJCas().getCas();
+    while (reader.hasNext()) {
+      reader.getNext(cas);
+      final JCas raw = cas.getView(Views.CONTENT_RAW.toString()).getJCas();
+      Assert.assertNull(raw.getSofaDataURI());
+      if (mimeType != null) Assert.assertEquals(mimeType, raw.getSofaMimeType());
+      final String uri = RawContent.getSourceURI(raw);
+      Assert.assertNotNull(uri);
+      result.put(uri, read(raw.getSofaDataStream()));
+      cas.reset();
+    }
+    final Progress p = reader.getProgress()[0];
+    Assert.assertEquals(result.size(), p.getCompleted());
+    Assert.assertEquals(result.size(), p.getTotal());
+    Assert.assertFalse(p.isApproximate());
+    return result;
+  }
+
+  String uri(String archive, String entry) throws IOException {
+    return new File(dir, archive).getCanonicalFile().toURI().toString() + "!/" + entry;
+  }
+
+  @Test
+  public void testZip() throws Exception {
+    final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(dir, "a.zip")));
+    zip.putNextEntry(new ZipEntry("dir/"));
+    zip.putNextEntry(new ZipEntry("dir/one.txt"));
+    zip.write("one".getBytes("UTF-8"));
+    zip.putNextEntry(new ZipEntry("two words.txt"));
+    zip.write("two".getBytes("UTF-8"));
+    zip.close();
+    final Map<String, String> entries = readAll("text/plain", 1, "a.zip");
+    Assert.assertEquals(2, entries.size());
+    Assert.assertEquals("one", entries.get(uri("a.zip", "dir/one.txt")));
+    Assert.assertEquals("two", entries.get(uri("a.zip", "two%20words.txt")));
+  }
+
+  @Test
+  public void testTarGz() throws Exception {
+    final OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(dir, "b.tar.gz")));
+    writeTarEntry(out, "dir/", '5', new byte[0]);
+    writeTarEntry(out, "dir/one.html", '0', "<p>one</p>".getBytes("UTF-8"));
+    writeTarEntry(out, "././@LongLink", 'L', (LONG_NAME + "\0").getBytes("UTF-8"));
+    writeTarEntry(out, LONG_NAME.substring(0, 99), '0', new byte[1000]);
+    out.write(new byte[1024]);
+    out.close();
+    final Map<String, String> entries = readAll(null, 1, "b.tar.gz");
+    Assert.assertEquals(2, entries.size());
+    Assert.assertEquals("<p>one</p>", entries.get(uri("b.tar.gz", "dir/one.html")));
+    Assert.assertEquals(1000, entries.get(uri("b.tar.gz", LONG_NAME)).length());
+  }
+
+  @Test
+  public void testParallelArchives() throws Exception {
+    for (int i = 0; i < 3; ++i) {
+      final OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(dir, "doc" +
+          i + ".xml.gz")));
+      out.write(("<doc>" + i + "</doc>").getBytes("UTF-8"));
+      out.close();
+    }
+    final Map<String, String> entries = readAll("text/xml", 2, "doc0.xml.gz", "doc1.xml.gz",
+        "doc2.xml.gz");
+    Assert.assertEquals(3, entries.size());
+    for (int i = 0; i < 3; ++i)
+      Assert.assertEquals("<doc>" + i + "</doc>", entries.get(uri("doc" + i + ".xml.gz", "doc" +
+          i + ".xml")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testCorruptArchive() throws Exception {
+    final OutputStream out = new FileOutputStream(new File(dir, "corrupt.tgz"));
+    out.write("not gzipped".getBytes("UTF-8"));
+    out.close();
+    readAll(null, 1, "corrupt.tgz");
+  }
+
+  @Test(timeout = 10000)
+  public void testMalformedExtendedHeader() throws Exception {
+    final OutputStream out = new FileOutputStream(new File(dir, "pax.tar"));
+    writeTarEntry(out, "PaxHeader", 'x', "x path=a.txt\n".getBytes("UTF-8"));
+    writeTarEntry(out, "a.txt", '0', "a".getBytes("UTF-8"));
+    out.write(new byte[1024]);
+    out.close();
+    reader = CollectionReaderFactory.createCollectionReader(ArchiveReader.configure(
+        new String[] { new File(dir, "pax.tar").getPath() }).create());
+    final CAS cas = JCasFactory.createJCas().getCas();
+    Assert.assertTrue(reader.hasNext());
+    try {
+      reader.getNext(cas);
+      Assert.fail("malformed header not detected");
+    } catch (final IOException e) {
+      // expected
+    }
+    Assert.assertFalse(reader.hasNext());
+  }
+
+  @Test(expected = ResourceInitializationException.class)
+  public void testUnknownArchive() throws Exception {
+    Assert.assertTrue(new File(dir, "plain.txt").createNewFile());
+    readAll(null, 1, "plain.txt");
+  }
+
+  static String read(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[1024];
+    int read;
+    while ((read = in.read(buffer)) != -1)
+      out.write(buffer, 0, read);
+    in.close();
+    return out.toString("UTF-8");
+  }
+
+  /** Write a (ustar) tar header and the padded data. */
+  static void writeTarEntry(OutputStream out, String name, char type, byte[] data)
+      throws IOException {
+    final byte[] header = new byte[512];
+    put(header, 0, name);
+    put(header, 100, "0000644");
+    put(header, 108, "0000000");
+    put(header, 116, "0000000");
+    put(header, 124, String.format("%011o", data.length));
+    put(header, 136, "00000000000");
+    put(header, 148, "        ");
+    header[156] = (byte) type;
+    put(header, 257, "ustar");
+    put(header, 263, "00");
+    int checksum = 0;
+    for (final byte b : header)
+      checksum += b & 0xFF;
+    put(header, 148, String.format("%06o", checksum));
+    header[155] = ' ';
+    out.write(header);
+    out.write(data);
+    out.write(new byte[(512 - data.length % 512) % 512]);
+  }
+
+  private static void put(byte[] header, int offset, String value) throws IOException {
+    final byte[] bytes = value.getBytes("UTF-8");
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+}
@@ -0,0 +1,140 @@
+package txtfnnl.uima.collection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.xml.sax.SAXException;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.impl.TypeSystemDescription_impl;
+
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.JCasFactory;
+
+import txtfnnl.uima.Views;
+import txtfnnl.uima.tcas.SentenceAnnotation;
+import txtfnnl.uima.tcas.TokenAnnotation;
+
+public class TestBinaryCasReader {
+  File dir;
+  CollectionReader reader;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("txtfnnl-", "-bcas");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (reader != null) reader.close();
+    for (final File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  /** Fill a CAS with a raw and a text view and some annotations on the text. */
+  static void fill(CAS cas, int i) throws UIMAException {
+    final JCas raw = cas.createView(Views.CONTENT_RAW.toString()).getJCas();
+    raw.setSofaDataURI("file:/tmp/doc" + i + ".txt", "text/plain");
+    final JCas text = cas.createView(Views.CONTENT_TEXT.toString()).getJCas();
+    text.setDocumentText("Document " + i + ". The end.");
+    final SentenceAnnotation sentence = new SentenceAnnotation(text, 0, 11);
+    sentence.setNamespace("ns");
+    sentence.setIdentifier("sentence");
+    sentence.setConfidence(0.5);
+    sentence.addToIndexes();
+    final TokenAnnotation token = new TokenAnnotation(text, 0, 8);
+    token.setPos("NN");
+    token.setChunkBegin(true);
+    token.addToIndexes();
+  }
+
+  static String xmi(CAS cas) throws SAXException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XmiCasSerializer.serialize(cas, out);
+    return out.toString();
+  }
+
+  /** Write the documents and return their XMI serialization. */
+  List<String> write(AnalysisEngine writer, int documents) throws UIMAException, SAXException {
+    final List<String> expected = new ArrayList<String>();
+    final CAS cas = writer.newCAS();
+    for (int i = 1; i <= documents; ++i) {
+      fill(cas, i);
+      expected.add(xmi(cas));
+      writer.process(cas);
+      cas.reset();
+    }
+    writer.collectionProcessComplete();
+    return expected;
+  }
+
+  /** Read all documents from the directory and return their XMI serialization. */
+  List<String> read() throws UIMAException, IOException, SAXException {
+    reader = CollectionReaderFactory.createCollectionReader(BinaryCasReader.configure(
+        new String[] { dir.getPath() }).create());
+    final List<String> result = new ArrayList<String>();
+    final CAS cas = JCasFactory.createJCas().getCas();
+    while (reader.hasNext()) {
+      reader.getNext(cas);
+      result.add(xmi(cas));
+      cas.reset();
+    }
+    Assert.assertFalse(reader.getProgress()[0].isApproximate());
+    return result;
+  }
+
+  @Test
+  public void testRoundTrip() throws UIMAException, IOException, SAXException {
+    final List<String> expected = write(AnalysisEngineFactory.createPrimitive(BinaryCasWriter
+        .configure(dir).create()), 3);
+    Assert.assertEquals(3, dir.listFiles().length);
+    Assert.assertTrue(new File(dir, "doc-000001.bcas.gz").exists());
+    Assert.assertEquals(expected, read());
+  }
+
+  @Test
+  public void testShardedRoundTrip() throws UIMAException, IOException, SAXException {
+    final List<String> expected = write(AnalysisEngineFactory.createPrimitive(BinaryCasWriter
+        .configure(dir).doNotCompress().shardOutput(0, 2).asyncOutput().create()), 5);
+    Assert.assertTrue(new File(dir, "BinaryCasWriter-00002.bcas").exists());
+    Assert.assertEquals(expected, read());
+  }
+
+  @Test
+  public void testCompressedShardsRoundTrip() throws UIMAException, IOException, SAXException {
+    final List<String> expected = write(AnalysisEngineFactory.createPrimitive(BinaryCasWriter
+        .configure(dir).shardOutput(0, 2).compressShards().create()), 3);
+    Assert.assertTrue(new File(dir, "BinaryCasWriter-00001.bcas.gz").exists());
+    Assert.assertEquals(expected, read());
+  }
+
+  @Test(expected = CollectionException.class)
+  public void testTypeSystemMismatch() throws UIMAException, IOException, SAXException {
+    final CAS cas = JCasFactory.createJCas(new TypeSystemDescription_impl()).getCas();
+    cas.setDocumentText("text");
+    final OutputStream out = new FileOutputStream(new File(dir, "other.bcas"));
+    out.write(BinaryCasWriter.serializeHeader(cas));
+    out.write(BinaryCasWriter.serializeDocument(cas));
+    out.close();
+    read();
+  }
+}
@@ -2,6 +2,7 @@ package txtfnnl.uima.collection;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -14,11 +15,13 @@ import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.CASRuntimeException;
 import org.apache.uima.collection.CollectionException;
 import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Progress;
 
 import org.easymock.EasyMock;
 import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.JCasFactory;
 
 import txtfnnl.uima.Views;
 
@@ -105,19 +108,69 @@ public class TestDirectoryReader {
   }
 
   @Test
-  public void testGetProgress() throws CASException {
+  public void testGetProgress() throws CASException, CollectionException, IOException {
     Progress[] p = fileSystemReader.getProgress();
     Assert.assertEquals(1, p.length);
     Assert.assertEquals(0L, p[0].getCompleted());
-    Assert.assertEquals(2L, p[0].getTotal());
-    Assert.assertEquals("0 of 2 entities", p[0].toString());
+    // the traversal might still be running
+    Assert.assertTrue(p[0].getTotal() <= 2L);
     setGetNextMockExpectations(basePath + "test2.html");
     replayAll();
     doGetNext(2);
+    Assert.assertFalse(fileSystemReader.hasNext());
     p = fileSystemReader.getProgress();
+    Assert.assertFalse(p[0].isApproximate());
     Assert.assertEquals(1, p.length);
     Assert.assertEquals(2L, p[0].getCompleted());
     Assert.assertEquals(2L, p[0].getTotal());
     Assert.assertEquals("2 of 2 entities", p[0].toString());
   }
+
+  @Test
+  public void testLazyTraversal() throws IOException, UIMAException {
+    final File dir = File.createTempFile("txtfnnl-", "-dir");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    final int numFiles = FileProducer.QUEUE_SIZE * 2 + 1;
+    try {
+      for (int i = 0; i < numFiles; ++i)
+        Assert.assertTrue(new File(dir, "file-" + i + ".txt").createNewFile());
+      fileSystemReader = CollectionReaderFactory.createCollectionReader(DirectoryReader
+          .configure(dir).setMimeType("text/plain").create());
+      final CAS cas = JCasFactory.createJCas().getCas();
+      int count = 0;
+      while (fileSystemReader.hasNext()) {
+        fileSystemReader.getNext(cas);
+        Assert.assertEquals(++count, fileSystemReader.getProgress()[0].getCompleted());
+        cas.reset();
+      }
+      Assert.assertEquals(numFiles, count);
+      final Progress p = fileSystemReader.getProgress()[0];
+      Assert.assertEquals(numFiles, p.getTotal());
+      Assert.assertFalse(p.isApproximate());
+    } finally {
+      for (final File f : dir.listFiles())
+        f.delete();
+      dir.delete();
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    fileSystemReader.close();
+    fileSystemReader = CollectionReaderFactory.createCollectionReader(DirectoryReader
+        .configure(new File("src/test/resources")).prefetch(2).create());
+    final CAS cas = JCasFactory.createJCas().getCas();
+    int count = 0;
+    while (fileSystemReader.hasNext()) {
+      fileSystemReader.getNext(cas);
+      final JCas raw = cas.getView(Views.CONTENT_RAW.toString()).getJCas();
+      Assert.assertEquals("text/html", raw.getSofaMimeType());
+      final File file = new File(new URI(RawContent.getSourceURI(raw)));
+      Assert.assertArrayEquals(FileProducer.read(file),
+          TestFileReader.read(raw.getSofaDataStream()));
+      cas.reset();
+      ++count;
+    }
+    Assert.assertEquals(2, count);
+  }
 }
@@ -1,13 +1,18 @@
 package txtfnnl.uima.collection;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import org.apache.uima.UIMAException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.CASException;
 import org.apache.uima.cas.CASRuntimeException;
@@ -18,6 +23,7 @@ import org.apache.uima.util.Progress;
 
 import org.easymock.EasyMock;
 import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.JCasFactory;
 
 import txtfnnl.uima.Views;
 
@@ -109,4 +115,63 @@ public class TestFileReader {
     Assert.assertEquals(2L, p[0].getTotal());
     Assert.assertEquals("2 of 2 entities", p[0].toString());
   }
+
+  @Test
+  public void testPrefetch() throws IOException, UIMAException {
+    final File large = File.createTempFile("txtfnnl-", ".txt");
+    try {
+      final byte[] content = new byte[(1 << 21) + 1];
+      for (int i = 0; i < content.length; ++i)
+        content[i] = (byte) ('a' + i % 26);
+      final OutputStream out = new FileOutputStream(large);
+      out.write(content);
+      out.close();
+      final File small = new File("src/test/resources/test.html");
+      fileSystemReader.close();
+      fileSystemReader = CollectionReaderFactory.createCollectionReader(FileReader
+          .configure(new String[] { small.getPath(), large.getPath() }).prefetch(1).create());
+      final CAS cas = JCasFactory.createJCas().getCas();
+      for (final File file : new File[] { small, large }) {
+        Assert.assertTrue(fileSystemReader.hasNext());
+        fileSystemReader.getNext(cas);
+        final JCas raw = cas.getView(Views.CONTENT_RAW.toString()).getJCas();
+        Assert.assertNull(raw.getSofaDataURI());
+        Assert.assertEquals(file.getCanonicalFile().toURI().toString(),
+            RawContent.getSourceURI(raw));
+        Assert.assertArrayEquals(FileProducer.read(file), read(raw.getSofaDataStream()));
+        cas.reset();
+      }
+      Assert.assertFalse(fileSystemReader.hasNext());
+      Assert.assertArrayEquals(content, FileProducer.read(large));
+    } finally {
+      large.delete();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testProducerFailure() throws InterruptedException {
+    final FileProducer producer = new FileProducer("failing producer", "text/plain") {
+      @Override
+      void produce() throws InterruptedException {
+        put(new File("a.txt"));
+        throw new IllegalStateException("failure");
+      }
+    };
+    producer.start();
+    Assert.assertNull(producer.take().error);
+    Assert.assertTrue(producer.take().error.getCause() instanceof IllegalStateException);
+    Assert.assertSame(FileProducer.END, producer.take());
+    Assert.assertSame(FileProducer.END, producer.take());
+    Assert.assertTrue(producer.isDone());
+  }
+
+  static byte[] read(InputStream in) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1)
+      out.write(buffer, 0, read);
+    in.close();
+    return out.toByteArray();
+  }
 }
@@ -0,0 +1,67 @@
+package txtfnnl.uima.collection;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMimeTypeDetector {
+  File dir;
+  MimeTypeDetector detector;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("txtfnnl-", "-mime");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    detector = new MimeTypeDetector();
+  }
+
+  @After
+  public void tearDown() {
+    for (final File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  File write(String name, String content) throws IOException {
+    final File file = new File(dir, name);
+    final OutputStream out = new FileOutputStream(file);
+    out.write(content.getBytes("UTF-8"));
+    out.close();
+    return file;
+  }
+
+  @Test
+  public void testDetectByExtension() throws IOException {
+    // the content is never inspected
+    Assert.assertEquals("text/html", detector.detect(new File(dir, "missing.html")));
+    Assert.assertEquals("application/pdf", detector.detect(new File(dir, "missing.PDF")));
+  }
+
+  @Test
+  public void testDetectAmbiguousByContent() throws IOException {
+    Assert.assertEquals("text/html",
+        detector.detect(write("page.txt", "<html><body>text</body></html>")));
+    Assert.assertEquals("text/html", detector.detect(write("noext", "<html><body/></html>")));
+  }
+
+  @Test
+  public void testCachePerDirectoryAndExtension() throws IOException {
+    Assert.assertEquals("text/html", detector.detect(write("a.txt", "<html><body/></html>")));
+    // the content of files with the same extension in the same directory is not inspected
+    Assert.assertEquals("text/html", detector.detect(new File(dir, "missing.txt")));
+    // but files without an extension always are
+    detector.detect(write("b", "<html><body/></html>"));
+    Assert.assertEquals("text/plain", detector.detect(write("c", "plain text")));
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnreadableAmbiguousFile() throws IOException {
+    detector.detect(new File(dir, "missing.txt"));
+  }
+}
@@ -0,0 +1,223 @@
+package txtfnnl.uima.collection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.jcas.JCas;
+
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.JCasFactory;
+import org.uimafit.factory.UimaContextFactory;
+
+import txtfnnl.uima.tcas.DocumentAnnotation;
+import txtfnnl.utils.IOUtils;
+
+public class TestTextWriter {
+  File dir;
+  PrintStream stdout;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("txtfnnl-", "-output");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    stdout = System.out;
+  }
+
+  @After
+  public void tearDown() {
+    System.setOut(stdout);
+    for (final File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  /** Process a number of documents and complete the collection. */
+  void run(AnalysisEngine writer, int documents) throws UIMAException {
+    final CAS cas = writer.newCAS();
+    for (int i = 1; i <= documents; ++i) {
+      cas.setDocumentText("text " + i + "\n");
+      writer.process(cas);
+      cas.reset();
+    }
+    writer.collectionProcessComplete();
+  }
+
+  void assertFiles(int documents) throws IOException {
+    Assert.assertEquals(documents, dir.listFiles().length);
+    for (int i = 1; i <= documents; ++i) {
+      final File file = new File(dir, String.format("doc-%06d.txt", i));
+      Assert.assertEquals("text " + i + "\n", IOUtils.read(new FileInputStream(file), "UTF-8"));
+    }
+  }
+
+  @Test
+  public void testWriteFiles() throws UIMAException, IOException {
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").create()), 3);
+    assertFiles(3);
+  }
+
+  @Test
+  public void testAsyncWriteFiles() throws UIMAException, IOException {
+    final int documents = OutputQueue.QUEUE_SIZE * 2 + 1;
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").asyncOutput().create()), documents);
+    assertFiles(documents);
+  }
+
+  @Test
+  public void testAsyncWriteStdout() throws UIMAException, IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(out, true, "UTF-8"));
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setEncoding("UTF-8")
+        .asyncOutput().create()), 3);
+    Assert.assertEquals("text 1\ntext 2\ntext 3\n", out.toString("UTF-8"));
+  }
+
+  @Test
+  public void testAsyncUniqueFileNames() throws UIMAException, IOException {
+    final AnalysisEngine writer = AnalysisEngineFactory.createPrimitive(TextWriter.configure()
+        .setOutputDirectory(dir).setEncoding("UTF-8").asyncOutput().create());
+    final JCas jcas = writer.newJCas();
+    for (int i = 1; i <= 2; ++i) {
+      jcas.setDocumentText("text " + i + "\n");
+      final DocumentAnnotation name = new DocumentAnnotation(jcas);
+      name.setNamespace("resourceName");
+      name.setIdentifier("doc.txt");
+      name.addToIndexes();
+      writer.process(jcas);
+      jcas.reset();
+    }
+    writer.collectionProcessComplete();
+    Assert.assertEquals("text 1\n", IOUtils.read(new FileInputStream(new File(dir, "doc.txt")),
+        "UTF-8"));
+    Assert.assertEquals("text 2\n", IOUtils.read(new FileInputStream(new File(dir,
+        "doc.2.txt")), "UTF-8"));
+  }
+
+  @Test
+  public void testAsyncPendingFilesAreWritten() throws UIMAException, IOException {
+    final TextWriter writer = new TextWriter();
+    writer.initialize(UimaContextFactory.createUimaContext(OutputWriter.PARAM_OUTPUT_DIRECTORY,
+        dir.getPath(), OutputWriter.PARAM_ENCODING, "UTF-8", OutputWriter.PARAM_ASYNC_OUTPUT,
+        Boolean.TRUE));
+    final JCas jcas = JCasFactory.createJCas();
+    for (int i = 1; i <= 3 * OutputQueue.QUEUE_SIZE; ++i) {
+      jcas.setDocumentText("text " + i + "\n");
+      writer.process(jcas.getCas());
+      jcas.reset();
+      Assert.assertTrue(writer.countPendingFiles() <= OutputQueue.QUEUE_SIZE + 1);
+    }
+    writer.collectionProcessComplete();
+    Assert.assertEquals(0, writer.countPendingFiles());
+    writer.destroy();
+    assertFiles(3 * OutputQueue.QUEUE_SIZE);
+  }
+
+  /** Read the document from its shard using the index file, checking the document IDs. */
+  void assertShards(int documents, int shards, boolean compressed) throws IOException {
+    final String[] index = IOUtils.read(new FileInputStream(new File(dir, "TextWriter.idx")), "UTF-8")
+        .split("\n");
+    Assert.assertEquals(documents, index.length);
+    Assert.assertEquals(shards + 1, dir.listFiles().length);
+    for (int i = 1; i <= documents; ++i) {
+      final String[] entry = index[i - 1].split("\t");
+      Assert.assertEquals(String.format("doc-%06d", i), entry[0]);
+      final RandomAccessFile shard = new RandomAccessFile(new File(dir, entry[1]), "r");
+      final byte[] data = new byte[Integer.parseInt(entry[3])];
+      shard.seek(Long.parseLong(entry[2]));
+      shard.readFully(data);
+      shard.close();
+      final String text = compressed ? IOUtils.read(new GZIPInputStream(
+          new ByteArrayInputStream(data)), "UTF-8") : new String(data, "UTF-8");
+      Assert.assertEquals("text " + i + "\n", text);
+    }
+  }
+
+  @Test
+  public void testShardByDocuments() throws UIMAException, IOException {
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").shardOutput(0, 2).create()), 5);
+    assertShards(5, 3, false);
+    Assert.assertEquals("text 5\n", IOUtils.read(new FileInputStream(new File(dir,
+        "TextWriter-00002.txt")), "UTF-8"));
+  }
+
+  @Test
+  public void testShardBySize() throws UIMAException, IOException {
+    // each document is 7 bytes long
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").shardOutput(20, 0).asyncOutput().create()), 7);
+    assertShards(7, 4, false);
+  }
+
+  @Test
+  public void testCompressedShards() throws UIMAException, IOException {
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").shardOutput(0, 3).compressShards().create()), 4);
+    assertShards(4, 2, true);
+    // a whole shard is a valid GZIP file
+    Assert.assertEquals("text 1\ntext 2\ntext 3\n", IOUtils.read(new GZIPInputStream(
+        new FileInputStream(new File(dir, "TextWriter-00000.txt.gz"))), "UTF-8"));
+  }
+
+  @Test
+  public void testUniqueShardPrefix() throws UIMAException, IOException {
+    Assert.assertTrue(new File(dir, "TextWriter.idx").createNewFile());
+    run(AnalysisEngineFactory.createPrimitive(TextWriter.configure().setOutputDirectory(dir)
+        .setEncoding("UTF-8").shardOutput(0, 10).create()), 1);
+    Assert.assertTrue(new File(dir, "TextWriter.2.idx").exists());
+    Assert.assertTrue(new File(dir, "TextWriter.2-00000.txt").exists());
+  }
+
+  @Test
+  public void testSeparateShardIndexes() throws UIMAException, IOException {
+    final AnalysisEngine first = AnalysisEngineFactory.createPrimitive(TextWriter.configure()
+        .setOutputDirectory(dir).setEncoding("UTF-8").shardOutput(0, 10).create());
+    final AnalysisEngine second = AnalysisEngineFactory.createPrimitive(TextWriter.configure()
+        .setOutputDirectory(dir).setEncoding("UTF-8").shardOutput(0, 10).create());
+    run(first, 2);
+    run(second, 1);
+    Assert.assertEquals(2, IOUtils.read(new FileInputStream(new File(dir, "TextWriter.idx")),
+        "UTF-8").split("\n").length);
+    Assert.assertEquals(1, IOUtils.read(new FileInputStream(new File(dir, "TextWriter.2.idx")),
+        "UTF-8").split("\n").length);
+  }
+
+  @Test
+  public void testShardIndexBySourceURI() throws UIMAException, IOException {
+    final AnalysisEngine writer = AnalysisEngineFactory.createPrimitive(TextWriter.configure()
+        .setOutputDirectory(dir).setEncoding("UTF-8").shardOutput(0, 10).create());
+    final JCas jcas = writer.newJCas();
+    final String[] uris = { "file:/data/docs.tgz!/a/doc.txt", "file:/data/docs.tgz!/b/doc.txt" };
+    for (final String uri : uris) {
+      jcas.setDocumentText("text\n");
+      final DocumentAnnotation source = new DocumentAnnotation(jcas);
+      source.setNamespace(RawContent.SOURCE_URI);
+      source.setIdentifier(uri);
+      source.addToIndexes();
+      writer.process(jcas);
+      jcas.reset();
+    }
+    writer.collectionProcessComplete();
+    final String[] index = IOUtils.read(new FileInputStream(new File(dir, "TextWriter.idx")),
+        "UTF-8").split("\n");
+    Assert.assertEquals(uris.length, index.length);
+    for (int i = 0; i < uris.length; ++i)
+      Assert.assertEquals(uris[i], index[i].split("\t")[0]);
+  }
+}
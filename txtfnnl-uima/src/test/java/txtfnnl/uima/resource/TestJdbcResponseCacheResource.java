@@ -0,0 +1,92 @@
+package txtfnnl.uima.resource;
+
+import java.io.File;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ExternalResourceDescription;
+
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ExternalResource;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.testing.util.DisableLogging;
+
+public class TestJdbcResponseCacheResource {
+  public static class DummyAnalysisEngine extends JCasAnnotator_ImplBase {
+    static final String RES_CACHE = "ResponseCache";
+    @ExternalResource(key = RES_CACHE, mandatory = true)
+    ResponseCacheResource cache;
+    static ResponseCacheResource instance;
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException {
+      instance = cache;
+    }
+  }
+
+  ExternalResourceDescription descriptor;
+  String path;
+
+  @Before
+  public void setUp() throws Exception {
+    final File tmpDb = File.createTempFile("response_cache_", null);
+    tmpDb.deleteOnExit();
+    path = tmpDb.getCanonicalPath();
+    descriptor = JdbcResponseCacheResource.configure(path).setTableName("cache").create();
+    DisableLogging.enableLogging(Level.WARNING);
+  }
+
+  ResponseCacheResource getCache(ExternalResourceDescription desc) throws UIMAException {
+    final AnalysisEngine ae = AnalysisEngineFactory.createPrimitive(DummyAnalysisEngine.class,
+        DummyAnalysisEngine.RES_CACHE, desc);
+    ae.process(ae.newJCas());
+    return DummyAnalysisEngine.instance;
+  }
+
+  @Test
+  public void testConfigure() {
+    final String config = descriptor.toString();
+    Assert.assertTrue(config.contains("jdbc:h2:" + path));
+    Assert.assertTrue(config.contains("org.h2.Driver"));
+    Assert.assertTrue(config.contains("cache"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConfigureEmptyTableName() {
+    JdbcResponseCacheResource.configure(path).setTableName("");
+  }
+
+  @Test
+  public void testGetPut() throws UIMAException {
+    final ResponseCacheResource cache = getCache(descriptor);
+    Assert.assertNull(cache.get("ns", "input"));
+    cache.put("ns", "input", "response");
+    Assert.assertEquals("response", cache.get("ns", "input"));
+    Assert.assertNull(cache.get("other", "input"));
+    Assert.assertNull(cache.get("ns", "other"));
+    cache.put("ns", "input", "changed");
+    Assert.assertEquals("response", cache.get("ns", "input"));
+  }
+
+  @Test
+  public void testPersistence() throws UIMAException {
+    getCache(descriptor).put("ns", "input", "response\nwith two lines");
+    final ResponseCacheResource cache = getCache(JdbcResponseCacheResource.configure(path)
+        .setTableName("cache").create());
+    Assert.assertEquals("response\nwith two lines", cache.get("ns", "input"));
+  }
+
+  @Test
+  public void testDigest() {
+    Assert.assertEquals(40, JdbcResponseCacheResource.digest("ns", "input").length());
+    Assert.assertFalse(JdbcResponseCacheResource.digest("ns", "input").equals(
+        JdbcResponseCacheResource.digest("n", "sinput")));
+  }
+}
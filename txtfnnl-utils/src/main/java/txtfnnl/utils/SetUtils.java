@@ -1,8 +1,11 @@
 package txtfnnl.utils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -32,6 +35,99 @@ public class SetUtils {
     return combinations;
   }
 
+  /**
+   * Lazily iterate over all combinations of one item of each set in a given list of sets (the
+   * cartesian product), without materializing them. Each iteration fills and returns the
+   * <b>same</b> output array, so callers that need to keep a combination must copy it. The last
+   * set varies fastest. An empty list of sets has no combinations.
+   * 
+   * @param listOfSets to compose the combinations from
+   * @param output the array to fill with each combination; its length must be the number of sets
+   * @return an Iterable over (the reused output array holding) the combinations
+   * @throws IllegalArgumentException if any set is empty or the output array has the wrong length
+   */
+  public static <T> Iterable<T[]> combinations(List<? extends Collection<? extends T>> listOfSets,
+      T[] output) throws IllegalArgumentException {
+    return SetUtils.combinations(listOfSets, output, 0);
+  }
+
+  /**
+   * Lazily iterate over (at most <code>limit</code>) combinations of one item of each set in a
+   * given list of sets (see {@link #combinations(List, Object[])}).
+   * 
+   * @param listOfSets to compose the combinations from
+   * @param output the array to fill with each combination; its length must be the number of sets
+   * @param limit the maximum number of combinations to produce; if zero or negative, all
+   *        combinations are produced
+   * @return an Iterable over (the reused output array holding) the combinations
+   * @throws IllegalArgumentException if any set is empty or the output array has the wrong length
+   */
+  public static <T> Iterable<T[]> combinations(List<? extends Collection<? extends T>> listOfSets,
+      final T[] output, final long limit) throws IllegalArgumentException {
+    final int len = listOfSets.size();
+    if (output.length != len)
+      throw new IllegalArgumentException("output array length " + output.length + " != " + len +
+          " sets");
+    final Object[][] items = new Object[len][];
+    for (int i = 0; i < len; i++) {
+      items[i] = listOfSets.get(i).toArray();
+      if (items[i].length == 0)
+        throw new IllegalArgumentException("combining an empty set is impossible");
+    }
+    return new Iterable<T[]>() {
+      public Iterator<T[]> iterator() {
+        return new CombinationIterator<T>(items, output, limit);
+      }
+    };
+  }
+
+  /** Walks an index vector over the item arrays like an odometer. */
+  private static class CombinationIterator<T> implements Iterator<T[]> {
+    private final Object[][] items;
+    private final T[] output;
+    private final long limit;
+    private final int[] index;
+    private long count = 0;
+
+    CombinationIterator(Object[][] items, T[] output, long limit) {
+      this.items = items;
+      this.output = output;
+      this.limit = limit;
+      index = new int[items.length];
+    }
+
+    public boolean hasNext() {
+      if (items.length == 0 || limit > 0 && count >= limit) return false;
+      if (count == 0) return true;
+      for (int i = 0; i < items.length; i++)
+        if (index[i] < items[i].length - 1) return true;
+      return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T[] next() {
+      if (!hasNext()) throw new NoSuchElementException();
+      if (count++ == 0) {
+        for (int i = 0; i < items.length; i++)
+          output[i] = (T) items[i][0];
+      } else {
+        for (int i = items.length - 1; i >= 0; i--) {
+          if (++index[i] < items[i].length) {
+            output[i] = (T) items[i][index[i]];
+            break;
+          }
+          index[i] = 0;
+          output[i] = (T) items[i][0];
+        }
+      }
+      return output;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
   private static <T> void extendCombinations(List<List<T>> combinations, Set<T> items, int len)
       throws IllegalArgumentException {
     int total = items.size();
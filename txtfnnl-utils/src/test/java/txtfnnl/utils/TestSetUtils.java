@@ -0,0 +1,94 @@
+package txtfnnl.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSetUtils {
+  static List<Set<String>> sets(String[]... items) {
+    final List<Set<String>> sets = new ArrayList<Set<String>>();
+    for (final String[] set : items)
+      sets.add(new LinkedHashSet<String>(Arrays.asList(set)));
+    return sets;
+  }
+
+  static List<String> join(Iterable<String[]> combinations) {
+    final List<String> result = new ArrayList<String>();
+    for (final String[] c : combinations) {
+      final StringBuilder sb = new StringBuilder();
+      for (final String s : c)
+        sb.append(s);
+      result.add(sb.toString());
+    }
+    return result;
+  }
+
+  @Test
+  public void testCombinate() {
+    final List<List<String>> result = SetUtils.combinate(sets(new String[] { "a", "b" },
+        new String[] { "1", "2", "3" }));
+    Assert.assertEquals(6, result.size());
+    for (final List<String> c : result)
+      Assert.assertEquals(2, c.size());
+  }
+
+  @Test
+  public void testCombinations() {
+    Assert.assertEquals(Arrays.asList("a1x", "a2x", "a3x", "b1x", "b2x", "b3x"),
+        join(SetUtils.combinations(sets(new String[] { "a", "b" }, new String[] { "1", "2", "3" },
+            new String[] { "x" }), new String[3])));
+  }
+
+  @Test
+  public void testCombinationsReuseOutput() {
+    final String[] output = new String[2];
+    for (final String[] c : SetUtils.combinations(sets(new String[] { "a", "b" }, new String[] {
+        "1", "2" }), output))
+      Assert.assertSame(output, c);
+  }
+
+  @Test
+  public void testCombinationsRepeatable() {
+    final Iterable<String[]> it = SetUtils.combinations(sets(new String[] { "a", "b" }),
+        new String[1]);
+    Assert.assertEquals(join(it), join(it));
+  }
+
+  @Test
+  public void testCombinationsLimit() {
+    Assert.assertEquals(Arrays.asList("a1", "a2", "b1"), join(SetUtils.combinations(sets(
+        new String[] { "a", "b" }, new String[] { "1", "2" }), new String[2], 3)));
+  }
+
+  @Test
+  public void testCombinationsNoSets() {
+    Assert.assertFalse(SetUtils.combinations(Collections.<Set<String>> emptyList(), new String[0])
+        .iterator().hasNext());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testCombinationsExhausted() {
+    final Iterator<String[]> it = SetUtils.combinations(sets(new String[] { "a" }),
+        new String[1]).iterator();
+    it.next();
+    it.next();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCombinationsEmptySet() {
+    SetUtils.combinations(sets(new String[] { "a" }, new String[0]), new String[2]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCombinationsOutputLength() {
+    SetUtils.combinations(sets(new String[] { "a" }), new String[2]);
+  }
+}
@@ -6,6 +6,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
@@ -27,6 +35,8 @@ public abstract class ReadlineRuntime<T> {
   final BufferedReader out;
   /** The error stream generated by the forked process. */
   final ReadlineLogger logger;
+  /** The thread writing batches of lines ahead to the forked process (created on demand). */
+  private ExecutorService writer;
 
   /**
    * Fork out a new {@link Runtime} process.
@@ -164,11 +174,21 @@ public abstract class ReadlineRuntime<T> {
     logger.log(msg);
   }
 
-  /** Stop the runtime process and logger thread. */
+  /**
+   * Stop the runtime process, the logger and the batch writer thread.
+   * <p>
+   * The process is destroyed before its streams are closed, so that any thread blocked on reading
+   * from or writing to the process is released.
+   */
   public void stop() throws IOException {
-    in.close();
-    out.close();
+    if (writer != null) writer.shutdownNow();
     proc.destroy();
+    try {
+      in.close();
+    } catch (final IOException e) {
+      // pending input cannot be delivered to the destroyed process
+    }
+    out.close();
     if (logger.isAlive()) {
       logger.interrupt();
       logger.halt();
@@ -191,6 +211,70 @@ public abstract class ReadlineRuntime<T> {
     return parseResponse();
   }
 
+  /**
+   * Stream a batch of input lines to the forked process and parse the responses in the order of
+   * the lines.
+   * <p>
+   * The lines are written by a separate thread, staying up to <i>window</i> lines ahead of the
+   * parsed responses and flushing only when that window is full or all lines have been written.
+   * This avoids a full pipe round-trip per line, but requires that the forked process reads its
+   * input ahead of its output. Each response is parsed by {@link #parseResponse()} just as with
+   * {@link #process(String)}, so any per-line timeouts set up by the parser keep working.
+   * <p>
+   * The responses are added to the given list as they are parsed. If the process fails, the
+   * exception is propagated and the size of the response list indicates the line it failed on;
+   * No further lines should be sent to this runtime, which should be {@link #stop() stopped}.
+   * 
+   * @param lines the input lines
+   * @param window maximum number of lines to write ahead of the parsed responses
+   * @param responses the list to add the parsed responses to
+   * @throws IOException on IO failures
+   */
+  public void processBatch(final List<String> lines, int window, List<T> responses)
+      throws IOException {
+    if (window < 1) throw new IllegalArgumentException("window must be positive");
+    if (writer == null) {
+      writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread t = new Thread(r, "readline-writer");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    final Semaphore credits = new Semaphore(window);
+    final Future<Void> writing = writer.submit(new Callable<Void>() {
+      public Void call() throws IOException, InterruptedException {
+        for (final String line : lines) {
+          if (!credits.tryAcquire()) {
+            in.flush();
+            credits.acquire();
+          }
+          in.write(line);
+          in.newLine();
+        }
+        in.flush();
+        return null;
+      }
+    });
+    try {
+      for (int i = lines.size(); i > 0; --i) {
+        responses.add(parseResponse());
+        credits.release();
+      }
+      writing.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for the batch writer");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      else throw new IOException("batch writer failed: " + cause);
+    } finally {
+      writing.cancel(true);
+    }
+  }
+
   /**
    * Return a single, trimmed line from the process' output stream. This method should be called by
    * the response parsing implementation and might return <code>null</code> if the forked process'
@@ -0,0 +1,475 @@
+package txtfnnl.subprocess;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.util.Level;
+import org.apache.uima.util.Logger;
+
+/**
+ * A pool of {@link ReadlineRuntime} worker processes that processes input lines concurrently.
+ * <p>
+ * The pool forks <i>size</i> processes using a {@link ReadlineRuntimePool.Factory Factory} and
+ * dispatches the lines of a batch to whichever worker is idle, returning the responses in the
+ * order of the input lines. If a worker fails on a line, that worker is stopped and replaced by a
+ * freshly forked process, while the response for the failed line is <code>null</code>. With a
+ * pool size of one, all lines are processed on the calling thread.
+ * <p>
+ * If the pool is created with a <i>window</i> larger than one, the lines are sent to the workers
+ * in batches of up to that many lines, using the
+ * {@link ReadlineRuntime#processBatch(List, int, List) pipelined batch protocol}. If a worker
+ * fails within a batch, only the response for the line it failed on is lost: the remaining lines
+ * of the batch are sent to the restarted worker.
+ * <p>
+ * If a {@link #setCache(Cache, String, Codec) response cache} is set, lines with a
+ * cached response are not sent to the workers at all, and all new responses are added to the
+ * cache. The cache namespace should identify the exact tool build, e.g., by using a
+ * {@link #fingerprint(String, File...) fingerprint} of its executable and model files.
+ * 
+ * @author Florian Leitner
+ */
+public class ReadlineRuntimePool<T> {
+  /**
+   * Fork out new {@link ReadlineRuntime} processes for a pool.
+   * 
+   * @author Florian Leitner
+   */
+  public interface Factory<T> {
+    /**
+     * Fork out a new runtime process.
+     * 
+     * @throws IOException on failure
+     */
+    ReadlineRuntime<T> newRuntime() throws IOException;
+  }
+
+  /**
+   * Convert the parsed responses of {@link ReadlineRuntime} workers to and from strings that can be
+   * stored in a {@link Cache}.
+   * 
+   * @author Florian Leitner
+   */
+  public interface Codec<T> {
+    /** Convert a parsed response to a string (or return <code>null</code> to not cache it). */
+    String encode(T response);
+
+    /** Restore a parsed response from its string representation. */
+    T decode(String data);
+  }
+
+  /**
+   * A persistent store for the (encoded) responses of {@link ReadlineRuntime} workers, addressed
+   * by a namespace and the input line.
+   * 
+   * @author Florian Leitner
+   */
+  public interface Cache {
+    /** Fetch a cached response or return <code>null</code> if there is none. */
+    String get(String namespace, String input);
+
+    /** Store a response in the cache. */
+    void put(String namespace, String input, String response);
+  }
+
+  /** The factory used to (re-) start workers. */
+  final Factory<T> factory;
+  /** The currently idle workers. */
+  final BlockingQueue<ReadlineRuntime<T>> idle;
+  /** The threads dispatching lines to the workers (null for pools of size one). */
+  final ExecutorService executor;
+  /** The number of workers in this pool. */
+  final int size;
+  /** The maximum number of lines written ahead to a worker. */
+  final int window;
+  /** The number of workers that are alive (idle or busy). */
+  final AtomicInteger workers;
+  /** The logger for failures and restarts. */
+  final Logger logger;
+  /** The (optional) cache of responses. */
+  private Cache cache = null;
+  /** The namespace of the cached responses. */
+  private String cacheNamespace;
+  /** The codec for the cached responses. */
+  private Codec<T> codec;
+
+  /**
+   * Create a new pool of <i>size</i> worker processes that write up to <i>window</i> lines ahead
+   * to each worker.
+   * 
+   * @param factory to fork out the worker processes
+   * @param size of the pool (number of processes)
+   * @param window maximum number of lines written ahead to a worker (one to disable batching)
+   * @param logger to report worker failures and restarts
+   * @throws IOException if any of the workers cannot be started
+   */
+  public ReadlineRuntimePool(Factory<T> factory, int size, int window, Logger logger)
+      throws IOException {
+    if (size < 1) throw new IllegalArgumentException("pool size must be positive");
+    if (window < 1) throw new IllegalArgumentException("window size must be positive");
+    this.factory = factory;
+    this.size = size;
+    this.window = window;
+    this.logger = logger;
+    idle = new ArrayBlockingQueue<ReadlineRuntime<T>>(size);
+    workers = new AtomicInteger(size);
+    try {
+      for (int i = 0; i < size; ++i)
+        idle.add(factory.newRuntime());
+    } catch (final IOException e) {
+      stop();
+      throw e;
+    }
+    if (size > 1) {
+      executor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          final Thread t = new Thread(r, "readline-pool");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    } else {
+      executor = null;
+    }
+  }
+
+  /**
+   * Create a new pool of <i>size</i> worker processes that process one line at a time.
+   * 
+   * @param factory to fork out the worker processes
+   * @param size of the pool (number of processes)
+   * @param logger to report worker failures and restarts
+   * @throws IOException if any of the workers cannot be started
+   */
+  public ReadlineRuntimePool(Factory<T> factory, int size, Logger logger) throws IOException {
+    this(factory, size, 1, logger);
+  }
+
+  /**
+   * Use a cache for the responses of this pool's workers.
+   * 
+   * @param cache to store the responses in
+   * @param namespace identifying the tool, its version and configuration
+   * @param codec to convert the responses to and from strings
+   */
+  public void setCache(Cache cache, String namespace, Codec<T> codec) {
+    this.cache = cache;
+    this.cacheNamespace = namespace;
+    this.codec = codec;
+  }
+
+  /**
+   * Create a fingerprint of a tool build for use in a cache namespace: the SHA-1 digest of the
+   * executable's content and the names, sizes, and modification times of the model files.
+   * <p>
+   * The digest changes whenever the executable is replaced or any of the model files change, so
+   * that responses of another version of the tool are never reused.
+   * 
+   * @param executable name (to look up on the <code>PATH</code>) or path of the tool
+   * @param models files or directories (traversed recursively) the tool uses
+   * @return the hex-encoded digest
+   * @throws IOException if the executable cannot be found or read
+   */
+  public static String fingerprint(String executable, File... models) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    final InputStream in = new FileInputStream(findExecutable(executable));
+    try {
+      final byte[] buffer = new byte[1 << 16];
+      int len;
+      while ((len = in.read(buffer)) != -1)
+        digest.update(buffer, 0, len);
+    } finally {
+      in.close();
+    }
+    for (final File model : models)
+      digestMetadata(digest, model, model.getName());
+    final StringBuilder hex = new StringBuilder(40);
+    for (final byte b : digest.digest())
+      hex.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+    return hex.toString();
+  }
+
+  /** Locate an executable on the <code>PATH</code> unless it is a path. */
+  static File findExecutable(String executable) throws IOException {
+    if (executable.indexOf(File.separatorChar) == -1) {
+      final String path = System.getenv("PATH");
+      if (path != null) {
+        for (final String dir : path.split(File.pathSeparator)) {
+          final File file = new File(dir.length() == 0 ? "." : dir, executable);
+          if (file.isFile()) return file;
+        }
+      }
+    } else {
+      final File file = new File(executable);
+      if (file.isFile()) return file;
+    }
+    throw new IOException("executable '" + executable + "' not found");
+  }
+
+  /** Add the name, size, and modification time of a file or all files in a directory. */
+  private static void digestMetadata(MessageDigest digest, File file, String name)
+      throws IOException {
+    if (file.isDirectory()) {
+      final String[] children = file.list();
+      if (children == null) throw new IOException("cannot list '" + file + "'");
+      Arrays.sort(children);
+      for (final String child : children)
+        digestMetadata(digest, new File(file, child), name + "/" + child);
+    } else {
+      digest.update((name + "\t" + file.length() + "\t" + file.lastModified() + "\n")
+          .getBytes("UTF-8"));
+    }
+  }
+
+  /** Return the number of worker processes in this pool. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Process a single line with the next idle worker.
+   * <p>
+   * If the worker fails, it is restarted before the failure is propagated.
+   * 
+   * @param line the input line
+   * @return the parsed response
+   * @throws IOException if the worker failed on this line or could not be restarted
+   */
+  public T process(String line) throws IOException {
+    return dispatch(line, true);
+  }
+
+  /**
+   * Process a list of lines concurrently, using all idle workers of this pool.
+   * <p>
+   * The responses are returned in the order of the lines; If a worker failed on a line, the
+   * response for that line is <code>null</code> and the worker has been restarted.
+   * 
+   * @param lines the input lines
+   * @return the parsed responses (<code>null</code> for lines that could not be processed)
+   * @throws IOException if a failed worker could not be restarted
+   */
+  public List<T> processAll(List<String> lines) throws IOException {
+    if (cache != null) return processCached(lines);
+    else return processUncached(lines);
+  }
+
+  /** Process the lines that have no cached response and add the new responses to the cache. */
+  private List<T> processCached(List<String> lines) throws IOException {
+    final List<T> results = new ArrayList<T>(lines.size());
+    final List<String> uncached = new ArrayList<String>();
+    for (final String line : lines) {
+      final String data = cache.get(cacheNamespace, line);
+      if (data == null) uncached.add(line);
+      results.add(data == null ? null : codec.decode(data));
+    }
+    if (uncached.size() > 0) {
+      final Iterator<T> responses = processUncached(uncached).iterator();
+      for (int idx = 0; idx < results.size(); ++idx) {
+        if (results.get(idx) == null) {
+          final T response = responses.next();
+          if (response != null) {
+            results.set(idx, response);
+            final String data = codec.encode(response);
+            if (data != null) cache.put(cacheNamespace, lines.get(idx), data);
+          }
+        }
+      }
+    }
+    return results;
+  }
+
+  /** Process all lines with the workers. */
+  private List<T> processUncached(List<String> lines) throws IOException {
+    if (window > 1) return processBatches(lines);
+    final List<T> results = new ArrayList<T>(lines.size());
+    if (executor == null || lines.size() < 2) {
+      for (final String line : lines)
+        results.add(dispatch(line, false));
+    } else {
+      final List<Future<T>> futures = new ArrayList<Future<T>>(lines.size());
+      for (final String line : lines) {
+        futures.add(executor.submit(new Callable<T>() {
+          public T call() throws IOException {
+            return dispatch(line, false);
+          }
+        }));
+      }
+      for (final Future<T> f : futures)
+        results.add(await(f));
+    }
+    return results;
+  }
+
+  /** Process the lines in batches of up to <i>window</i> lines per worker. */
+  private List<T> processBatches(List<String> lines) throws IOException {
+    final List<T> results = new ArrayList<T>(lines.size());
+    // spread the lines evenly over the workers, but never beyond the window size
+    final int batchSize = Math.max(1, Math.min(window, (lines.size() + size - 1) / size));
+    if (executor == null || lines.size() <= batchSize) {
+      for (int start = 0; start < lines.size(); start += batchSize)
+        results.addAll(dispatchBatch(lines.subList(start,
+            Math.min(start + batchSize, lines.size()))));
+    } else {
+      final List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>();
+      for (int start = 0; start < lines.size(); start += batchSize) {
+        final List<String> batch = lines.subList(start, Math.min(start + batchSize, lines.size()));
+        futures.add(executor.submit(new Callable<List<T>>() {
+          public List<T> call() throws IOException {
+            return dispatchBatch(batch);
+          }
+        }));
+      }
+      for (final Future<List<T>> f : futures)
+        results.addAll(await(f));
+    }
+    return results;
+  }
+
+  /** Wait for the result of a dispatched task. */
+  private <R> R await(Future<R> future) throws IOException {
+    try {
+      return future.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for a worker");
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      else throw new RuntimeException(cause);
+    }
+  }
+
+  /** Stop all (idle) workers of this pool and its dispatching threads. */
+  public void stop() throws IOException {
+    if (executor != null) executor.shutdownNow();
+    IOException error = null;
+    ReadlineRuntime<T> worker;
+    while ((worker = idle.poll()) != null) {
+      try {
+        worker.stop();
+      } catch (final IOException e) {
+        error = e;
+      }
+    }
+    if (error != null) throw error;
+  }
+
+  /**
+   * Process a line with the next idle worker and hand the worker back to the pool, restarting it
+   * if it failed.
+   * 
+   * @param line the input line
+   * @param propagate if <code>true</code>, re-throw worker failures, otherwise return
+   *        <code>null</code>
+   * @throws IOException if the worker failed (and <i>propagate</i> is set) or if the failed
+   *         worker could not be restarted
+   */
+  private T dispatch(String line, boolean propagate) throws IOException {
+    final ReadlineRuntime<T> worker = acquire();
+    final T result;
+    try {
+      result = worker.process(line);
+    } catch (final IOException e) {
+      logger.log(Level.WARNING, "worker failed on ''{0}'': {1}",
+          new Object[] { line, e.getMessage() });
+      restart(worker);
+      if (propagate) throw e;
+      return null;
+    } catch (final RuntimeException e) {
+      restart(worker);
+      throw e;
+    }
+    idle.add(worker);
+    return result;
+  }
+
+  /**
+   * Process a batch of lines with the next idle worker, restarting the worker and continuing with
+   * the remaining lines of the batch whenever it fails.
+   * 
+   * @param lines the input lines
+   * @return the parsed responses (<code>null</code> for lines the worker failed on)
+   * @throws IOException if a failed worker could not be restarted
+   */
+  private List<T> dispatchBatch(List<String> lines) throws IOException {
+    final List<T> results = new ArrayList<T>(lines.size());
+    while (results.size() < lines.size()) {
+      final ReadlineRuntime<T> worker = acquire();
+      final List<String> remaining = lines.subList(results.size(), lines.size());
+      try {
+        worker.processBatch(remaining, window, results);
+      } catch (final IOException e) {
+        if (results.size() < lines.size()) {
+          logger.log(Level.WARNING, "worker failed on ''{0}'': {1}",
+              new Object[] { lines.get(results.size()), e.getMessage() });
+          results.add(null);
+        }
+        restart(worker);
+        continue;
+      } catch (final RuntimeException e) {
+        restart(worker);
+        throw e;
+      }
+      idle.add(worker);
+    }
+    return results;
+  }
+
+  /** Take the next idle worker, waiting until one becomes available. */
+  private ReadlineRuntime<T> acquire() throws IOException {
+    try {
+      ReadlineRuntime<T> worker;
+      while ((worker = idle.poll(1, TimeUnit.SECONDS)) == null) {
+        if (workers.get() == 0) throw new IOException("no workers left in the pool");
+      }
+      return worker;
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for a worker");
+    }
+  }
+
+  /**
+   * Stop a failed worker and add a freshly forked replacement to the idle workers.
+   * 
+   * @throws IOException if the replacement cannot be started
+   */
+  private void restart(ReadlineRuntime<T> worker) throws IOException {
+    try {
+      worker.stop();
+    } catch (final IOException e) {
+      logger.log(Level.FINE, "IOException while stopping a failed worker: {0}", e.getMessage());
+    }
+    try {
+      idle.add(factory.newRuntime());
+      Watchdog.countRestart();
+    } catch (final IOException e) {
+      workers.decrementAndGet();
+      logger.log(Level.SEVERE, "worker could not be restarted: {0}", e.getMessage());
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package txtfnnl.subprocess;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.uima.util.Level;
+
+/**
+ * A JVM-wide watchdog that {@link ReadlineRuntime#stop() stops} runtime processes that did not
+ * respond before a deadline.
+ * <p>
+ * All deadlines are scheduled on a single, shared daemon thread, so registering and
+ * {@link Deadline#cancel() canceling} a deadline for every processed line is cheap. The watchdog
+ * counts the number of expired deadlines (timeouts), the number of processes it stopped (kills),
+ * and the number of processes that were restarted after a failure (as reported by the process'
+ * owners via {@link #countRestart()}).
+ * 
+ * @author Florian Leitner
+ */
+public final class Watchdog {
+  /** A deadline registered with the watchdog. */
+  public static final class Deadline {
+    private final ScheduledFuture<?> task;
+
+    Deadline(ScheduledFuture<?> task) {
+      this.task = task;
+    }
+
+    /**
+     * Cancel this deadline.
+     * 
+     * @return <code>false</code> if the deadline had expired already
+     */
+    public boolean cancel() {
+      if (!task.cancel(false)) return false;
+      // canceled deadlines would otherwise stay queued until they expire
+      if (task instanceof Runnable) scheduler.remove((Runnable) task);
+      return true;
+    }
+  }
+
+  private static final ScheduledThreadPoolExecutor scheduler;
+  private static final AtomicLong timeouts = new AtomicLong();
+  private static final AtomicLong kills = new AtomicLong();
+  private static final AtomicLong restarts = new AtomicLong();
+  static {
+    scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread t = new Thread(r, "readline-watchdog");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  private Watchdog() {
+    throw new AssertionError("n/a");
+  }
+
+  /**
+   * Register a deadline for a runtime: unless the returned deadline is canceled before the timeout
+   * has passed, the runtime is stopped.
+   * 
+   * @param target runtime to stop
+   * @param timeout to wait before stopping the target
+   * @param unit of the timeout value
+   * @return the deadline
+   */
+  public static Deadline watch(final ReadlineRuntime<?> target, long timeout, TimeUnit unit) {
+    return new Deadline(scheduler.schedule(new Runnable() {
+      public void run() {
+        timeouts.incrementAndGet();
+        target.log(Level.WARNING, "stopping the process after a timeout");
+        try {
+          target.stop();
+          kills.incrementAndGet();
+        } catch (final Throwable t) {
+          target.log(Level.WARNING, "failed to stop the process: " + t.getMessage());
+        }
+      }
+    }, timeout, unit));
+  }
+
+  /** Count a runtime process that was restarted after a failure. */
+  public static void countRestart() {
+    restarts.incrementAndGet();
+  }
+
+  /** Return the number of deadlines that have expired. */
+  public static long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /** Return the number of processes the watchdog has stopped. */
+  public static long getKills() {
+    return kills.get();
+  }
+
+  /** Return the number of processes that were restarted after a failure. */
+  public static long getRestarts() {
+    return restarts.get();
+  }
+
+  /** Return the number of deadlines currently scheduled. */
+  static int getScheduled() {
+    return scheduler.getQueue().size();
+  }
+}
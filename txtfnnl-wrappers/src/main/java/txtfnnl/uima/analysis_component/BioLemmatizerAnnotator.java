@@ -1,6 +1,17 @@
 package txtfnnl.uima.analysis_component;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -12,6 +23,7 @@ import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
 import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
 
 import edu.ucdenver.ccp.nlp.biolemmatizer.BioLemmatizer;
 import edu.ucdenver.ccp.nlp.biolemmatizer.LemmataEntry;
@@ -27,6 +39,13 @@ import txtfnnl.uima.tcas.TokenAnnotation;
  * Requires no particular configuration, but does require at least prior tokenization of the input
  * CAS (i.e., the presence of {@link TokenAnnotation TokenAnnotations}), that should have been PoS
  * tagged, too. The lemmas are set in the <code>:stem</code> property of the tokens.
+ * <p>
+ * As the same (token, PoS) pairs get lemmatized over and over again, the chosen lemmas are kept
+ * in a bounded cache that is shared by all instances (and therefore, threads) of this annotator
+ * in the JVM. Lookups do not lock the cache, and if it is full, lemmas that have not been used
+ * since they were last checked are evicted first. Its size is set with {@link #PARAM_CACHE_SIZE}
+ * and the cache can be pre-warmed from a frequency list (see {@link #PARAM_WARM_UP_FILE}). The
+ * cache statistics are logged when the last instance is destroyed.
  * 
  * @author Florian Leitner
  */
@@ -36,6 +55,35 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
    * URI, NAMESPACE, or IDENTIFIER used on the annotations.
    */
   public static final String URI = "http://biolemmatizer.sourceforge.net/";
+  /** The default maximum number of (token, PoS) lemmas to cache. */
+  public static final int DEFAULT_CACHE_SIZE = 100000;
+  /**
+   * The maximum number of (token, PoS) lemmas to cache (default: {@link #DEFAULT_CACHE_SIZE}).
+   * <p>
+   * As the cache is shared, it is resized whenever an instance is initialized, i.e., the last
+   * initialized instance sets the size. Zero disables the cache for the configured instance.
+   */
+  public static final String PARAM_CACHE_SIZE = "CacheSize";
+  @ConfigurationParameter(name = PARAM_CACHE_SIZE,
+      defaultValue = "100000",
+      description = "Max. number of lemmas in the shared cache.")
+  private int cacheSize;
+  /**
+   * A (UTF-8 encoded) frequency list of tokens to warm up the cache with (optional).
+   * <p>
+   * Each line should contain a token and its PoS tag, separated by a tab; any further columns
+   * (e.g., the counts) are ignored. The list should be sorted by decreasing frequency, as only as
+   * many lines as fit into the cache are used.
+   */
+  public static final String PARAM_WARM_UP_FILE = "WarmUpFile";
+  @ConfigurationParameter(name = PARAM_WARM_UP_FILE, mandatory = false)
+  private String warmUpFile;
+  /** The lemma cache, mapping "token TAB PoS" keys to their lemmas. */
+  static final LemmaCache CACHE = new LemmaCache(DEFAULT_CACHE_SIZE);
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  /** The number of live instances, to log the cache statistics only once. */
+  private static final AtomicInteger instances = new AtomicInteger();
   protected Logger logger;
   private BioLemmatizer lemmatizer;
 
@@ -43,6 +91,22 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
     public Builder() {
       super(BioLemmatizerAnnotator.class);
     }
+
+    /**
+     * Set the maximum number of lemmas kept in the shared cache (default:
+     * {@link BioLemmatizerAnnotator#DEFAULT_CACHE_SIZE}; zero disables the cache).
+     */
+    public Builder setCacheSize(int size) {
+      if (size < 0) throw new IllegalArgumentException("negative cache size");
+      setOptionalParameter(PARAM_CACHE_SIZE, size);
+      return this;
+    }
+
+    /** Warm up the lemma cache with a (tab-separated token, PoS) frequency list. */
+    public Builder setWarmUpFile(File frequencyList) {
+      setOptionalParameter(PARAM_WARM_UP_FILE, frequencyList.getAbsolutePath());
+      return this;
+    }
   }
 
   /** Configure a BioLemmatizer AE Builder. */
@@ -50,6 +114,84 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
     return new Builder();
   }
 
+  /**
+   * A size-bounded, concurrent map that approximates a least-recently-used cache with the "second
+   * chance" (CLOCK) algorithm: Lookups only mark the found entry as used, without taking any locks.
+   * Once the cache is full, the thread that adds a lemma takes the oldest entries off the queue,
+   * evicting the first unused one and sending the used ones to the back of the queue (unmarked).
+   */
+  static class LemmaCache {
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<String, Entry>(1024);
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile int capacity;
+
+    private static class Entry {
+      final String key;
+      final String lemma;
+      volatile boolean used = false;
+
+      Entry(String key, String lemma) {
+        this.key = key;
+        this.lemma = lemma;
+      }
+    }
+
+    LemmaCache(int capacity) {
+      this.capacity = capacity;
+    }
+
+    String get(String key) {
+      final Entry entry = map.get(key);
+      if (entry == null) return null;
+      if (!entry.used) entry.used = true;
+      return entry.lemma;
+    }
+
+    void put(String key, String lemma) {
+      if (capacity <= 0) return;
+      final Entry entry = new Entry(key, lemma);
+      if (map.putIfAbsent(key, entry) == null) {
+        queue.offer(entry);
+        if (size.incrementAndGet() > capacity) evict();
+      }
+    }
+
+    int size() {
+      return size.get();
+    }
+
+    /** Remove all lemmas (not atomic with respect to concurrent additions). */
+    void clear() {
+      map.clear();
+      queue.clear();
+      size.set(0);
+    }
+
+    int capacity() {
+      return capacity;
+    }
+
+    /** Change the capacity, evicting lemmas if necessary. */
+    void setCapacity(int capacity) {
+      this.capacity = capacity;
+      evict();
+    }
+
+    private void evict() {
+      while (size.get() > capacity) {
+        final Entry entry = queue.poll();
+        if (entry == null) return;
+        if (entry.used) {
+          entry.used = false;
+          queue.offer(entry);
+        } else if (map.remove(entry.key, entry)) {
+          size.decrementAndGet();
+        }
+      }
+    }
+  }
+
   /**
    * Initializes the current instance with the given context. Note: Do all initialization in this
    * method, do not use the constructor.
@@ -58,10 +200,50 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
+    if (cacheSize < 0)
+      throw new ResourceInitializationException(new IllegalArgumentException(PARAM_CACHE_SIZE +
+          " is negative"));
     lemmatizer = new BioLemmatizer();
+    if (cacheSize > 0) CACHE.setCapacity(cacheSize);
+    if (cacheSize > 0 && warmUpFile != null) {
+      try {
+        warmUp(new File(warmUpFile));
+      } catch (final IOException e) {
+        logger.log(Level.SEVERE, "failed to read the warm-up file {0}", warmUpFile);
+        throw new ResourceInitializationException(e);
+      }
+    }
+    instances.incrementAndGet();
     logger.log(Level.CONFIG, "BioLemmatizer initialized");
   }
 
+  /**
+   * Lemmatize the (token, PoS) pairs in a frequency list until the cache is full. The pairs are
+   * added in reverse order, so the most frequent ones are the most recently used.
+   */
+  private void warmUp(File frequencyList) throws IOException {
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(
+        frequencyList), "UTF-8"));
+    final List<String[]> pairs = new ArrayList<String[]>();
+    final int free = CACHE.capacity() - CACHE.size();
+    try {
+      String line;
+      while (pairs.size() < free && (line = reader.readLine()) != null) {
+        final String[] items = line.split("\t");
+        if (items.length < 2 || items[0].length() == 0) continue;
+        pairs.add(new String[] { items[0], items[1].toLowerCase() });
+      }
+    } finally {
+      reader.close();
+    }
+    for (int idx = pairs.size() - 1; idx >= 0; --idx) {
+      final String[] pair = pairs.get(idx);
+      final String key = key(pair[0], pair[1]);
+      if (CACHE.get(key) == null) CACHE.put(key, chooseLemma(pair[0], pair[1]));
+    }
+    logger.log(Level.CONFIG, "warmed up the lemma cache with {0} tokens", pairs.size());
+  }
+
   @Override
   public void process(JCas jcas) throws AnalysisEngineProcessException {
     final FSIterator<Annotation> tokenIt = TokenAnnotation.getIterator(jcas);
@@ -79,6 +261,32 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
     }
   }
 
+  /**
+   * Fetch the lemma for the given token from the cache, or find and cache it.
+   * 
+   * @param token to lemmatize
+   * @param posTag of the token (lower-cased)
+   * @return the best possible (all lower-cased) lemma
+   */
+  private String lemmatize(String token, String posTag) {
+    if (cacheSize == 0) return chooseLemma(token, posTag);
+    final String key = key(token, posTag);
+    String lemma = CACHE.get(key);
+    if (lemma == null) {
+      // a concurrent miss on the same key just repeats the lemmatization
+      lemma = chooseLemma(token, posTag);
+      CACHE.put(key, lemma);
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return lemma;
+  }
+
+  private static String key(String token, String posTag) {
+    return token + '\t' + posTag;
+  }
+
   /**
    * Find the best possible lemma for the given result.
    * 
@@ -86,7 +294,7 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
    * @param posTag of the token
    * @return the best possible (all lower-cased) lemma
    */
-  private String lemmatize(String token, String posTag) {
+  private String chooseLemma(String token, String posTag) {
     final LemmataEntry lemmata = lemmatizer.lemmatizeByLexiconAndRules(token, posTag);
     // to find the most likely correct lemma, we need to poke around
     // in the LemmataEntry...
@@ -131,6 +339,12 @@ public class BioLemmatizerAnnotator extends JCasAnnotator_ImplBase {
   @Override
   public void destroy() {
     super.destroy();
+    if (instances.decrementAndGet() == 0) {
+      final long h = hits.getAndSet(0), m = misses.getAndSet(0);
+      if (h + m > 0)
+        logger.log(Level.INFO, "lemma cache hits: {0}, misses: {1} ({2}% hit rate), size: {3}",
+            new Object[] { h, m, (100 * h) / (h + m), CACHE.size() });
+    }
     lemmatizer = null;
   }
 }
@@ -1,6 +1,5 @@
 package txtfnnl.uima.analysis_component;
 
-import ciir.umass.edu.learning.DataPoint;
 import org.apache.uima.analysis_component.AnalysisComponent;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
@@ -137,19 +136,19 @@ class GeneRankAnnotator extends RankedListAnnotator {
 
   @Override
   protected
-  void process(JCas jcas, List<DataPoint> data) {
+  void process(JCas jcas, List<String> keys, double[] scores) {
     Map<String, Map<String, String>> ranks = new HashMap<String, Map<String, String>>();
-    for (DataPoint dp : data) {
-      String geneIdName = dp.getDescription().substring(2);
+    for (int i = 0; i < scores.length; i++) {
+      String geneIdName = keys.get(i);
       String geneId = geneIdName.substring(0, geneIdName.indexOf(':'));
       String name = geneIdName.substring(geneIdName.indexOf(':') + 1);
       logger.log(Level.FINER, "ranked geneId=''{0}'' name=''{1}''", new String[] {geneId, name});
       if (!ranks.containsKey(geneId)) {
         Map<String, String> nameRanks = new HashMap<String, String>();
-        nameRanks.put(name, String.format("%f", dp.getLabel()));
+        nameRanks.put(name, format(scores[i]));
         ranks.put(geneId, nameRanks);
       } else {
-        ranks.get(geneId).put(name, String.format("%f", dp.getLabel()));
+        ranks.get(geneId).put(name, format(scores[i]));
       }
     }
     FSIterator<Annotation> it = getAnnotationIterator(jcas);
@@ -165,186 +164,260 @@ class GeneRankAnnotator extends RankedListAnnotator {
     }
   }
 
+  /**
+   * Extract the gene mention features in a single pass over the mentions.
+   * <p>
+   * All strings and offsets used as counter keys are interned to consecutive integers, so that
+   * the counts can be kept in primitive arrays, and the distance of each mention to the nearest
+   * mention of its taxon is found by binary searches over the sorted taxon offsets.
+   */
   @Override
   protected
-  List<DataPoint> getDataList(JCas jcas, String qid) {
+  double[][] getFeatures(JCas jcas, List<String> keys) {
+    Map<Offset, String> geneNers = getGeneNers(jcas);
+    Map<String, int[][]> taxa = getTaxonOffsets(jcas);
+    Counter<String> geneIds = new Counter<String>();
+    Counter<String> names = new Counter<String>();
+    Counter<String> geneIdNamePairs = new Counter<String>();
+    Counter<Offset> ambiguity = new Counter<Offset>();
+    Counter<String> links = new Counter<String>();
+    Counter<String> symbols = new Counter<String>();
+    Counter<String> geneIdSymbolPairs = new Counter<String>();
+    List<Mention> mentions = new ArrayList<Mention>();
     FSIterator<Annotation> it = getAnnotationIterator(jcas);
-    List<DataPoint> data = new LinkedList<DataPoint>();
-    Map<String, Integer> geneIds = new HashMap<String, Integer>();
-    Map<String, Integer> names = new HashMap<String, Integer>();
-    Map<String, Integer> geneIdNamePairs = new HashMap<String, Integer>();
-    Map<String, Integer> links = new HashMap<String, Integer>();
-    Map<String, Integer> symbols = new HashMap<String, Integer>();
-    Map<String, Integer> geneIdSymbolPairs = new HashMap<String, Integer>();
-    Map<Offset, Integer> ambiguity = new HashMap<Offset, Integer>();
     while (it.hasNext()) {
       SemanticAnnotation ann = (SemanticAnnotation) it.next();
-      String geneId = ann.getIdentifier();
-      String name = ann.getCoveredText();
-      String geneIdName = String.format("%s:%s", geneId, name);
-      String symbol = null;
-      Offset off = ann.getOffset();
-      FSArray props = ann.getProperties();
-      for (int i = 0; i < props.size(); ++i) {
-        Property p = (Property) props.get(i);
-        if (p.getName().equals("name")) symbol = p.getValue();
-      }
-      String geneIdSymbol = String.format("%s:%s", geneId, symbol);
-      if (geneIds.containsKey(geneId)) {
-        geneIds.put(geneId, geneIds.get(geneId) + 1);
-      } else {
-        geneIds.put(geneId, 1);
-      }
-      if (names.containsKey(name)) {
-        names.put(name, names.get(name) + 1);
-      } else {
-        names.put(name, 1);
-      }
-      if (geneIdNamePairs.containsKey(geneIdName)) {
-        geneIdNamePairs.put(geneIdName, geneIdNamePairs.get(geneIdName) + 1);
-      } else {
-        geneIdNamePairs.put(geneIdName, 1);
-      }
-      if (geneIds.containsKey(geneId)) {
-        geneIds.put(geneId, geneIds.get(geneId) + 1);
-      } else {
-        geneIds.put(geneId, 1);
-      }
-      if (!links.containsKey(geneId)) {
-        if (geneLinkCounts.containsKey(geneId)) {
-          links.put(geneId, geneLinkCounts.get(geneId));
-        } else {
-          links.put(geneId, 0);
-        }
-      }
-      if (!symbols.containsKey(symbol)) {
-        if (symbolCounts.containsKey(symbol)) {
-          symbols.put(symbol, symbolCounts.get(symbol));
-        } else {
-          symbols.put(symbol, 0);
-        }
-      }
-      if (!geneIdSymbolPairs.containsKey(geneIdSymbol)) {
-        if (geneSymbolCounts.containsKey(geneId) &&
-            geneSymbolCounts.get(geneId).containsKey(symbol)) {
-          geneIdSymbolPairs.put(geneIdSymbol, geneSymbolCounts.get(geneId).get(symbol));
-        } else {
-          geneIdSymbolPairs.put(geneIdSymbol, 0);
-        }
-      }
-      if (ambiguity.containsKey(off)) {
-        ambiguity.put(off, ambiguity.get(off) + 1);
-      } else {
-        ambiguity.put(off, 1);
-      }
+      Mention m = new Mention(ann);
+      String geneIdSymbol = m.geneId + ":" + m.symbol;
+      m.geneIdx = geneIds.increment(m.geneId);
+      m.nameIdx = names.increment(m.name);
+      m.geneNameIdx = geneIdNamePairs.increment(m.geneIdName);
+      m.offsetIdx = ambiguity.increment(m.offset);
+      m.linkIdx = links.intern(m.geneId);
+      if (links.isNew(m.linkIdx))
+        links.set(m.linkIdx, geneLinkCounts.containsKey(m.geneId) ?
+                             geneLinkCounts.get(m.geneId) : 0);
+      m.symbolIdx = symbols.intern(m.symbol);
+      if (symbols.isNew(m.symbolIdx))
+        symbols.set(m.symbolIdx, symbolCounts.containsKey(m.symbol) ?
+                                 symbolCounts.get(m.symbol) : 0);
+      m.geneSymbolIdx = geneIdSymbolPairs.intern(geneIdSymbol);
+      if (geneIdSymbolPairs.isNew(m.geneSymbolIdx))
+        geneIdSymbolPairs.set(m.geneSymbolIdx, getGeneSymbolCount(m.geneId, m.symbol));
+      m.entityType = geneNers.get(m.offset);
+      mentions.add(m);
     }
-    Map<String, List<Offset>> taxIds = new HashMap<String, List<Offset>>();
-    FSIterator<Annotation> taxIt = jcas.createFilteredIterator(
-        SemanticAnnotation.getIterator(jcas),
-        SemanticAnnotation.makeConstraint(jcas, taxaAnnotatorUri, taxaNamespace)
-    );
-    while (taxIt.hasNext()) {
-      SemanticAnnotation ann = (SemanticAnnotation) taxIt.next();
-      String taxId = ann.getIdentifier();
-      List<Offset> offsets;
-      if (taxIds.containsKey(taxId)) {
-        offsets = taxIds.get(taxId);
-      } else {
-        offsets = new LinkedList<Offset>();
-        taxIds.put(taxId, offsets);
-      }
-      offsets.add(ann.getOffset());
-    }
-    Map<Offset, String> geneNers = new HashMap<Offset, String>();
-    FSIterator<Annotation> geneIt = jcas.createFilteredIterator(
-        SemanticAnnotation.getIterator(jcas),
-        SemanticAnnotation.makeConstraint(jcas, geneAnnotatorUri, geneNamespace)
-    );
-    while (geneIt.hasNext()) {
-      SemanticAnnotation ann = (SemanticAnnotation) geneIt.next();
-      geneNers.put(ann.getOffset(), ann.getIdentifier());
-    }
-    double normGeneIds = getNorm(geneIds);
-    double normNames = getNorm(names);
-    double normGeneIdNamePairs = getNorm(geneIdNamePairs);
-    double normLinks = getNorm(links);
-    double normSymbols = getNorm(symbols);
-    double normGeneIdSymbolPairs = getNorm(geneIdSymbolPairs);
-    double normTaxIds = getListNorm(taxIds);
-    it.moveToFirst();
-    while (it.hasNext()) {
-      SemanticAnnotation ann = (SemanticAnnotation) it.next();
-      String geneId = ann.getIdentifier();
-      String name = ann.getCoveredText();
-      Offset offset = ann.getOffset();
-      String geneIdName = String.format("%s:%s", geneId, name);
-      String symbol = null;
-      String taxId = null;
-      FSArray props = ann.getProperties();
-      for (int i = 0; i < props.size(); ++i) {
-        Property p = (Property) props.get(i);
-        if (p.getName().equals("name")) symbol = p.getValue();
-        if (p.getName().equals(GeneAnnotator.TAX_ID_PROPERTY)) taxId = p.getValue();
-      }
+    double normGeneIds = geneIds.max();
+    double normNames = names.max();
+    double normGeneIdNamePairs = geneIdNamePairs.max();
+    double normLinks = links.max();
+    double normSymbols = symbols.max();
+    double normGeneIdSymbolPairs = geneIdSymbolPairs.max();
+    int maxTaxa = 0;
+    for (int[][] offsets : taxa.values())
+      maxTaxa = Math.max(maxTaxa, offsets[0].length);
+    double normTaxIds = maxTaxa;
+    double[][] data = new double[mentions.size()][];
+    int idx = 0;
+    for (Mention m : mentions) {
+      int[][] taxonOffsets = taxa.get(m.taxId);
       int distance = Integer.MAX_VALUE;
-      for (Offset taxOff : taxIds.get(taxId)) {
-        distance = Math.min(distance, Math.abs(taxOff.start() - offset.end()));
-        distance = Math.min(distance, Math.abs(offset.start() - taxOff.end()));
+      int taxonCount = 0;
+      if (taxonOffsets != null) {
+        distance = Math.min(nearest(taxonOffsets[0], m.offset.end()),
+                            nearest(taxonOffsets[1], m.offset.start()));
+        taxonCount = taxonOffsets[0].length;
       }
-      String geneIdSymbol = String.format("%s:%s", geneId, symbol);
-      String entity_type = geneNers.get(offset);
-      double[] features = new double[] {
+      data[idx++] = new double[] {
           // 1 no NER
-          entity_type == null ? 1.0 : 0.0,
+          m.entityType == null ? 1.0 : 0.0,
           // 2 cell_line
-          "cell_line".equals(entity_type) ? 1.0 : 0.0,
+          "cell_line".equals(m.entityType) ? 1.0 : 0.0,
           // 3 cell_type
-          "cell_type".equals(entity_type) ? 1.0 : 0.0,
+          "cell_type".equals(m.entityType) ? 1.0 : 0.0,
           // 4 DNA
-          "DNA".equals(entity_type) ? 1.0 : 0.0,
+          "DNA".equals(m.entityType) ? 1.0 : 0.0,
           // 5 protein
-          "protein".equals(entity_type) ? 1.0 : 0.0,
+          "protein".equals(m.entityType) ? 1.0 : 0.0,
           // 6 RNA
-          "RNA".equals(entity_type) ? 1.0 : 0.0,
+          "RNA".equals(m.entityType) ? 1.0 : 0.0,
           // 7 string similarity
-          ann.getConfidence(),
+          m.confidence,
           // 8 taxa distance
           1.0 / distance,
           // 9 mention ambiguity
-          1.0 / ambiguity.get(offset),
+          1.0 / ambiguity.get(m.offsetIdx),
           // 10 gene ID count
-          geneIds.get(geneId) / normGeneIds,
+          geneIds.get(m.geneIdx) / normGeneIds,
           // 11 actual name count
-          names.get(name) / normNames,
+          names.get(m.nameIdx) / normNames,
           // 12 actual name, gene ID pair count
-          geneIdNamePairs.get(geneIdName) / normGeneIdNamePairs,
+          geneIdNamePairs.get(m.geneNameIdx) / normGeneIdNamePairs,
           // 13 gene link count
-          links.get(geneId) / normLinks,
+          links.get(m.linkIdx) / normLinks,
           // 14 symbol count
-          symbols.get(symbol) / normSymbols,
+          symbols.get(m.symbolIdx) / normSymbols,
           // 15 gene symbol counts
-          geneIdSymbolPairs.get(geneIdSymbol) / normGeneIdSymbolPairs,
+          geneIdSymbolPairs.get(m.geneSymbolIdx) / normGeneIdSymbolPairs,
           // 16 tax ID counts
-          taxIds.get(taxId).size() / normTaxIds
+          taxonCount / normTaxIds
       };
-      data.add(makeDataPoint(qid, geneIdName, features));
+      keys.add(m.geneIdName);
     }
     return data;
   }
 
+  /** The properties of a gene mention the features are extracted from. */
+  private static
+  class Mention {
+    final String geneId;
+    final String name;
+    final String geneIdName;
+    final Offset offset;
+    final double confidence;
+    String symbol = null;
+    String taxId = null;
+    String entityType;
+    int geneIdx, nameIdx, geneNameIdx, offsetIdx, linkIdx, symbolIdx, geneSymbolIdx;
+
+    Mention(SemanticAnnotation ann) {
+      geneId = ann.getIdentifier();
+      name = ann.getCoveredText();
+      geneIdName = geneId + ":" + name;
+      offset = ann.getOffset();
+      confidence = ann.getConfidence();
+      FSArray props = ann.getProperties();
+      for (int i = 0; i < props.size(); ++i) {
+        Property p = (Property) props.get(i);
+        if (p.getName().equals("name")) symbol = p.getValue();
+        if (p.getName().equals(GeneAnnotator.TAX_ID_PROPERTY)) taxId = p.getValue();
+      }
+    }
+  }
+
+  /**
+   * Interns keys to consecutive integers and keeps a primitive count for each of them.
+   *
+   * @param <K> the key type
+   */
+  private static
+  class Counter<K> {
+    private final Map<K, Integer> index = new HashMap<K, Integer>();
+    private int[] counts = new int[16];
+    private boolean[] isSet = new boolean[16];
+
+    /** Return the integer for a key, interning it if necessary. */
+    int intern(K key) {
+      Integer idx = index.get(key);
+      if (idx == null) {
+        idx = index.size();
+        index.put(key, idx);
+        if (idx == counts.length) {
+          counts = Arrays.copyOf(counts, 2 * idx);
+          isSet = Arrays.copyOf(isSet, 2 * idx);
+        }
+      }
+      return idx;
+    }
+
+    /** Intern the key and increment its count. */
+    int increment(K key) {
+      int idx = intern(key);
+      counts[idx]++;
+      isSet[idx] = true;
+      return idx;
+    }
+
+    /** Return <code>true</code> if no count has been set for the interned key. */
+    boolean isNew(int idx) {
+      return !isSet[idx];
+    }
+
+    void set(int idx, int count) {
+      counts[idx] = count;
+      isSet[idx] = true;
+    }
+
+    int get(int idx) {
+      return counts[idx];
+    }
+
+    /** Return the maximum count (or zero, if there are no keys). */
+    int max() {
+      int max = 0;
+      for (int i = index.size() - 1; i > -1; --i)
+        max = Math.max(max, counts[i]);
+      return max;
+    }
+  }
+
   private
-  double getNorm(Map<String, Integer> counts) {
-    int norm = 0;
-    for (int i : counts.values())
-      norm = Math.max(norm, i);
-    return (double) norm;
+  int getGeneSymbolCount(String geneId, String symbol) {
+    if (geneSymbolCounts.containsKey(geneId) && geneSymbolCounts.get(geneId).containsKey(symbol))
+      return geneSymbolCounts.get(geneId).get(symbol);
+    return 0;
+  }
+
+  /** Map the offsets of the gene NER annotations to their entity types. */
+  private
+  Map<Offset, String> getGeneNers(JCas jcas) {
+    Map<Offset, String> geneNers = new HashMap<Offset, String>();
+    FSIterator<Annotation> geneIt = jcas.createFilteredIterator(
+        SemanticAnnotation.getIterator(jcas),
+        SemanticAnnotation.makeConstraint(jcas, geneAnnotatorUri, geneNamespace)
+    );
+    while (geneIt.hasNext()) {
+      SemanticAnnotation ann = (SemanticAnnotation) geneIt.next();
+      geneNers.put(ann.getOffset(), ann.getIdentifier());
+    }
+    return geneNers;
+  }
+
+  /**
+   * Map each taxon ID to the sorted start (index 0) and sorted end (index 1) offsets of its
+   * annotations.
+   */
+  private
+  Map<String, int[][]> getTaxonOffsets(JCas jcas) {
+    Map<String, List<Offset>> taxIds = new HashMap<String, List<Offset>>();
+    FSIterator<Annotation> taxIt = jcas.createFilteredIterator(
+        SemanticAnnotation.getIterator(jcas),
+        SemanticAnnotation.makeConstraint(jcas, taxaAnnotatorUri, taxaNamespace)
+    );
+    while (taxIt.hasNext()) {
+      SemanticAnnotation ann = (SemanticAnnotation) taxIt.next();
+      List<Offset> offsets = taxIds.get(ann.getIdentifier());
+      if (offsets == null) {
+        offsets = new ArrayList<Offset>();
+        taxIds.put(ann.getIdentifier(), offsets);
+      }
+      offsets.add(ann.getOffset());
+    }
+    Map<String, int[][]> taxa = new HashMap<String, int[][]>();
+    for (Map.Entry<String, List<Offset>> e : taxIds.entrySet()) {
+      List<Offset> offsets = e.getValue();
+      int[] starts = new int[offsets.size()];
+      int[] ends = new int[offsets.size()];
+      for (int i = 0; i < starts.length; ++i) {
+        starts[i] = offsets.get(i).start();
+        ends[i] = offsets.get(i).end();
+      }
+      Arrays.sort(starts);
+      Arrays.sort(ends);
+      taxa.put(e.getKey(), new int[][] {starts, ends});
+    }
+    return taxa;
   }
 
-  private <T>
-  double getListNorm(Map<String, List<T>> counts) {
-    int norm = 0;
-    for (List<T> i : counts.values())
-      norm = Math.max(norm, i.size());
-    return (double) norm;
+  /** Return the smallest absolute difference between the position and any sorted value. */
+  static
+  int nearest(int[] sorted, int pos) {
+    int idx = Arrays.binarySearch(sorted, pos);
+    if (idx > -1) return 0;
+    idx = -(idx + 1); // the insertion point
+    int distance = Integer.MAX_VALUE;
+    if (idx < sorted.length) distance = sorted[idx] - pos;
+    if (idx > 0) distance = Math.min(distance, pos - sorted[idx - 1]);
+    return distance;
   }
 }
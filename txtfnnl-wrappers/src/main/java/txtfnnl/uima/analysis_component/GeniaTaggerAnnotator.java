@@ -2,6 +2,7 @@ package txtfnnl.uima.analysis_component;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,15 +11,19 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.ExternalResource;
 
 import txtfnnl.subprocess.ReadlineRuntime;
+import txtfnnl.subprocess.ReadlineRuntimePool;
 import txtfnnl.uima.AnalysisComponentBuilder;
+import txtfnnl.uima.resource.ResponseCacheResource;
 import txtfnnl.uima.tcas.SemanticAnnotation;
 import txtfnnl.uima.tcas.SentenceAnnotation;
 import txtfnnl.uima.tcas.TokenAnnotation;
@@ -78,6 +83,26 @@ class Token {
  * @author Florian Leitner
  */
 class GeniaTagger extends ReadlineRuntime<List<Token>> {
+  /** Convert tagged sentences to and from their raw (line-based) representation. */
+  static final ReadlineRuntimePool.Codec<List<Token>> CODEC =
+      new ReadlineRuntimePool.Codec<List<Token>>() {
+        public String encode(List<Token> tokens) {
+          final StringBuilder sb = new StringBuilder();
+          for (final Token t : tokens) {
+            sb.append(t.toString());
+            sb.append('\n');
+          }
+          return sb.toString();
+        }
+
+        public List<Token> decode(String data) {
+          final List<Token> tokens = new LinkedList<Token>();
+          for (final String line : data.split("\n"))
+            if (line.length() > 0) tokens.add(new Token(line));
+          return tokens;
+        }
+      };
+
   /**
    * Create a new link-parser process fork.
    * 
@@ -134,8 +159,43 @@ public class GeniaTaggerAnnotator extends JCasAnnotator_ImplBase {
       defaultValue = "/usr/local/share/geniatagger/",
       description = "Path to the directory with the model files.")
   private String dictionariesPath;
+  /**
+   * The number of <code>geniatagger</code> processes to run in parallel (default: 1).
+   * <p>
+   * The sentences of each document are dispatched to all idle tagger processes, so setting this
+   * parameter to the number of available cores lets the tagger use all of them, even if the rest
+   * of the pipeline is single-threaded.
+   */
+  public static final String PARAM_PROCESSES = "Processes";
+  @ConfigurationParameter(name = PARAM_PROCESSES,
+      defaultValue = "1",
+      description = "Number of tagger processes to run in parallel.")
+  private int processes;
+  /**
+   * The maximum number of sentences written ahead to each tagger process (default: 1).
+   * <p>
+   * If larger than one, the sentences are streamed to the processes in batches of up to this size
+   * while their responses are being read, instead of waiting for each response before sending the
+   * next sentence. A sentence the process fails on still only costs that sentence.
+   */
+  public static final String PARAM_BATCH_SIZE = "BatchSize";
+  @ConfigurationParameter(name = PARAM_BATCH_SIZE,
+      defaultValue = "1",
+      description = "Max. number of sentences written ahead to a process.")
+  private int batchSize;
+  /**
+   * The key used for the (optional) {@link ResponseCacheResource} of tagger responses.
+   * <p>
+   * If set, sentences are looked up in the cache before they are sent to the tagger process, and
+   * all new responses are added to the cache. The cached responses are keyed by the sentence text
+   * and the tagger build and configuration (i.e., a fingerprint of the executable and the
+   * dictionaries, and the dictionary path), so responses of an upgraded tagger are never reused.
+   */
+  public static final String MODEL_KEY_RESPONSE_CACHE = "ResponseCache";
+  @ExternalResource(key = MODEL_KEY_RESPONSE_CACHE, mandatory = false)
+  private ResponseCacheResource responseCache;
   protected Logger logger;
-  private GeniaTagger tagger;
+  private ReadlineRuntimePool<List<Token>> tagger;
 
   public static class Builder extends AnalysisComponentBuilder {
     public Builder() {
@@ -159,6 +219,39 @@ public class GeniaTaggerAnnotator extends JCasAnnotator_ImplBase {
       setOptionalParameter(PARAM_DIRECTORY, path.getCanonicalPath());
       return this;
     }
+
+    /**
+     * Configure the number of tagger processes to run in parallel (by default, only one process is
+     * used).
+     * 
+     * @param number of processes
+     */
+    public Builder setProcesses(int number) {
+      if (number < 1) throw new IllegalArgumentException("non-positive number of processes");
+      setOptionalParameter(PARAM_PROCESSES, number);
+      return this;
+    }
+
+    /**
+     * Configure the maximum number of sentences written ahead to each tagger process (by default,
+     * each sentence is only sent after the response to the previous one was read).
+     * 
+     * @param size of the batches
+     */
+    public Builder setBatchSize(int size) {
+      if (size < 1) throw new IllegalArgumentException("non-positive batch size");
+      setOptionalParameter(PARAM_BATCH_SIZE, size);
+      return this;
+    }
+
+    /**
+     * Supply a {@link ResponseCacheResource} to store the tagger responses in, so that the tagger
+     * only has to process sentences it has not seen before.
+     */
+    public Builder setResponseCache(ExternalResourceDescription desc) {
+      setOptionalParameter(MODEL_KEY_RESPONSE_CACHE, desc);
+      return this;
+    }
   }
 
   /**
@@ -172,8 +265,18 @@ public class GeniaTaggerAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
+    final ReadlineRuntimePool.Factory<List<Token>> factory =
+        new ReadlineRuntimePool.Factory<List<Token>>() {
+          public ReadlineRuntime<List<Token>> newRuntime() throws IOException {
+            return newTagger();
+          }
+        };
     try {
-      tagger = new GeniaTagger(dictionariesPath, logger);
+      tagger = new ReadlineRuntimePool<List<Token>>(factory, processes, batchSize, logger);
+      if (responseCache != null)
+        tagger.setCache(new ResponseCacheAdapter(responseCache), "geniatagger " +
+            ReadlineRuntimePool.fingerprint("geniatagger", new File(dictionariesPath)) + " " +
+            dictionariesPath, GeniaTagger.CODEC);
     } catch (final IOException e) {
       logger.log(Level.SEVERE, "geniatagger setup failed (dir: ''{0}'')", dictionariesPath);
       throw new ResourceInitializationException(e);
@@ -181,36 +284,48 @@ public class GeniaTaggerAnnotator extends JCasAnnotator_ImplBase {
     logger.log(Level.CONFIG, "initialized GENIA tagger");
   }
 
+  /** Fork out a new tagger process. */
+  GeniaTagger newTagger() throws IOException {
+    return new GeniaTagger(dictionariesPath, logger);
+  }
+
   @Override
   public void process(JCas jcas) throws AnalysisEngineProcessException {
     final FSIterator<Annotation> sentenceIt = SentenceAnnotation.getIterator(jcas);
+    final List<Annotation> sentenceAnns = new ArrayList<Annotation>();
+    final List<String> sentences = new ArrayList<String>();
     List<Token> tokens;
     int count = 0;
     List<Annotation> unhandledSentence = new LinkedList<Annotation>();
     while (sentenceIt.hasNext()) {
       final Annotation sentenceAnn = sentenceIt.next();
       final String sentence = sentenceAnn.getCoveredText().replace('\n', ' ');
-      final int sentenceOffset = sentenceAnn.getBegin();
       if (sentence.length() > 4096) {
         logger.log(Level.WARNING, "skipping too long sentence {0}", sentenceAnn);
         unhandledSentence.add(sentenceAnn);
         continue;
       }
+      sentenceAnns.add(sentenceAnn);
+      sentences.add(sentence);
+    }
+    final List<List<Token>> taggedSentences;
+    try {
+      taggedSentences = tagger.processAll(sentences);
+    } catch (final IOException e) {
+      logger.log(Level.SEVERE, "geniatagger could not be restarted");
+      throw new AnalysisEngineProcessException(e);
+    }
+    for (int idx = 0; idx < sentences.size(); ++idx) {
+      final Annotation sentenceAnn = sentenceAnns.get(idx);
+      final String sentence = sentences.get(idx);
+      final int sentenceOffset = sentenceAnn.getBegin();
       int wordOffset = 0;
       int searchOffset = 0;
       int wordLength = 0;
       int lastOffset = 0;
-      try {
-        tokens = tagger.process(sentence);
-      } catch (final IOException e) {
+      tokens = taggedSentences.get(idx);
+      if (tokens == null) {
         logger.log(Level.WARNING, "geniatagger choked on: ''{0}''", sentence);
-        try {
-          tagger.stop();
-          tagger = new GeniaTagger(dictionariesPath, logger);
-        } catch (final IOException e2) {
-          logger.log(Level.SEVERE, "geniatagger could not be restarted");
-          throw new AnalysisEngineProcessException(e2);
-        }
         unhandledSentence.add(sentenceAnn);
         continue;
       }
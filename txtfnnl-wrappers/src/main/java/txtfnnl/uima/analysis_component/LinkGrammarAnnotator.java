@@ -5,6 +5,7 @@ package txtfnnl.uima.analysis_component;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.UimaContext;
@@ -20,16 +22,20 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.Level;
 import org.apache.uima.util.Logger;
 
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.ExternalResource;
 
 import txtfnnl.subprocess.ReadlineRuntime;
-import txtfnnl.subprocess.RuntimeKiller;
+import txtfnnl.subprocess.ReadlineRuntimePool;
+import txtfnnl.subprocess.Watchdog;
 import txtfnnl.uima.AnalysisComponentBuilder;
+import txtfnnl.uima.resource.ResponseCacheResource;
 import txtfnnl.uima.tcas.SentenceAnnotation;
 import txtfnnl.uima.tcas.SyntaxAnnotation;
 import txtfnnl.utils.Offset;
@@ -56,6 +62,16 @@ import txtfnnl.utils.Offset;
  * @author Florian Leitner
  */
 class LinkParser extends ReadlineRuntime<String> {
+  /** Cache the constituent expressions as is, except for empty (i.e., failed) parses. */
+  static final ReadlineRuntimePool.Codec<String> CODEC = new ReadlineRuntimePool.Codec<String>() {
+    public String encode(String expression) {
+      return expression.length() > 0 ? expression : null;
+    }
+
+    public String decode(String data) {
+      return data;
+    }
+  };
   /** Flag indicating the first read of the runtime's input stream. */
   boolean first;
   /** The timeout setting (in seconds) for this parser. */
@@ -82,26 +98,30 @@ class LinkParser extends ReadlineRuntime<String> {
   @Override
   protected String parseResponse() throws IOException {
     String result;
-    final RuntimeKiller killer = new RuntimeKiller(this, timeout * 2);
-    killer.start();
-    if (first) {
-      // status/setup messages - despite verbosity=0, the parsers
-      // seems to be rather talkative still :)
-      // essentially, each command line option is echoed once
-      // to STDOUT instead of STDERR...
-      first = false;
-      for (int i = 0; i < 4; ++i) {
-        this.log(Level.FINE, readLine());
-      }
-    } else {
-      // read an empty line
-      final String empty = readLine();
-      if (empty == null || empty.length() > 0) {
-        this.log(Level.WARNING, "expected an empty line from the parser but got: '" + empty + "'");
+    final Watchdog.Deadline deadline = Watchdog.watch(this, timeout * 2, TimeUnit.SECONDS);
+    try {
+      if (first) {
+        // status/setup messages - despite verbosity=0, the parsers
+        // seems to be rather talkative still :)
+        // essentially, each command line option is echoed once
+        // to STDOUT instead of STDERR...
+        first = false;
+        for (int i = 0; i < 4; ++i) {
+          this.log(Level.FINE, readLine());
+        }
+      } else {
+        // read an empty line
+        final String empty = readLine();
+        if (empty == null || empty.length() > 0) {
+          this.log(Level.WARNING, "expected an empty line from the parser but got: '" + empty +
+              "'");
+        }
       }
+      result = readLine();
+    } finally {
+      deadline.cancel();
     }
-    result = readLine();
-    killer.doNotKill();
+    if (result == null) throw new IOException("LinkParser returned NULL (likely cause: killed)");
     return result;
   }
 }
@@ -462,10 +482,46 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
       defaultValue = "15",
       description = "One quarter of the total max. timeout value.")
   private int timeout;
+  /**
+   * The number of <code>link-parser</code> processes to run in parallel (default: 1).
+   * <p>
+   * The sentences of each document are dispatched to all idle parser processes, so setting this
+   * parameter to the number of available cores lets the parser use all of them, even if the rest
+   * of the pipeline is single-threaded.
+   */
+  public static final String PARAM_PROCESSES = "Processes";
+  @ConfigurationParameter(name = PARAM_PROCESSES,
+      defaultValue = "1",
+      description = "Number of parser processes to run in parallel.")
+  private int processes;
+  /**
+   * The maximum number of sentences written ahead to each parser process (default: 1).
+   * <p>
+   * If larger than one, the sentences are streamed to the processes in batches of up to this size
+   * while their responses are being read, instead of waiting for each response before sending the
+   * next sentence. A sentence the process fails on still only costs that sentence.
+   */
+  public static final String PARAM_BATCH_SIZE = "BatchSize";
+  @ConfigurationParameter(name = PARAM_BATCH_SIZE,
+      defaultValue = "1",
+      description = "Max. number of sentences written ahead to a process.")
+  private int batchSize;
+  /**
+   * The key used for the (optional) {@link ResponseCacheResource} of parser responses.
+   * <p>
+   * If set, sentences are looked up in the cache before they are sent to the parser process, and
+   * all new responses are added to the cache. The cached responses are keyed by the sentence text
+   * and the parser build and configuration (i.e., a fingerprint of the executable and the
+   * dictionaries, the dictionary path, and the timeout), so responses of an upgraded parser are
+   * never reused.
+   */
+  public static final String MODEL_KEY_RESPONSE_CACHE = "ResponseCache";
+  @ExternalResource(key = MODEL_KEY_RESPONSE_CACHE, mandatory = false)
+  private ResponseCacheResource responseCache;
   /** The logger for this Annotator. */
   Logger logger;
-  /** The wrapper for the LinkGrammar parser runtime executable. */
-  LinkParser parser;
+  /** The pool of wrappers for the LinkGrammar parser runtime executable. */
+  ReadlineRuntimePool<String> parser;
 
   public static class Builder extends AnalysisComponentBuilder {
     public Builder() {
@@ -499,6 +555,39 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
       setOptionalParameter(PARAM_TIMEOUT_SECONDS, seconds);
       return this;
     }
+
+    /**
+     * Configure the number of parser processes to run in parallel (by default, only one process is
+     * used).
+     * 
+     * @param number of processes
+     */
+    public Builder setProcesses(int number) {
+      if (number < 1) throw new IllegalArgumentException("non-positive number of processes");
+      setOptionalParameter(PARAM_PROCESSES, number);
+      return this;
+    }
+
+    /**
+     * Configure the maximum number of sentences written ahead to each parser process (by default,
+     * each sentence is only sent after the response to the previous one was read).
+     * 
+     * @param size of the batches
+     */
+    public Builder setBatchSize(int size) {
+      if (size < 1) throw new IllegalArgumentException("non-positive batch size");
+      setOptionalParameter(PARAM_BATCH_SIZE, size);
+      return this;
+    }
+
+    /**
+     * Supply a {@link ResponseCacheResource} to store the parser responses in, so that the parser
+     * only has to process sentences it has not seen before.
+     */
+    public Builder setResponseCache(ExternalResourceDescription desc) {
+      setOptionalParameter(MODEL_KEY_RESPONSE_CACHE, desc);
+      return this;
+    }
   }
 
   /** Configure a {@link LinkGrammarAnnotator} description builder. */
@@ -510,8 +599,17 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
+    final ReadlineRuntimePool.Factory<String> factory = new ReadlineRuntimePool.Factory<String>() {
+      public ReadlineRuntime<String> newRuntime() throws IOException {
+        return newParser();
+      }
+    };
     try {
-      parser = new LinkParser(dictionariesPath, timeout, logger);
+      parser = new ReadlineRuntimePool<String>(factory, processes, batchSize, logger);
+      if (responseCache != null)
+        parser.setCache(new ResponseCacheAdapter(responseCache), "link-parser " +
+            ReadlineRuntimePool.fingerprint("link-parser", new File(dictionariesPath)) + " " +
+            dictionariesPath + " timeout=" + timeout, LinkParser.CODEC);
     } catch (final IOException e) {
       logger.log(Level.SEVERE, "LinkGrammar parser setup failed");
       throw new ResourceInitializationException(e);
@@ -519,19 +617,56 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
     logger.log(Level.CONFIG, "initialized LinkGrammar parser");
   }
 
+  /** Fork out a new parser process. */
+  LinkParser newParser() throws IOException {
+    return new LinkParser(dictionariesPath, timeout, logger);
+  }
+
   @Override
   public void process(JCas jcas) throws AnalysisEngineProcessException {
     final FSIterator<Annotation> sentenceIt = SentenceAnnotation.getIterator(jcas);
     final List<SyntaxAnnotation> phrases = new LinkedList<SyntaxAnnotation>();
+    final List<Integer> offsets = new ArrayList<Integer>();
+    final List<String> sentences = new ArrayList<String>();
     while (sentenceIt.hasNext()) {
       final Annotation sentenceAnn = sentenceIt.next();
-      phrases.addAll(parseSentence(sentenceAnn.getCoveredText(), sentenceAnn.getBegin(), jcas));
+      final String sentence = normalize(sentenceAnn.getCoveredText());
+      logger.log(Level.FINE, "sentence: ''{0}''", sentence);
+      offsets.add(sentenceAnn.getBegin());
+      sentences.add(sentence);
+    }
+    final List<String> expressions;
+    try {
+      /* ================= PARSE ================= */
+      expressions = parser.processAll(sentences);
+      /* ================= PARSE ================= */
+    } catch (final IOException e) {
+      logger.log(Level.SEVERE, "link-parser setup failed: {0}", e.getMessage());
+      throw new AnalysisEngineProcessException(e);
+    }
+    for (int idx = 0; idx < sentences.size(); ++idx) {
+      phrases.addAll(annotateSentence(sentences.get(idx), offsets.get(idx), expressions.get(idx),
+          jcas));
     }
     for (final SyntaxAnnotation ann : phrases) {
       jcas.addFsToIndexes(ann);
     }
   }
 
+  /**
+   * Normalize a sentence for the LinkGrammar parser.
+   * <p>
+   * NB: any "normalizations" must be 1:1, otherwise the offsets will be wrong!
+   */
+  static String normalize(String sentence) {
+    // LinkGrammar has issues when parsing curly and/or square braces;
+    // normalize them to parenthesis, circumventing these issues:
+    sentence = sentence.replace('{', '(').replace('}', ')');
+    sentence = sentence.replace('[', '(').replace(']', ')');
+    // There should be no newline characters in the sentence:
+    return sentence.replace('\n', ' ');
+  }
+
   /**
    * Parse a sentence with the LinkGrammar parser.
    * 
@@ -543,38 +678,39 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
    */
   List<SyntaxAnnotation> parseSentence(String sentence, int offset, JCas jcas)
       throws AnalysisEngineProcessException {
-    final List<SyntaxAnnotation> phrases = new LinkedList<SyntaxAnnotation>();
-    final boolean doubled = false; // if retried with double+1 timeout seconds
-    // NB: any "normalizations" must be 1:1, otherwise the offsets will
-    // be wrong!
-    // LinkGrammar has issues when parsing curly and/or square braces;
-    // normalize them to parenthesis, circumventing these issues:
-    sentence = sentence.replace('{', '(').replace('}', ')');
-    sentence = sentence.replace('[', '(').replace(']', ')');
-    // There should be no newline characters in the sentence:
-    sentence = sentence.replace('\n', ' ');
+    sentence = normalize(sentence);
     String constituentExpression = null;
     try {
       logger.log(Level.FINE, "sentence: ''{0}''", sentence);
       /* ================= PARSE ================= */
-      constituentExpression = parser.process(sentence);
+      constituentExpression = parser.processAll(Collections.singletonList(sentence)).get(0);
       /* ================= PARSE ================= */
-      if (constituentExpression == null) throw new IOException(
-          "LinkParser returned NULL (likely cause: killed)");
-      else if (constituentExpression.length() == 0 && sentence.trim().length() > 0) {
-        constituentExpression = null;
-        logger.log(Level.WARNING, "link-parser failed on ''{0}''", sentence);
-      }
     } catch (final IOException e) {
-      logger.log(Level.WARNING, "link-parser failed on ''{0}'': {1}",
-          new String[] { sentence, e.getMessage() });
-      try {
-        parser.stop();
-        parser = new LinkParser(dictionariesPath, timeout, logger);
-      } catch (final IOException e2) {
-        logger.log(Level.SEVERE, "link-parser setup failed: {0}", e2.getMessage());
-        throw new AnalysisEngineProcessException(e2);
-      }
+      logger.log(Level.SEVERE, "link-parser setup failed: {0}", e.getMessage());
+      throw new AnalysisEngineProcessException(e);
+    }
+    return annotateSentence(sentence, offset, constituentExpression, jcas);
+  }
+
+  /**
+   * Annotate a (normalized) sentence using the constituent expression returned by the parser,
+   * splitting long sentences the parser failed on into smaller parts that are parsed again.
+   * 
+   * @param sentence that was parsed
+   * @param offset of the sentence (begin) in the text
+   * @param constituentExpression returned by the parser (<code>null</code> if it failed)
+   * @param jcas containing the sentence
+   * @return the found constituent span annotations (might be empty)
+   * @throws AnalysisEngineProcessException
+   */
+  List<SyntaxAnnotation> annotateSentence(String sentence, int offset,
+      String constituentExpression, JCas jcas) throws AnalysisEngineProcessException {
+    final List<SyntaxAnnotation> phrases = new LinkedList<SyntaxAnnotation>();
+    final boolean doubled = false; // if retried with double+1 timeout seconds
+    if (constituentExpression != null && constituentExpression.length() == 0 &&
+        sentence.trim().length() > 0) {
+      constituentExpression = null;
+      logger.log(Level.WARNING, "link-parser failed on ''{0}''", sentence);
     }
     if (constituentExpression != null) {
       logger.log(Level.FINE, "constituents: {0}", constituentExpression);
@@ -621,6 +757,8 @@ public class LinkGrammarAnnotator extends JCasAnnotator_ImplBase {
   @Override
   public void destroy() {
     super.destroy();
+    logger.log(Level.INFO, "subprocess timeouts: {0}, kills: {1}, restarts: {2}", new Object[] {
+        Watchdog.getTimeouts(), Watchdog.getKills(), Watchdog.getRestarts() });
     try {
       parser.stop();
     } catch (final IOException e) {
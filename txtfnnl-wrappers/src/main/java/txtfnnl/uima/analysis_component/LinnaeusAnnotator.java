@@ -4,8 +4,6 @@ import java.io.File;
 import java.util.HashSet;
 import java.util.Set;
 
-import martin.common.ArgParser;
-
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.AnalysisComponent;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -18,14 +16,14 @@ import org.apache.uima.util.Logger;
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
 import org.uimafit.descriptor.ExternalResource;
+import org.uimafit.factory.ExternalResourceFactory;
 
 import txtfnnl.uima.AnalysisComponentBuilder;
 import txtfnnl.uima.resource.LineBasedStringMapResource;
+import txtfnnl.uima.resource.LinnaeusMatcherResource;
 import txtfnnl.uima.tcas.SemanticAnnotation;
 
-import uk.ac.man.entitytagger.EntityTagger;
 import uk.ac.man.entitytagger.Mention;
-import uk.ac.man.entitytagger.matching.Matcher;
 
 /**
  * A wrapper for Linnaeus requiring a Linnaeus properties file for configuration. As no settings
@@ -33,6 +31,9 @@ import uk.ac.man.entitytagger.matching.Matcher;
  * required configuration is the namespace to use on the semantic annotations that will be made. As
  * Linnaeus is mainly made for species annotations, a taxonomy namespace is preconfigured as the
  * default namespace.
+ * <p>
+ * The Linnaeus matcher itself is a {@link LinnaeusMatcherResource shared resource} that is loaded
+ * only once per JVM and properties file, and used concurrently by all instances of this AE.
  * 
  * @author Florian Leitner
  */
@@ -45,10 +46,10 @@ public class LinnaeusAnnotator extends JCasAnnotator_ImplBase {
       description = "The namespace to use for the annotations.",
       defaultValue = DEFAULT_NAMESPACE)
   private String namespace;
-  public static final String PARAM_CONFIG_FILE_PATH = "ConfigFilePath";
-  @ConfigurationParameter(name = PARAM_CONFIG_FILE_PATH,
-      description = "A property file path with Linnaeus configuration data.")
-  private String configFilePath;
+  /** The (required) {@link LinnaeusMatcherResource} to use. */
+  public static final String MODEL_KEY_MATCHER_RESOURCE = "LinnaeusMatcherResource";
+  @ExternalResource(key = MODEL_KEY_MATCHER_RESOURCE)
+  private LinnaeusMatcherResource linnaeus;
   /**
    * A mapping of the detected IDs to some other ID.
    * <p>
@@ -59,7 +60,6 @@ public class LinnaeusAnnotator extends JCasAnnotator_ImplBase {
   @ExternalResource(key = MODEL_KEY_ID_MAPPING_RESOURCE, mandatory = false)
   private LineBasedStringMapResource<String> idMapping;
   private Logger logger;
-  private Matcher linnaeus;
 
   public static class Builder extends AnalysisComponentBuilder {
     protected Builder(Class<? extends AnalysisComponent> klass, File configFile) {
@@ -74,7 +74,13 @@ public class LinnaeusAnnotator extends JCasAnnotator_ImplBase {
 
     /** Set a different properties file. */
     public Builder setConfigurationFilePath(File configFile) {
-      setRequiredParameter(PARAM_CONFIG_FILE_PATH, configFile.getAbsolutePath());
+      return setMatcherResource(ExternalResourceFactory.createExternalResourceDescription(
+          LinnaeusMatcherResource.class, "file:" + configFile.getAbsolutePath()));
+    }
+
+    /** Set the (shared) {@link LinnaeusMatcherResource} to use. */
+    public Builder setMatcherResource(ExternalResourceDescription matcherResource) {
+      setRequiredParameter(MODEL_KEY_MATCHER_RESOURCE, matcherResource);
       return this;
     }
 
@@ -104,12 +110,8 @@ public class LinnaeusAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
-    logger.log(Level.CONFIG, "reading configuration file for {0} annotations at {1}",
-        new String[] { namespace, configFilePath });
-    ArgParser ap = new ArgParser(new String[] { "--properties", configFilePath });
-    java.util.logging.Logger l = java.util.logging.Logger.getLogger("Linnaeus");
-    l.setLevel(java.util.logging.Level.WARNING);
-    linnaeus = EntityTagger.getMatcher(ap, l);
+    logger.log(Level.CONFIG, "using Linnaeus configuration for {0} annotations at {1}",
+        new String[] { namespace, linnaeus.getConfigFilePath() });
     if (idMapping != null)
       logger.log(Level.CONFIG, "loaded {0} ID mappings", idMapping.size());
     else
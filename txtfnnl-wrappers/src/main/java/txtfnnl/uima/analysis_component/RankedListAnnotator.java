@@ -1,7 +1,5 @@
 package txtfnnl.uima.analysis_component;
 
-import ciir.umass.edu.learning.DataPoint;
-import ciir.umass.edu.learning.RankList;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.AnalysisComponent;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
@@ -20,6 +18,7 @@ import txtfnnl.uima.cas.Property;
 import txtfnnl.uima.resource.RankerResource;
 import txtfnnl.uima.tcas.TextAnnotation;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -107,23 +106,25 @@ class RankedListAnnotator extends JCasAnnotator_ImplBase {
   @Override
   public
   void process(JCas jcas) throws AnalysisEngineProcessException {
-    List<DataPoint> data = getDataList(jcas, "1"); // XXX: could use article ID as QID if useful?
-    for (DataPoint d : data)
-      d.setLabel((float) ranker.eval(d));
-    process(jcas, data);
+    List<String> keys = new ArrayList<String>();
+    double[][] features = getFeatures(jcas, keys);
+    process(jcas, keys, ranker.eval(features));
   }
 
   /**
-   * A default {@link RankList} processing implementation that expects the value of {@link
-   * TextAnnotation#toString()} as the {@link ciir.umass.edu.learning.DataPoint#getDescription()
-   * data point key} to identify the {@link TextAnnotation annotations} to which the computed rank
-   * should be added as a {@link Property}.
+   * A default processing implementation that expects the value of {@link
+   * TextAnnotation#toString()} as the key of each feature vector to identify the {@link
+   * TextAnnotation annotations} to which the computed rank should be added as a {@link Property}.
+   *
+   * @param jcas to annotate
+   * @param keys of the ranked feature vectors
+   * @param scores of the ranked feature vectors, in the same order as the keys
    */
   protected
-  void process(JCas jcas, List<DataPoint> data) {
+  void process(JCas jcas, List<String> keys, double[] scores) {
     Map<String, String> ranks = new HashMap<String, String>();
-    for (DataPoint dp : data)
-      ranks.put(dp.getDescription().substring(2), String.format("%f", dp.getLabel()));
+    for (int i = 0; i < scores.length; i++)
+      ranks.put(keys.get(i), format(scores[i]));
     FSIterator<Annotation> it = getAnnotationIterator(jcas);
     while (it.hasNext()) {
       TextAnnotation ann = (TextAnnotation) it.next();
@@ -145,20 +146,20 @@ class RankedListAnnotator extends JCasAnnotator_ImplBase {
     );
   }
 
+  /**
+   * Extract the feature vectors to rank from the CAS.
+   *
+   * @param jcas to extract the features from
+   * @param keys to add the key identifying each feature vector to, in the order of the vectors
+   * @return the dense feature vectors, where feature <i>i</i> is found at index <i>i - 1</i>
+   */
   protected abstract
-  List<DataPoint> getDataList(JCas jcas, String qid);
+  double[][] getFeatures(JCas jcas, List<String> keys);
 
-  protected
-  DataPoint makeDataPoint(String qid, String key, double... features) {
-    StringBuilder rawData = new StringBuilder();
-    rawData.append("0 qid:");
-    rawData.append(qid);
-    rawData.append(" ");
-    for (int i = 0; i < features.length; i++)
-      rawData.append(String.format("%d:%.8f ", i + 1, features[i]));
-    rawData.append("# ");
-    rawData.append(key);
-    return new DataPoint(rawData.toString());
+  /** Format a score as a rank {@link Property} value. */
+  protected static
+  String format(double score) {
+    return String.format("%f", (float) score);
   }
 
   @Override
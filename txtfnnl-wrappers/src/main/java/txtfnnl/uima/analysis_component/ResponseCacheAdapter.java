@@ -0,0 +1,26 @@
+package txtfnnl.uima.analysis_component;
+
+import txtfnnl.subprocess.ReadlineRuntimePool;
+import txtfnnl.uima.resource.ResponseCacheResource;
+
+/**
+ * Use a {@link ResponseCacheResource} as the {@link ReadlineRuntimePool.Cache cache} of a
+ * {@link ReadlineRuntimePool}.
+ * 
+ * @author Florian Leitner
+ */
+class ResponseCacheAdapter implements ReadlineRuntimePool.Cache {
+  private final ResponseCacheResource resource;
+
+  ResponseCacheAdapter(ResponseCacheResource resource) {
+    this.resource = resource;
+  }
+
+  public String get(String namespace, String input) {
+    return resource.get(namespace, input);
+  }
+
+  public void put(String namespace, String input, String response) {
+    resource.put(namespace, input, response);
+  }
+}
@@ -1,11 +1,11 @@
 package txtfnnl.uima.analysis_component.opennlp;
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import opennlp.tools.sentdetect.SentenceDetectorME;
 import opennlp.tools.util.Span;
 import opennlp.uima.sentdetect.SentenceModelResource;
-import opennlp.uima.sentdetect.SentenceModelResourceImpl;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.AnalysisComponent;
@@ -30,10 +30,14 @@ import txtfnnl.uima.tcas.SentenceAnnotation;
  * <p>
  * This AE segments input text into {@link SentenceAnnotation SentenceAnnotations}, setting each
  * sentences probability on the confidence feature. The detector requires a
- * {@link #RESOURCE_SENTENCE_MODEL}, which can be the default model found in the jar.
+ * {@link #RESOURCE_SENTENCE_MODEL}, which can be the default model found in the jar. Models set
+ * via {@link Builder#setModelResourceUrl(String)} are {@link SharedModels shared} by all instances
+ * of this AE, while the (thread-unsafe) detector is created per thread.
  * <p>
  * Detected line separators are Windows (CR-LF) and Unix line-breaks (LF only). Successive line
- * separators may be separated by spaces, including U+00A0 (NBS).
+ * separators may be separated by spaces, including U+00A0 (NBS). For input that already has one
+ * sentence per line, the {@link Split#LINE line} mode annotates each non-blank line as a sentence
+ * (with a confidence of 1.0), without using the sentence detector at all.
  * 
  * @author Florian Leitner
  */
@@ -47,25 +51,29 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
   /** Regular expression to detect multiple/successive line-breaks. */
   private static final Pattern SUCCESSIVE_LINEBREAKS = Pattern
       .compile("(?:\\r?\\n[ \\u00a0\\t\\v\\f]*){2,}");
+  /** Regular expression to detect single line-breaks. */
+  private static final Pattern SINGLE_LINEBREAKS = Pattern.compile("\\s*?\\r?\\n\\s*");
 
   public enum Split {
-    SINGLE, SUCCESSIVE, DEFAULT;
+    SINGLE, SUCCESSIVE, LINE, DEFAULT;
     public static Split parse(String s) {
       if (s == null) return DEFAULT;
       s = s.toLowerCase();
       if ("successive".equals(s)) return SUCCESSIVE;
       else if ("single".equals(s)) return SINGLE;
+      else if ("line".equals(s)) return LINE;
       else return DEFAULT;
     }
   };
 
   /**
-   * Optional parameter to split on newline characters; can be "single" or "successive", and
-   * defaults to <code>null</code> or any other string.
+   * Optional parameter to split on newline characters; can be "single", "successive", or "line",
+   * and defaults to <code>null</code> or any other string.
    * <p>
    * The parameter indicates if sentences should never be split with respect to newlines (
    * <code>null</code>, any other string), always ("single"), or only after successive newlines
-   * ("successive"). Note that successive newlines may contain spaces in between line-breaks.
+   * ("successive"). Note that successive newlines may contain spaces in between line-breaks. The
+   * "line" mode makes each non-blank line a sentence, without running the sentence detector.
    */
   public static final String PARAM_SPLIT_ON_NEWLINE = "SplitOnNewline";
   @ConfigurationParameter(name = PARAM_SPLIT_ON_NEWLINE)
@@ -75,8 +83,8 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
   public static final String RESOURCE_SENTENCE_MODEL = "SentenceModelResource";
   @ExternalResource(key = RESOURCE_SENTENCE_MODEL)
   private SentenceModelResource sentenceModel;
-  /** The sentence detector that will be instantiated using the model. */
-  private SentenceDetectorME sentenceDetector;
+  /** The (per-thread) sentence detector that will be instantiated using the model. */
+  private ThreadLocal<SentenceDetectorME> sentenceDetector;
   /** The default sentence model file, as found in the jar. */
   static final String DEFAULT_SENTENCE_MODEL_URL = "file:txtfnnl/opennlp/en_sent.bin";
   private Logger logger;
@@ -98,7 +106,7 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
 
     public Builder setModelResourceUrl(String sentenceModelResourceUrl) {
       setModelResource(ExternalResourceFactory.createExternalResourceDescription(
-          SentenceModelResourceImpl.class, sentenceModelResourceUrl));
+          SharedModels.SentenceModelResource.class, sentenceModelResourceUrl));
       return this;
     }
 
@@ -112,6 +120,11 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
       return this;
     }
 
+    public Builder splitLineByLine() {
+      setOptionalParameter(PARAM_SPLIT_ON_NEWLINE, Split.LINE.toString());
+      return this;
+    }
+
     public Builder splitIgnoringNewlines() {
       setOptionalParameter(PARAM_SPLIT_ON_NEWLINE, Split.DEFAULT.toString());
       return this;
@@ -130,7 +143,12 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
-    sentenceDetector = new SentenceDetectorME(sentenceModel.getModel());
+    sentenceDetector = new ThreadLocal<SentenceDetectorME>() {
+      @Override
+      protected SentenceDetectorME initialValue() {
+        return new SentenceDetectorME(sentenceModel.getModel());
+      }
+    };
     splitting = Split.parse(splitOnNewline);
     switch (splitting) {
     case SINGLE:
@@ -139,6 +157,9 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
     case SUCCESSIVE:
       logger.log(Level.CONFIG, "splitting on successive newlines");
       break;
+    case LINE:
+      logger.log(Level.CONFIG, "annotating each line as a sentence");
+      break;
     default:
       logger.log(Level.CONFIG, "no newline-based splitting");
     }
@@ -149,37 +170,70 @@ public final class SentenceAnnotator extends JCasAnnotator_ImplBase {
    */
   @Override
   public void process(JCas jcas) throws AnalysisEngineProcessException {
-    String[] chunks;
     final String text = jcas.getDocumentText();
+    Matcher linebreaks;
     switch (splitting) {
+    case LINE:
+      annotateLines(jcas, text);
+      return;
     case SUCCESSIVE:
-      chunks = SUCCESSIVE_LINEBREAKS.split(text);
+      linebreaks = SUCCESSIVE_LINEBREAKS.matcher(text);
       break;
     case SINGLE:
-      chunks = text.split("\\s*?\\r?\\n\\s*");
+      linebreaks = SINGLE_LINEBREAKS.matcher(text);
       break;
     default:
-      chunks = new String[] { text };
+      linebreaks = null;
     }
+    final SentenceDetectorME sentenceDetector = this.sentenceDetector.get();
     int offset = 0;
-    for (final String cnk : chunks) {
-      if (cnk.length() == 0) {
-        continue;
-      }
-      offset = text.indexOf(cnk, offset);
-      final Span[] spans = sentenceDetector.sentPosDetect(cnk);
-      final double[] probs = sentenceDetector.getSentenceProbabilities();
-      for (int i = 0; i < spans.length; i++) {
-        final SentenceAnnotation sentence = new SentenceAnnotation(jcas, offset +
-            spans[i].getStart(), offset + spans[i].getEnd());
-        sentence.setConfidence(probs[i]);
-        sentence.setAnnotator(URI);
-        sentence.setIdentifier(IDENTIFIER);
-        sentence.setNamespace(NAMESPACE);
-        sentence.addToIndexes();
+    if (linebreaks != null) {
+      while (linebreaks.find()) {
+        detectSentences(jcas, sentenceDetector, text, offset, linebreaks.start());
+        offset = linebreaks.end();
       }
-      offset += cnk.length();
     }
+    detectSentences(jcas, sentenceDetector, text, offset, text.length());
+  }
+
+  /** Detect and annotate the sentences in the chunk of text between start and end. */
+  private static void detectSentences(JCas jcas, SentenceDetectorME sentenceDetector, String text,
+      int start, int end) {
+    if (start == end) return;
+    final Span[] spans = sentenceDetector.sentPosDetect(text.substring(start, end));
+    final double[] probs = sentenceDetector.getSentenceProbabilities();
+    for (int i = 0; i < spans.length; i++)
+      annotate(jcas, start + spans[i].getStart(), start + spans[i].getEnd(), probs[i]);
+  }
+
+  /** Annotate each non-blank line (without its surrounding white-spaces) as a sentence. */
+  private static void annotateLines(JCas jcas, String text) {
+    final int length = text.length();
+    int start = 0;
+    while (start < length) {
+      int end = text.indexOf('\n', start);
+      if (end == -1) end = length;
+      final int next = end + 1;
+      while (start < end && isSpace(text.charAt(start)))
+        start++;
+      while (end > start && isSpace(text.charAt(end - 1)))
+        end--;
+      if (start < end) annotate(jcas, start, end, 1.0);
+      start = next;
+    }
+  }
+
+  private static boolean isSpace(char c) {
+    return Character.isWhitespace(c) || c == '\u00a0';
+  }
+
+  private static void annotate(JCas jcas, int begin, int end, double confidence) {
+    final SentenceAnnotation sentence = new SentenceAnnotation(jcas, begin, end);
+    sentence.setConfidence(confidence);
+    sentence.setAnnotator(URI);
+    sentence.setIdentifier(IDENTIFIER);
+    sentence.setNamespace(NAMESPACE);
+    sentence.addToIndexes();
   }
 
   @Override
@@ -0,0 +1,107 @@
+package txtfnnl.uima.analysis_component.opennlp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.uima.chunker.ChunkerModelResourceImpl;
+import opennlp.uima.postag.POSModelResourceImpl;
+import opennlp.uima.sentdetect.SentenceModelResourceImpl;
+import opennlp.uima.tokenize.TokenizerModelResourceImpl;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+
+/**
+ * OpenNLP model resources that load each model only once per JVM.
+ * <p>
+ * The OpenNLP model resources (e.g., {@link TokenizerModelResourceImpl}) load a new copy of their
+ * model for every resource instance, and therefore, typically, for every annotator replica. The
+ * resources defined here instead share a model with all other resources of the same type and URI.
+ * As the models themselves are thread-safe (only the "ME" classes using them are not), the same
+ * model can be used by any number of annotators in parallel.
+ *
+ * @author Florian Leitner
+ */
+public final class SharedModels {
+  /** The loaded models, by model type and resource URI. */
+  private static final Map<String, Object> MODELS = new HashMap<String, Object>();
+
+  private SharedModels() {
+    throw new AssertionError("n/a");
+  }
+
+  /** A shared {@link TokenizerModel} resource. */
+  public static class TokenizerModelResource extends TokenizerModelResourceImpl {
+    @Override
+    public void load(DataResource data) throws ResourceInitializationException {
+      final String key = key(TokenizerModel.class, data);
+      synchronized (MODELS) {
+        model = (TokenizerModel) MODELS.get(key);
+        if (model == null) {
+          super.load(data);
+          MODELS.put(key, model);
+        }
+      }
+    }
+  }
+
+  /** A shared {@link POSModel} resource. */
+  public static class POSModelResource extends POSModelResourceImpl {
+    @Override
+    public void load(DataResource data) throws ResourceInitializationException {
+      final String key = key(POSModel.class, data);
+      synchronized (MODELS) {
+        model = (POSModel) MODELS.get(key);
+        if (model == null) {
+          super.load(data);
+          MODELS.put(key, model);
+        }
+      }
+    }
+  }
+
+  /** A shared {@link ChunkerModel} resource. */
+  public static class ChunkerModelResource extends ChunkerModelResourceImpl {
+    @Override
+    public void load(DataResource data) throws ResourceInitializationException {
+      final String key = key(ChunkerModel.class, data);
+      synchronized (MODELS) {
+        model = (ChunkerModel) MODELS.get(key);
+        if (model == null) {
+          super.load(data);
+          MODELS.put(key, model);
+        }
+      }
+    }
+  }
+
+  /** A shared {@link SentenceModel} resource. */
+  public static class SentenceModelResource extends SentenceModelResourceImpl {
+    @Override
+    public void load(DataResource data) throws ResourceInitializationException {
+      final String key = key(SentenceModel.class, data);
+      synchronized (MODELS) {
+        model = (SentenceModel) MODELS.get(key);
+        if (model == null) {
+          super.load(data);
+          MODELS.put(key, model);
+        }
+      }
+    }
+  }
+
+  /** Return the number of models loaded so far. */
+  public static int size() {
+    synchronized (MODELS) {
+      return MODELS.size();
+    }
+  }
+
+  private static String key(Class<?> type, DataResource data) {
+    return type.getName() + " " + data.getUri();
+  }
+}
@@ -5,11 +5,8 @@ import opennlp.tools.postag.POSTaggerME;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.util.Span;
 import opennlp.uima.chunker.ChunkerModelResource;
-import opennlp.uima.chunker.ChunkerModelResourceImpl;
 import opennlp.uima.postag.POSModelResource;
-import opennlp.uima.postag.POSModelResourceImpl;
 import opennlp.uima.tokenize.TokenizerModelResource;
-import opennlp.uima.tokenize.TokenizerModelResourceImpl;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_component.AnalysisComponent;
@@ -39,6 +36,11 @@ import txtfnnl.uima.tcas.TokenAnnotation;
  * annotation's confidence feature. By default, the AE uses the English Maximum Entropy models of
  * OpenNLP, otherwise a {@link #RESOURCE_TOKEN_MODEL}, a {@link #RESOURCE_POS_MODEL}, and a
  * {@link #RESOURCE_CHUNK_MODEL} have to be provided.
+ * <p>
+ * The default models are {@link SharedModels shared} by all instances of this AE, while the
+ * (thread-unsafe) OpenNLP tokenizer, tagger, and chunker instances are created per thread. The
+ * tagger caches the feature contexts it generates for each sentence, so that the contexts are not
+ * re-generated for every sequence in the beam.
  * 
  * @author Florian Leitner
  */
@@ -67,23 +69,25 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
   static final String DEFAULT_POS_MODEL_FILE = "file:txtfnnl/opennlp/en_pos_maxent.bin";
   /** The default chunker model file in the jar. */
   static final String DEFAULT_CHUNK_MODEL_FILE = "file:txtfnnl/opennlp/en_chunker.bin";
+  /** The number of PoS tagger contexts to cache per sentence. */
+  static final int CONTEXT_CACHE_SIZE = 1024;
   protected Logger logger;
-  private TokenizerME tokenizer;
-  private POSTaggerME posTagger;
-  private ChunkerME chunker;
+  private ThreadLocal<TokenizerME> tokenizer;
+  private ThreadLocal<POSTaggerME> posTagger;
+  private ThreadLocal<ChunkerME> chunker;
 
   public static class Builder extends AnalysisComponentBuilder {
     protected Builder(Class<? extends AnalysisComponent> klass) {
       super(klass);
       setRequiredParameter(RESOURCE_TOKEN_MODEL,
           ExternalResourceFactory.createExternalResourceDescription(
-              TokenizerModelResourceImpl.class, DEFAULT_TOKEN_MODEL_FILE));
+              SharedModels.TokenizerModelResource.class, DEFAULT_TOKEN_MODEL_FILE));
       setRequiredParameter(RESOURCE_POS_MODEL,
           ExternalResourceFactory.createExternalResourceDescription(
-              POSModelResourceImpl.class, DEFAULT_POS_MODEL_FILE));
+              SharedModels.POSModelResource.class, DEFAULT_POS_MODEL_FILE));
       setRequiredParameter(RESOURCE_CHUNK_MODEL,
           ExternalResourceFactory.createExternalResourceDescription(
-              ChunkerModelResourceImpl.class, DEFAULT_CHUNK_MODEL_FILE));
+              SharedModels.ChunkerModelResource.class, DEFAULT_CHUNK_MODEL_FILE));
     }
 
     public Builder() {
@@ -115,9 +119,25 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
   public void initialize(UimaContext ctx) throws ResourceInitializationException {
     super.initialize(ctx);
     logger = ctx.getLogger();
-    tokenizer = new TokenizerME(tokenizerModel.getModel());
-    posTagger = new POSTaggerME(posModel.getModel(), POSTaggerME.DEFAULT_BEAM_SIZE, 0);
-    chunker = new ChunkerME(chunkerModel.getModel(), ChunkerME.DEFAULT_BEAM_SIZE);
+    tokenizer = new ThreadLocal<TokenizerME>() {
+      @Override
+      protected TokenizerME initialValue() {
+        return new TokenizerME(tokenizerModel.getModel());
+      }
+    };
+    posTagger = new ThreadLocal<POSTaggerME>() {
+      @Override
+      protected POSTaggerME initialValue() {
+        return new POSTaggerME(posModel.getModel(), POSTaggerME.DEFAULT_BEAM_SIZE,
+            CONTEXT_CACHE_SIZE);
+      }
+    };
+    chunker = new ThreadLocal<ChunkerME>() {
+      @Override
+      protected ChunkerME initialValue() {
+        return new ChunkerME(chunkerModel.getModel(), ChunkerME.DEFAULT_BEAM_SIZE);
+      }
+    };
     logger.log(Level.CONFIG, "initialized OpenNLP tagger");
   }
 
@@ -128,6 +148,9 @@ public class TokenAnnotator extends JCasAnnotator_ImplBase {
   @Override
   public void process(JCas jcas) throws AnalysisEngineProcessException {
     final FSIterator<Annotation> sentenceIt = SentenceAnnotation.getIterator(jcas);
+    final TokenizerME tokenizer = this.tokenizer.get();
+    final POSTaggerME posTagger = this.posTagger.get();
+    final ChunkerME chunker = this.chunker.get();
     int count = 0;
     while (sentenceIt.hasNext()) {
       final Annotation sentence = sentenceIt.next();
@@ -0,0 +1,208 @@
+package txtfnnl.uima.collection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Counts (pattern) strings in a size-bounded hash table. If the table is full, its content is
+ * spilled to disk as a run sorted by the strings and the table is cleared. When writing the
+ * counts, the runs (and the remaining table) are merged with a k-way merge, so the output is a
+ * single sorted list of distinct strings and their total counts - the same as
+ * <code>sort | uniq -c</code> on the strings, but without ever writing or sorting all of them.
+ * <p>
+ * The runs are temporary files (<code>patterns-*.run</code>) that are deleted after merging them.
+ * This class is not thread-safe.
+ *
+ * @author Florian Leitner
+ */
+class PatternCounter {
+  /** The size of the run file buffers (in bytes). */
+  static final int BUFFER_SIZE = 1 << 16;
+  private final File directory;
+  private final int maxPatterns;
+  private final Map<String, int[]> counts;
+  private final List<File> runs = new ArrayList<File>();
+
+  /**
+   * Create a new counter.
+   *
+   * @param directory to spill the runs to (or <code>null</code> for the system's temporary
+   *        directory)
+   * @param maxPatterns the maximum number of distinct patterns to count in memory
+   */
+  PatternCounter(File directory, int maxPatterns) {
+    if (maxPatterns < 1) throw new IllegalArgumentException("maxPatterns < 1");
+    this.directory = directory;
+    this.maxPatterns = maxPatterns;
+    counts = new HashMap<String, int[]>(Math.min(maxPatterns, 1 << 16) * 4 / 3 + 1);
+  }
+
+  /**
+   * Count a pattern, spilling the current counts if the pattern is new and the table is full.
+   *
+   * @throws IOException if the counts cannot be spilled
+   */
+  void add(String pattern) throws IOException {
+    final int[] count = counts.get(pattern);
+    if (count != null) {
+      count[0]++;
+    } else {
+      if (counts.size() >= maxPatterns) spill();
+      counts.put(pattern, new int[] { 1 });
+    }
+  }
+
+  /** Return the number of runs spilled to disk. */
+  int runs() {
+    return runs.size();
+  }
+
+  /**
+   * Write all distinct patterns in sorted order as tab-separated count and pattern lines to the
+   * output(s) and reset the counter.
+   *
+   * @param outputs to write the counts to
+   * @return the number of distinct patterns
+   * @throws IOException if the runs cannot be read or the output cannot be written
+   */
+  long write(Writer... outputs) throws IOException {
+    long distinct = 0;
+    try {
+      if (runs.isEmpty()) {
+        for (final String pattern : sortedPatterns()) {
+          write(outputs, counts.get(pattern)[0], pattern);
+          distinct++;
+        }
+      } else {
+        if (!counts.isEmpty()) spill();
+        distinct = merge(outputs);
+      }
+    } finally {
+      close();
+    }
+    return distinct;
+  }
+
+  /** Drop all counts and delete any runs. */
+  void close() {
+    counts.clear();
+    for (final File run : runs)
+      run.delete();
+    runs.clear();
+  }
+
+  private String[] sortedPatterns() {
+    final String[] patterns = counts.keySet().toArray(new String[counts.size()]);
+    Arrays.sort(patterns);
+    return patterns;
+  }
+
+  /** Write the counts to a new run sorted by the patterns and clear the table. */
+  private void spill() throws IOException {
+    final File file = File.createTempFile("patterns-", ".run", directory);
+    file.deleteOnExit();
+    runs.add(file);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file), BUFFER_SIZE));
+    try {
+      for (final String pattern : sortedPatterns()) {
+        final byte[] bytes = pattern.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeLong(counts.get(pattern)[0]);
+      }
+    } finally {
+      out.close();
+    }
+    counts.clear();
+  }
+
+  /** Merge all runs, summing up the counts of equal patterns. */
+  private long merge(Writer[] outputs) throws IOException {
+    final PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size());
+    long distinct = 0;
+    try {
+      for (final File file : runs) {
+        final Run run = new Run(file);
+        if (run.next()) queue.add(run);
+        else run.close();
+      }
+      String pattern = null;
+      long count = 0;
+      while (!queue.isEmpty()) {
+        final Run run = queue.poll();
+        if (pattern != null && !pattern.equals(run.pattern)) {
+          write(outputs, count, pattern);
+          distinct++;
+          count = 0;
+        }
+        pattern = run.pattern;
+        count += run.count;
+        if (run.next()) queue.add(run);
+        else run.close();
+      }
+      if (pattern != null) {
+        write(outputs, count, pattern);
+        distinct++;
+      }
+    } finally {
+      for (final Run run : queue)
+        run.close();
+    }
+    return distinct;
+  }
+
+  private static void write(Writer[] outputs, long count, String pattern) throws IOException {
+    final String line = Long.toString(count) + '\t' + pattern + '\n';
+    for (final Writer out : outputs)
+      out.write(line);
+  }
+
+  /** A reader for the current entry of a run. */
+  private static class Run implements Comparable<Run> {
+    private final DataInputStream in;
+    String pattern;
+    long count;
+
+    Run(File file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    }
+
+    /** Read the next entry; return <code>false</code> if the run is exhausted. */
+    boolean next() throws IOException {
+      final int length;
+      try {
+        length = in.readInt();
+      } catch (final EOFException e) {
+        return false;
+      }
+      final byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      pattern = new String(bytes, "UTF-8");
+      count = in.readLong();
+      return true;
+    }
+
+    void close() throws IOException {
+      in.close();
+    }
+
+    public int compareTo(Run o) {
+      return pattern.compareTo(o.pattern);
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package txtfnnl.uima.collection;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -16,6 +19,7 @@ import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.uima.UIMAException;
+import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
@@ -66,6 +70,44 @@ public final class RelationshipPatternLineWriter extends TextWriter {
   public static final String PARAM_MAX_PATTERN_LENGTH = "MaxPatternLength";
   @ConfigurationParameter(name = PARAM_MAX_PATTERN_LENGTH, defaultValue = "0")
   private int maxPatternLength;
+  /**
+   * Count the extracted patterns instead of writing each pattern as a line, and write a single,
+   * sorted list of tab-separated count and pattern lines when the collection is complete, to a
+   * <code>patterns.txt</code> file in the output directory and/or STDOUT. The value is the
+   * maximum number of distinct patterns counted in memory; if exceeded, the counts are spilled to
+   * sorted runs on disk (in the output directory, if any) and merged at the end. If unset (zero),
+   * the patterns are written as lines.
+   */
+  public static final String PARAM_MAX_COUNTED_PATTERNS = "MaxCountedPatterns";
+  @ConfigurationParameter(name = PARAM_MAX_COUNTED_PATTERNS, defaultValue = "0")
+  private int maxCountedPatterns;
+  /**
+   * Define the maximum number of constituent arrangements, entity permutations (per arrangement),
+   * and patterns extracted for a single relationship sentence. Once exceeded, the extraction for
+   * that sentence is truncated, but the pattern of the whole sentence is always extracted. If unset
+   * (zero), the number is not limited.
+   */
+  public static final String PARAM_MAX_SENTENCE_PATTERNS = "MaxSentencePatterns";
+  @ConfigurationParameter(name = PARAM_MAX_SENTENCE_PATTERNS, defaultValue = "0")
+  private int maxSentencePatterns;
+  /**
+   * Define the maximum time (in milliseconds) spent on extracting the patterns of a single
+   * relationship sentence. Once exceeded, the extraction for that sentence is truncated. If unset
+   * (zero), the time is not limited.
+   */
+  public static final String PARAM_MAX_SENTENCE_MILLIS = "MaxSentenceMillis";
+  @ConfigurationParameter(name = PARAM_MAX_SENTENCE_MILLIS, defaultValue = "0")
+  private int maxSentenceMillis;
+  /** The name of the file the aggregated pattern counts are written to. */
+  static final String COUNTS_FILE = "patterns";
+  private PatternCounter patternCounter;
+  /** The number of sentences where the pattern extraction was truncated. */
+  private int truncatedSentences;
+  /**
+   * The number of characters in the document text up to each offset that are never removed from
+   * a pattern (or <code>null</code> if the pattern length is not limited).
+   */
+  int[] significantChars;
   static final Pattern REGEX_SPACES = Pattern.compile("[ \\t\\v\\f]+");
   static final Pattern REGEX_LINEBREAK_SPACE = Pattern.compile("(\\r?\\n) ");
   static final Pattern REGEX_SINGLE_LINEBREAK = Pattern.compile("(?<!\\r?\\n)\\r?\\n(?!\\r?\\n)");
@@ -143,10 +185,35 @@ public final class RelationshipPatternLineWriter extends TextWriter {
   public static AnalysisEngineDescription configure(final String relationshipNamespace,
       final File outputDirectory, final String encoding, final boolean printToStdout,
       final boolean overwriteFiles, final int maxPatternLength) throws UIMAException, IOException {
+    return RelationshipPatternLineWriter.configure(relationshipNamespace, outputDirectory,
+        encoding, printToStdout, overwriteFiles, maxPatternLength, 0);
+  }
+
+  /**
+   * Configure an CAS consumer descriptor for a pipeline that (optionally) aggregates the pattern
+   * counts (see {@link #PARAM_MAX_COUNTED_PATTERNS}).
+   *
+   * @param relationshipNamespace the namespace of the annotated relationships
+   * @param outputDirectory path to the output directory (or null)
+   * @param encoding encoding to use for writing (or null)
+   * @param printToStdout whether to print to STDOUT or not
+   * @param overwriteFiles whether to overwrite existing files or not
+   * @param maxPatternLength the max length of patterns to extract (or 0 for unlimited)
+   * @param maxCountedPatterns the max number of distinct patterns counted in memory (or 0 to
+   *        write the patterns as lines)
+   * @return a configured AE description
+   * @throws IOException
+   * @throws UIMAException
+   */
+  public static AnalysisEngineDescription configure(final String relationshipNamespace,
+      final File outputDirectory, final String encoding, final boolean printToStdout,
+      final boolean overwriteFiles, final int maxPatternLength, final int maxCountedPatterns)
+      throws UIMAException, IOException {
     return AnalysisEngineFactory.createPrimitiveDescription(RelationshipPatternLineWriter.class,
         PARAM_RELATIONSHIP_NAMESPACE, relationshipNamespace, PARAM_OUTPUT_DIRECTORY,
         outputDirectory, PARAM_ENCODING, encoding, PARAM_PRINT_TO_STDOUT, printToStdout,
-        PARAM_OVERWRITE_FILES, overwriteFiles, PARAM_MAX_PATTERN_LENGTH, maxPatternLength);
+        PARAM_OVERWRITE_FILES, overwriteFiles, PARAM_MAX_PATTERN_LENGTH, maxPatternLength,
+        PARAM_MAX_COUNTED_PATTERNS, maxCountedPatterns);
   }
 
   /**
@@ -164,6 +231,76 @@ public final class RelationshipPatternLineWriter extends TextWriter {
         0);
   }
 
+  @Override
+  public void initialize(UimaContext ctx) throws ResourceInitializationException {
+    super.initialize(ctx);
+    if (maxCountedPatterns < 0)
+      throw new ResourceInitializationException(new IllegalArgumentException(
+          PARAM_MAX_COUNTED_PATTERNS + " < 0"));
+    if (maxCountedPatterns > 0) {
+      patternCounter = new PatternCounter(outputDirectory, maxCountedPatterns);
+      logger.log(Level.CONFIG, "counting up to {0} distinct patterns in memory",
+          maxCountedPatterns);
+    } else {
+      patternCounter = null;
+    }
+    truncatedSentences = 0;
+  }
+
+  /** Write the aggregated pattern counts (if counting). */
+  @Override
+  public void collectionProcessComplete() throws AnalysisEngineProcessException {
+    if (truncatedSentences > 0)
+      logger.log(Level.INFO, "truncated the pattern extraction of {0} sentences",
+          truncatedSentences);
+    if (patternCounter != null) {
+      try {
+        writeCounts();
+      } catch (final IOException e) {
+        throw new AnalysisEngineProcessException(e);
+      }
+    }
+    super.collectionProcessComplete();
+  }
+
+  @Override
+  public void destroy() {
+    if (patternCounter != null) patternCounter.close();
+    super.destroy();
+  }
+
+  /** Merge and write the pattern counts to the counts file and/or STDOUT. */
+  private void writeCounts() throws IOException {
+    final List<Writer> outputs = new ArrayList<Writer>(2);
+    Writer file = null;
+    Writer stdout = null;
+    if (outputDirectory != null) {
+      File outputFile = new File(outputDirectory, COUNTS_FILE + ".txt");
+      if (!overwriteFiles) {
+        int idx = 2;
+        while (outputFile.exists())
+          outputFile = new File(outputDirectory, COUNTS_FILE + "." + idx++ + ".txt");
+      }
+      logger.log(Level.INFO, "writing ''{0}''", outputFile);
+      file = new BufferedWriter(new OutputStreamWriter(openOutputStream(outputFile), encoding),
+          BUFFER_SIZE);
+      outputs.add(file);
+    }
+    if (printToStdout) {
+      stdout = new BufferedWriter(new OutputStreamWriter(System.out, encoding), BUFFER_SIZE);
+      outputs.add(stdout);
+    }
+    final int runs = patternCounter.runs();
+    try {
+      final long distinct = patternCounter.write(outputs.toArray(new Writer[outputs.size()]));
+      logger.log(Level.INFO, "counted {0} distinct patterns (merged {1} spilled runs)",
+          new Object[] { distinct, runs });
+    } finally {
+      if (file != null) file.close();
+      if (stdout != null) stdout.flush();
+    }
+  }
+
   /**
    * For all annotated relationship sentences in the text view of a CAS, extract patterns
    * expressing the syntactic relationships between the annotated entities using the annotated
@@ -175,7 +312,7 @@ public final class RelationshipPatternLineWriter extends TextWriter {
     String documentId;
     try {
       textJCas = cas.getJCas();
-      setStream(textJCas);
+      if (patternCounter == null) setStream(textJCas);
       documentId = new File(new URI(textJCas.getSofaDataURI()).getPath()).getName();
     } catch (final CASException e) {
       throw new AnalysisEngineProcessException(e);
@@ -190,6 +327,7 @@ public final class RelationshipPatternLineWriter extends TextWriter {
     final FSIterator<TOP> relationshipIt = KnownRelationshipAnnotator.getRelationshipIterator(
         textJCas, relationshipNamespace);
     final String text = textJCas.getDocumentText();
+    significantChars = maxPatternLength > 0 ? countSignificantChars(text) : null;
     final AnnotationIndex<Annotation> annIdx = textJCas.getAnnotationIndex(SyntaxAnnotation.type);
     final FSMatchConstraint constituentConstraint = RelationshipPatternLineWriter
         .makeConstituentSyntaxAnnotationConstraint(textJCas);
@@ -199,7 +337,7 @@ public final class RelationshipPatternLineWriter extends TextWriter {
           textJCas);
     }
     try {
-      unsetStream();
+      if (patternCounter == null) unsetStream();
     } catch (final IOException e) {
       throw new AnalysisEngineProcessException(e);
     }
@@ -222,22 +360,25 @@ public final class RelationshipPatternLineWriter extends TextWriter {
         annIdx.subiterator(sentAnn, true, true), constituentConstraint));
     final FSIterator<Annotation> constituentIt = jcas.createFilteredIterator(
         annIdx.subiterator(sentAnn, true, true), constituentConstraint);
-    final List<List<Annotation>> constituentCombinations = listConstituentArrangements(constituentIt);
+    final Budget budget = new Budget(maxSentencePatterns, maxSentenceMillis);
+    final List<List<Annotation>> constituentCombinations = listConstituentArrangements(
+        constituentIt, budget);
     if (logger != null) {
       logger.log(Level.FINER, "processing sentence '" + sentAnn.getCoveredText() + "'");
     }
     for (final TextAnnotation[] entities : listSeparateEntities(relAnn.getTargets())) {
       final Set<String> patterns = new HashSet<String>();
       final LinkedList<Annotation> sentenceSpan = new LinkedList<Annotation>();
-      final List<TextAnnotation[]> entityPermutations = combine(findNPReplacements(entities,
-          nounPhrases));
+      final Iterable<TextAnnotation[]> entityPermutations = SetUtils.combinations(
+          findNPReplacements(entities, nounPhrases), new TextAnnotation[entities.length]);
       sentenceSpan.add(sentAnn);
-      patterns.add(extractPattern(entities, sentenceSpan));
-      patterns.addAll(extractNounPhraseSkippedPatterns(sentenceSpan, entityPermutations));
+      addPattern(patterns, entities, sentenceSpan, null);
+      addNounPhraseSkippedPatterns(patterns, sentenceSpan, entityPermutations, budget);
       for (final List<Annotation> spans : constituentCombinations) {
+        if (budget.isExhausted()) break;
         if (containsAllEntities(spans, entities)) {
-          patterns.add(extractPattern(entities, spans));
-          patterns.addAll(extractNounPhraseSkippedPatterns(spans, entityPermutations));
+          addPattern(patterns, entities, spans, budget);
+          addNounPhraseSkippedPatterns(patterns, spans, entityPermutations, budget);
         }
       }
       if (logger != null && logger.isLoggable(Level.FINER) && entities.length > 0) {
@@ -254,15 +395,140 @@ public final class RelationshipPatternLineWriter extends TextWriter {
       try {
         for (final String p : patterns) {
           if (maxPatternLength == 0 || p.length() <= maxPatternLength) {
-            write(p);
-            write("\n");
+            if (patternCounter != null) {
+              patternCounter.add(p);
+            } else {
+              write(p);
+              write("\n");
+            }
           }
         }
-        write("\n");
+        if (patternCounter == null) write("\n");
       } catch (final IOException e) {
         throw new AnalysisEngineProcessException(e);
       }
     }
+    if (budget.isTruncated()) {
+      truncatedSentences++;
+      if (logger != null)
+        logger.log(Level.FINE, "truncated the pattern extraction of sentence '" +
+            sentAnn.getCoveredText() + "'");
+    }
+  }
+
+  /** Return the number of sentences where the pattern extraction was truncated. */
+  int getTruncatedSentences() {
+    return truncatedSentences;
+  }
+
+  /**
+   * The extraction budget of a single sentence: a maximum number of arrangements, permutations
+   * (per pass), and patterns, and a deadline. Zero limits are unlimited. Cutting the arrangements
+   * or permutations short truncates the sentence, but only spending all patterns (or running out
+   * of time) exhausts the budget.
+   */
+  static final class Budget {
+    private final int maxPatterns;
+    private final long deadline;
+    private int spent = 0;
+    private boolean exhausted = false;
+    private boolean truncated = false;
+
+    Budget(int maxPatterns, long maxMillis) {
+      this.maxPatterns = maxPatterns;
+      deadline = maxMillis > 0 ? System.currentTimeMillis() + maxMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Check if the budget allows a number of arrangements (or permutations); If not, the sentence
+     * is truncated.
+     *
+     * @return <code>false</code> if no more arrangements (or permutations) should be made
+     */
+    boolean allows(int arrangements) {
+      if (maxPatterns > 0 && arrangements > maxPatterns || isLate()) {
+        truncated = true;
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Spend the budget on the extraction of a single pattern.
+     *
+     * @return <code>false</code> if the budget is exhausted
+     */
+    boolean spend() {
+      if (!exhausted && (maxPatterns > 0 && spent >= maxPatterns || isLate())) exhausted = true;
+      if (exhausted) return false;
+      spent++;
+      return true;
+    }
+
+    boolean isExhausted() {
+      return exhausted;
+    }
+
+    /** Return <code>true</code> if the arrangements or patterns were cut short. */
+    boolean isTruncated() {
+      return truncated || exhausted;
+    }
+
+    private boolean isLate() {
+      return deadline != Long.MAX_VALUE && System.currentTimeMillis() > deadline;
+    }
+  }
+
+  /**
+   * Extract the pattern for the entities in the spans and add it to the set, unless the budget is
+   * exhausted or the pattern is certainly longer than {@link #PARAM_MAX_PATTERN_LENGTH the maximum
+   * length}. Without a budget (<code>null</code>), the pattern is extracted regardless.
+   */
+  private void addPattern(Set<String> patterns, TextAnnotation[] entities,
+      List<Annotation> spans, Budget budget) throws AnalysisEngineProcessException {
+    if (maxPatternLength > 0 && significantChars != null &&
+        minPatternLength(entities, spans) > maxPatternLength) return;
+    if (budget == null || budget.spend()) patterns.add(extractPattern(entities, spans));
+  }
+
+  /**
+   * Return a lower bound for the length of the pattern of the entities in the spans: the
+   * characters of the spans outside the entities that {@link #clean(String) cleaning} never
+   * removes, plus the brackets of each entity. (Nested entities are subtracted repeatedly, which
+   * only lowers the bound.)
+   */
+  int minPatternLength(TextAnnotation[] entities, List<Annotation> spans) {
+    int length = 4 * entities.length;
+    for (final Annotation span : spans) {
+      final int begin = span.getBegin();
+      final int end = span.getEnd();
+      length += significantChars[end] - significantChars[begin];
+      for (final TextAnnotation e : entities)
+        length -= significantCharsBetween(e.getBegin(), e.getEnd(), begin, end);
+    }
+    return length;
+  }
+
+  /** Count the significant characters of the intersection of two ranges. */
+  private int significantCharsBetween(int begin, int end, int spanBegin, int spanEnd) {
+    begin = Math.max(begin, spanBegin);
+    end = Math.min(end, spanEnd);
+    return end > begin ? significantChars[end] - significantChars[begin] : 0;
+  }
+
+  /**
+   * Count the characters up to each offset of the text that {@link #clean(String) cleaning} a
+   * pattern never removes (i.e., all but white-spaces, dashes, commas, and dots).
+   */
+  static int[] countSignificantChars(String text) {
+    final int[] counts = new int[text.length() + 1];
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      counts[i + 1] = counts[i] +
+          (Character.isWhitespace(c) || Character.isSpaceChar(c) || c == '-' || c == ',' ||
+              c == '.' ? 0 : 1);
+    }
+    return counts;
   }
 
   /**
@@ -290,9 +556,23 @@ public final class RelationshipPatternLineWriter extends TextWriter {
    * @return all arrangements possible except for the entire sentence
    */
   List<List<Annotation>> listConstituentArrangements(FSIterator<Annotation> constituentIt) {
+    return listConstituentArrangements(constituentIt, new Budget(0, 0));
+  }
+
+  /**
+   * Create the distinct constituent arrangements (see
+   * {@link #listConstituentArrangements(FSIterator)}), but stop adding constituents once the
+   * number of arrangements exceeds the budget or its time is up.
+   * 
+   * @param constituentIt that iterates over all annotated constituents
+   * @param budget of the sentence
+   * @return the distinct arrangements possible except for the entire sentence
+   */
+  List<List<Annotation>> listConstituentArrangements(FSIterator<Annotation> constituentIt,
+      Budget budget) {
     final List<List<Annotation>> arrangements = new ArrayList<List<Annotation>>();
     SyntaxAnnotation ann;
-    while (constituentIt.hasNext()) {
+    while (constituentIt.hasNext() && budget.allows(arrangements.size())) {
       ann = (SyntaxAnnotation) constituentIt.next();
       if (isSentenceStarter(ann)) {
         for (int i = arrangements.size(); i-- > 0;) {
@@ -361,6 +641,19 @@ public final class RelationshipPatternLineWriter extends TextWriter {
         }
       }
     }
+    // remove duplicate arrangements (covering the same spans)
+    final Set<String> distinct = new HashSet<String>();
+    final Iterator<List<Annotation>> it = arrangements.iterator();
+    while (it.hasNext()) {
+      final StringBuilder key = new StringBuilder();
+      for (final Annotation a : it.next()) {
+        key.append(a.getBegin());
+        key.append(':');
+        key.append(a.getEnd());
+        key.append(' ');
+      }
+      if (!distinct.add(key.toString())) it.remove();
+    }
     return arrangements;
   }
 
@@ -430,14 +723,15 @@ public final class RelationshipPatternLineWriter extends TextWriter {
    * @param nounPhrases
    * @return all possible replacement spans for each entity
    */
-  List<Set<Annotation>> findNPReplacements(TextAnnotation[] entities,
+  List<Set<TextAnnotation>> findNPReplacements(TextAnnotation[] entities,
       LinkedList<Annotation> nounPhrases) {
-    final List<Set<Annotation>> replacements = new ArrayList<Set<Annotation>>(entities.length);
+    final List<Set<TextAnnotation>> replacements = new ArrayList<Set<TextAnnotation>>(
+        entities.length);
     int eb, ee;
     // collect all possible NP replacements for the entities plus the
     // entity itself
     for (final TextAnnotation e : entities) {
-      final Set<Annotation> inner = new HashSet<Annotation>();
+      final Set<TextAnnotation> inner = new HashSet<TextAnnotation>();
       inner.add(e);
       eb = e.getBegin();
       ee = e.getEnd();
@@ -552,27 +846,29 @@ public final class RelationshipPatternLineWriter extends TextWriter {
   }
 
   /**
-   * Extract a set of patterns from the annotations that condenses any NP that contain an entity to
-   * make the NP represent that entity only.
+   * Add the patterns to the set that condense any NP that contain an entity to make the NP
+   * represent that entity only. If the budget does not allow iterating over all permutations, the
+   * sentence is truncated.
    * 
-   * @param entities
+   * @param patterns to add to
    * @param spans
-   * @param nounPhrases
-   * @return a set of patterns that condense one or more of the NPs containing the entities
+   * @param permutations of the entities with NP replacements (may reuse the same array)
+   * @param budget of the sentence
    * @throws AnalysisEngineProcessException
    */
-  Set<String> extractNounPhraseSkippedPatterns(List<Annotation> spans,
-      List<TextAnnotation[]> permutations) throws AnalysisEngineProcessException {
-    final Set<String> patterns = new HashSet<String>();
+  void addNounPhraseSkippedPatterns(Set<String> patterns, List<Annotation> spans,
+      Iterable<TextAnnotation[]> permutations, Budget budget)
+      throws AnalysisEngineProcessException {
     // iterate over all possible entity permutations
+    int count = 0;
     for (final TextAnnotation[] permutation : permutations) {
+      if (budget.isExhausted() || !budget.allows(++count)) break;
       // if the permuted entities arrays still is covered by the
       // spans, extract and add the pattern
       if (containsAllEntities(spans, permutation)) {
-        patterns.add(extractPattern(permutation, spans));
+        addPattern(patterns, permutation, spans, budget);
       }
     }
-    return patterns;
   }
 
   private boolean mayBeSkipped(SyntaxAnnotation ann) {
@@ -637,22 +933,6 @@ public final class RelationshipPatternLineWriter extends TextWriter {
     if (clone.size() == 0) throw new AssertionError("empty clone");
   }
 
-  /**
-   * Create all possible combinations from a list of replacement sets at each possible position in
-   * the array using recursive calls of this method.
-   * 
-   * @param replacements that can be chosen, at each position
-   */
-  private List<TextAnnotation[]> combine(List<Set<Annotation>> replacements) {
-    final List<List<Annotation>> combinations = SetUtils.combinate(replacements);
-    final List<TextAnnotation[]> result = new ArrayList<TextAnnotation[]>(combinations.size());
-    final int len = replacements.size();
-    for (final List<Annotation> list : combinations) {
-      result.add(list.toArray(new TextAnnotation[len]));
-    }
-    return result;
-  }
-
   /**
    * Group entities by namespaces plus identifiers.
    * 
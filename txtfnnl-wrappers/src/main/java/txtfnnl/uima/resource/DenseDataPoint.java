@@ -0,0 +1,37 @@
+package txtfnnl.uima.resource;
+
+import ciir.umass.edu.learning.DataPoint;
+
+/**
+ * A RankLib {@link DataPoint} that is set from a dense feature vector, rather than parsed from a
+ * SVMlight-style text line.
+ * <p>
+ * Feature <i>i</i> (RankLib feature IDs start at 1) is taken from index <i>i - 1</i> of the vector.
+ * A data point can be {@link #setFeatures(double[]) re-used} for several vectors.
+ */
+public
+class DenseDataPoint extends DataPoint {
+  /** The minimal text line RankLib's DataPoint constructor accepts. */
+  private static final String EMPTY = "0 qid:0";
+
+  public
+  DenseDataPoint(double[] features) {
+    super(EMPTY);
+    setFeatures(features);
+  }
+
+  /** Replace the feature vector of this data point. */
+  public
+  void setFeatures(double[] features) {
+    if (fVals.length != features.length + 1) {
+      fVals = new float[features.length + 1];
+      fVals[0] = INFINITY; // RankLib's value for unset features
+    }
+    for (int i = 0; i < features.length; i++)
+      fVals[i + 1] = (float) features[i];
+    synchronized (DataPoint.class) {
+      if (features.length > featureCount) featureCount = features.length;
+    }
+    resetCached();
+  }
+}
@@ -0,0 +1,104 @@
+package txtfnnl.uima.resource;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import martin.common.ArgParser;
+
+import org.apache.uima.resource.DataResource;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.SharedResourceObject;
+
+import txtfnnl.uima.SharedResourceBuilder;
+
+import uk.ac.man.entitytagger.EntityTagger;
+import uk.ac.man.entitytagger.Mention;
+import uk.ac.man.entitytagger.matching.Matcher;
+
+/**
+ * A shared Linnaeus {@link Matcher} resource, configured by a Linnaeus properties file.
+ * <p>
+ * Loading a matcher (i.e., its dictionary automaton) is expensive, both in time and memory.
+ * Therefore, matchers are kept in a JVM-wide registry, keyed by the (absolute) path of their
+ * properties file, and all resources with the same properties file share the same matcher, even
+ * across pipelines. Linnaeus' matchers do not modify their state while matching (Linnaeus itself
+ * uses one matcher for all its tagging threads), so {@link #match(String)} may be called
+ * concurrently by any number of annotators.
+ *
+ * @author Florian Leitner
+ */
+public class LinnaeusMatcherResource implements SharedResourceObject {
+  /** The loaded matchers, by the absolute path of their properties file. */
+  private static final Map<String, Matcher> MATCHERS = new HashMap<String, Matcher>();
+  private String configFilePath;
+  private Matcher matcher;
+
+  public static class Builder extends SharedResourceBuilder {
+    protected Builder(Class<? extends SharedResourceObject> klass, File configFile) {
+      super(klass, "file:" + configFile.getAbsolutePath());
+    }
+
+    Builder(File configFile) {
+      this(LinnaeusMatcherResource.class, configFile);
+    }
+  }
+
+  /**
+   * Configure a Linnaeus matcher resource.
+   *
+   * @param configFile the Linnaeus properties file to use
+   */
+  public static Builder configure(File configFile) {
+    return new Builder(configFile);
+  }
+
+  public void load(DataResource data) throws ResourceInitializationException {
+    final URI uri = data.getUri();
+    if (uri == null) throw new ResourceInitializationException(new IllegalArgumentException(
+        "no Linnaeus properties file URI"));
+    if ("file".equals(uri.getScheme())) configFilePath = uri.getSchemeSpecificPart();
+    else configFilePath = uri.getPath();
+    configFilePath = new File(configFilePath).getAbsolutePath();
+    matcher = getMatcher(configFilePath);
+  }
+
+  /** Fetch the matcher for the given properties file, loading it if necessary. */
+  private static Matcher getMatcher(String path) {
+    synchronized (MATCHERS) {
+      Matcher m = MATCHERS.get(path);
+      if (m == null) {
+        final ArgParser ap = new ArgParser(new String[] { "--properties", path });
+        final java.util.logging.Logger l = java.util.logging.Logger.getLogger("Linnaeus");
+        l.setLevel(java.util.logging.Level.WARNING);
+        m = EntityTagger.getMatcher(ap, l);
+        MATCHERS.put(path, m);
+      }
+      return m;
+    }
+  }
+
+  /** Return the number of matchers loaded in this JVM. */
+  public static int loaded() {
+    synchronized (MATCHERS) {
+      return MATCHERS.size();
+    }
+  }
+
+  /** Return the absolute path of the properties file this matcher was configured with. */
+  public String getConfigFilePath() {
+    return configFilePath;
+  }
+
+  /**
+   * Find all mentions in the text; This method is thread-safe.
+   *
+   * @param text to match
+   * @return the matched mentions
+   */
+  public List<Mention> match(String text) {
+    return matcher.match(text);
+  }
+}
@@ -90,4 +90,16 @@ class RankLibRanker implements RankerResource, ExternalResourceAware {
   List<RankList> rank(List<RankList> rll) {
     return ranker.rank(rll);
   }
+
+  public
+  double[] eval(double[][] features) {
+    double[] scores = new double[features.length];
+    if (features.length == 0) return scores;
+    DenseDataPoint dp = new DenseDataPoint(features[0]);
+    for (int i = 0; i < features.length; i++) {
+      if (i > 0) dp.setFeatures(features[i]);
+      scores[i] = ranker.eval(dp);
+    }
+    return scores;
+  }
 }
@@ -17,4 +17,14 @@ interface RankerResource extends SharedResourceObject {
 
   public
   List<RankList> rank(List<RankList> rll);
+
+  /**
+   * Score a batch of dense feature vectors, where feature <i>i</i> is found at index <i>i - 1</i>
+   * of each vector.
+   *
+   * @param features the batch of feature vectors
+   * @return the score for each vector
+   */
+  public
+  double[] eval(double[][] features);
 }
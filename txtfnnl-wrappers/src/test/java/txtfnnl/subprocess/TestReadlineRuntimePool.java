@@ -0,0 +1,222 @@
+package txtfnnl.subprocess;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.util.Logger;
+
+public class TestReadlineRuntimePool {
+  /** A runtime echoing its input lines, failing on lines starting with "poison". */
+  static class Echo extends ReadlineRuntime<String> {
+    Echo(Logger logger) throws IOException {
+      super("cat", logger);
+    }
+
+    @Override
+    protected String parseResponse() throws IOException {
+      final String line = readLine();
+      if (line == null || line.startsWith("poison")) throw new IOException("poisoned");
+      return line;
+    }
+  }
+
+  /** An in-memory response cache. */
+  static class MapCache implements ReadlineRuntimePool.Cache {
+    final Map<String, String> map = new HashMap<String, String>();
+
+    public String get(String namespace, String input) {
+      return map.get(namespace + ":" + input);
+    }
+
+    public void put(String namespace, String input, String response) {
+      map.put(namespace + ":" + input, response);
+    }
+  }
+
+  /** Cache echoed lines in upper-case, and skip lines starting with "skip". */
+  static final ReadlineRuntimePool.Codec<String> UPPER = new ReadlineRuntimePool.Codec<String>() {
+    public String encode(String response) {
+      return response.startsWith("skip") ? null : response.toUpperCase();
+    }
+
+    public String decode(String data) {
+      return data;
+    }
+  };
+
+  Logger logger;
+  int started;
+  ReadlineRuntimePool<String> pool;
+
+  @Before
+  public void setUp() {
+    logger = UIMAFramework.getLogger(TestReadlineRuntimePool.class);
+    started = 0;
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (pool != null) pool.stop();
+  }
+
+  ReadlineRuntimePool<String> makePool(int size) throws IOException {
+    return makePool(size, 1);
+  }
+
+  ReadlineRuntimePool<String> makePool(int size, int window) throws IOException {
+    return new ReadlineRuntimePool<String>(new ReadlineRuntimePool.Factory<String>() {
+      public ReadlineRuntime<String> newRuntime() throws IOException {
+        synchronized (TestReadlineRuntimePool.this) {
+          started++;
+        }
+        return new Echo(logger);
+      }
+    }, size, window, logger);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalSize() throws IOException {
+    makePool(0);
+  }
+
+  @Test
+  public void testProcess() throws IOException {
+    pool = makePool(1);
+    assertEquals(1, pool.size());
+    assertEquals("line", pool.process("line"));
+    assertEquals(1, started);
+  }
+
+  @Test
+  public void testProcessAllInOrder() throws IOException {
+    pool = makePool(4);
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 100; ++i)
+      lines.add("line " + i);
+    assertEquals(lines, pool.processAll(lines));
+    assertEquals(4, started);
+  }
+
+  @Test
+  public void testRestartFailedWorker() throws IOException {
+    pool = makePool(2);
+    final List<String> lines = new ArrayList<String>();
+    lines.add("first");
+    lines.add("poison");
+    lines.add("last");
+    final List<String> results = pool.processAll(lines);
+    assertEquals("first", results.get(0));
+    assertNull(results.get(1));
+    assertEquals("last", results.get(2));
+    assertEquals(3, started);
+  }
+
+  @Test(expected = IOException.class)
+  public void testProcessPropagatesFailure() throws IOException {
+    pool = makePool(1);
+    pool.process("poison");
+  }
+
+  @Test
+  public void testProcessBatch() throws IOException {
+    final Echo echo = new Echo(logger);
+    final List<String> lines = new ArrayList<String>();
+    final List<String> results = new ArrayList<String>();
+    for (int i = 0; i < 1000; ++i)
+      lines.add("line " + i);
+    try {
+      echo.processBatch(lines, 10, results);
+      echo.processBatch(lines.subList(0, 5), 10, results);
+    } finally {
+      echo.stop();
+    }
+    assertEquals(1005, results.size());
+    assertEquals(lines, results.subList(0, 1000));
+    assertEquals(lines.subList(0, 5), results.subList(1000, 1005));
+  }
+
+  @Test
+  public void testProcessAllBatches() throws IOException {
+    pool = makePool(3, 16);
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 100; ++i)
+      lines.add("line " + i);
+    assertEquals(lines, pool.processAll(lines));
+    assertEquals(3, started);
+  }
+
+  @Test
+  public void testRestartFailedBatchWorker() throws IOException {
+    pool = makePool(1, 8);
+    final List<String> lines = new ArrayList<String>();
+    for (int i = 0; i < 5; ++i)
+      lines.add("line " + i);
+    lines.set(2, "poison");
+    final List<String> results = pool.processAll(lines);
+    assertEquals(5, results.size());
+    assertNull(results.get(2));
+    assertEquals("line 1", results.get(1));
+    assertEquals("line 3", results.get(3));
+    assertEquals("line 4", results.get(4));
+    assertEquals(2, started);
+  }
+
+  @Test
+  public void testCache() throws IOException {
+    final MapCache cache = new MapCache();
+    pool = makePool(2);
+    pool.setCache(cache, "echo", UPPER);
+    final List<String> lines = new ArrayList<String>();
+    lines.add("one");
+    lines.add("poison");
+    lines.add("skip");
+    List<String> results = pool.processAll(lines);
+    assertEquals("one", results.get(0));
+    assertNull(results.get(1));
+    assertEquals("skip", results.get(2));
+    assertEquals(1, cache.map.size());
+    assertEquals("ONE", cache.get("echo", "one"));
+    lines.add(1, "two");
+    results = pool.processAll(lines);
+    assertEquals("ONE", results.get(0));
+    assertEquals("two", results.get(1));
+    assertNull(results.get(2));
+    assertEquals("skip", results.get(3));
+    assertEquals("TWO", cache.get("echo", "two"));
+    assertEquals(2, cache.map.size());
+  }
+
+  @Test
+  public void testFingerprint() throws IOException {
+    final File model = File.createTempFile("txtfnnl-", ".model");
+    try {
+      final String fingerprint = ReadlineRuntimePool.fingerprint("cat", model);
+      assertEquals(40, fingerprint.length());
+      assertEquals(fingerprint, ReadlineRuntimePool.fingerprint("cat", model));
+      assertFalse(fingerprint.equals(ReadlineRuntimePool.fingerprint("sh", model)));
+      final FileWriter out = new FileWriter(model);
+      out.write("changed");
+      out.close();
+      assertFalse(fingerprint.equals(ReadlineRuntimePool.fingerprint("cat", model)));
+    } finally {
+      model.delete();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testFingerprintMissingExecutable() throws IOException {
+    ReadlineRuntimePool.fingerprint("no-such-executable-txtfnnl");
+  }
+}
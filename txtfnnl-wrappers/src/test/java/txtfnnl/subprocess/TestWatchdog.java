@@ -0,0 +1,58 @@
+package txtfnnl.subprocess;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAFramework;
+
+public class TestWatchdog {
+  ReadlineRuntime<String> runtime;
+
+  @Before
+  public void setUp() throws IOException {
+    runtime = new TestReadlineRuntimePool.Echo(UIMAFramework.getLogger(TestWatchdog.class));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    runtime.stop();
+  }
+
+  @Test
+  public void testCancel() throws IOException, InterruptedException {
+    final long kills = Watchdog.getKills();
+    final Watchdog.Deadline deadline = Watchdog.watch(runtime, 50, TimeUnit.MILLISECONDS);
+    assertEquals("line", runtime.process("line"));
+    assertTrue(deadline.cancel());
+    Thread.sleep(100);
+    assertEquals(kills, Watchdog.getKills());
+    assertEquals("again", runtime.process("again"));
+  }
+
+  @Test
+  public void testCancelRemovesDeadline() {
+    final int scheduled = Watchdog.getScheduled();
+    final Watchdog.Deadline deadline = Watchdog.watch(runtime, 1, TimeUnit.HOURS);
+    assertEquals(scheduled + 1, Watchdog.getScheduled());
+    assertTrue(deadline.cancel());
+    assertEquals(scheduled, Watchdog.getScheduled());
+  }
+
+  @Test(expected = IOException.class)
+  public void testKill() throws IOException, InterruptedException {
+    final long timeouts = Watchdog.getTimeouts();
+    final long kills = Watchdog.getKills();
+    final Watchdog.Deadline deadline = Watchdog.watch(runtime, 10, TimeUnit.MILLISECONDS);
+    Thread.sleep(200);
+    assertFalse(deadline.cancel());
+    assertEquals(timeouts + 1, Watchdog.getTimeouts());
+    assertEquals(kills + 1, Watchdog.getKills());
+    runtime.process("dead");
+  }
+}
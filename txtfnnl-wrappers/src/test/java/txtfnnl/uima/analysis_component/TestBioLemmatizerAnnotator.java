@@ -1,6 +1,10 @@
 package txtfnnl.uima.analysis_component;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -38,6 +42,89 @@ public class TestBioLemmatizerAnnotator {
     Assert.assertTrue("success", true);
   }
 
+  @Test
+  public void testWarmUpCache() throws UIMAException, IOException {
+    final File list = File.createTempFile("lemma_frequencies_", ".tsv");
+    list.deleteOnExit();
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(list), "UTF-8");
+    writer.write("genes\tNNS\t1000\nwas\tVBD\t900\nbroken line\n");
+    writer.close();
+    BioLemmatizerAnnotator.CACHE.clear();
+    engine = AnalysisEngineFactory.createPrimitive(BioLemmatizerAnnotator.configure()
+        .setWarmUpFile(list).create());
+    Assert.assertEquals(2, BioLemmatizerAnnotator.CACHE.size());
+    Assert.assertEquals("gene", BioLemmatizerAnnotator.CACHE.get("genes\tnns"));
+    Assert.assertEquals("be", BioLemmatizerAnnotator.CACHE.get("was\tvbd"));
+  }
+
+  @Test
+  public void testProcessCASWithoutCache() throws UIMAException, IOException {
+    BioLemmatizerAnnotator.CACHE.clear();
+    engine = AnalysisEngineFactory.createPrimitive(BioLemmatizerAnnotator.configure()
+        .setCacheSize(0).create());
+    testProcessCAS();
+    Assert.assertEquals(0, BioLemmatizerAnnotator.CACHE.size());
+  }
+
+  @Test
+  public void testCacheSize() throws UIMAException, IOException {
+    engine = AnalysisEngineFactory.createPrimitive(BioLemmatizerAnnotator.configure()
+        .setCacheSize(10).create());
+    try {
+      Assert.assertEquals(10, BioLemmatizerAnnotator.CACHE.capacity());
+      testProcessCAS();
+      Assert.assertTrue(BioLemmatizerAnnotator.CACHE.size() <= 10);
+    } finally {
+      BioLemmatizerAnnotator.CACHE.setCapacity(BioLemmatizerAnnotator.DEFAULT_CACHE_SIZE);
+    }
+  }
+
+  @Test
+  public void testCacheEvictsLeastRecentlyUsed() {
+    final BioLemmatizerAnnotator.LemmaCache cache = new BioLemmatizerAnnotator.LemmaCache(2);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    Assert.assertEquals("1", cache.get("a"));
+    cache.put("c", "3");
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNull(cache.get("b"));
+    Assert.assertEquals("1", cache.get("a"));
+    cache.setCapacity(1);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals("1", cache.get("a"));
+  }
+
+  @Test
+  public void testConcurrentCache() throws InterruptedException {
+    final BioLemmatizerAnnotator.LemmaCache cache = new BioLemmatizerAnnotator.LemmaCache(100);
+    final Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      final int offset = t * 50;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 1000; ++i) {
+            final String key = Integer.toString((offset + i) % 300);
+            if (cache.get(key) == null) cache.put(key, key);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (final Thread thread : threads)
+      thread.join();
+    Assert.assertEquals(100, cache.size());
+    int found = 0;
+    for (int i = 0; i < 300; ++i) {
+      final String lemma = cache.get(Integer.toString(i));
+      if (lemma != null) {
+        Assert.assertEquals(Integer.toString(i), lemma);
+        found++;
+      }
+    }
+    Assert.assertEquals(100, found);
+  }
+
   @Test
   public void testProcessCAS() throws UIMAException, IOException {
     jcas = engine.newJCas();
@@ -0,0 +1,348 @@
+package txtfnnl.uima.analysis_component;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.FSArray;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.resource.DataResource;
+
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.ExternalResourceFactory;
+import org.uimafit.testing.util.DisableLogging;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.RankList;
+
+import txtfnnl.uima.cas.Property;
+import txtfnnl.uima.resource.CounterResource;
+import txtfnnl.uima.resource.RankerResource;
+import txtfnnl.uima.resource.StringCounterResource;
+import txtfnnl.uima.tcas.SemanticAnnotation;
+import txtfnnl.uima.tcas.TextAnnotation;
+import txtfnnl.utils.Offset;
+
+public class TestGeneRankAnnotator {
+  static final String GENE_NAMESPACE = "http://www.ncbi.nlm.nih.gov/gene/";
+  static final String TEXT =
+      "Human TP53 binds MDM2 in human cells, but mouse Trp53 and TP53 do not.";
+
+  /** A ranker that records the feature vectors and scores them with their sum. */
+  public static class FeatureRecorder implements RankerResource {
+    static double[][] features = null;
+
+    public void load(DataResource aData) {}
+
+    public RankList rank(RankList rl) {
+      throw new UnsupportedOperationException();
+    }
+
+    public double eval(DataPoint db) {
+      throw new UnsupportedOperationException();
+    }
+
+    public List<RankList> rank(List<RankList> rll) {
+      throw new UnsupportedOperationException();
+    }
+
+    public double[] eval(double[][] batch) {
+      features = batch;
+      final double[] scores = new double[batch.length];
+      for (int i = 0; i < batch.length; ++i)
+        for (final double f : batch[i])
+          scores[i] += f;
+      return scores;
+    }
+  }
+
+  Map<String, Integer> geneLinkCounts;
+  Map<String, Integer> symbolCounts;
+  Map<String, Map<String, Integer>> geneSymbolCounts;
+  JCas jcas;
+
+  @Before
+  public void setUp() throws UIMAException, IOException {
+    DisableLogging.enableLogging(Level.WARNING);
+    FeatureRecorder.features = null;
+    geneLinkCounts = new HashMap<String, Integer>();
+    geneLinkCounts.put("7157", 100);
+    geneLinkCounts.put("4193", 20);
+    symbolCounts = new HashMap<String, Integer>();
+    symbolCounts.put("TP53", 50);
+    symbolCounts.put("MDM2", 10);
+    symbolCounts.put("Trp53", 5);
+    geneSymbolCounts = new HashMap<String, Map<String, Integer>>();
+    geneSymbolCounts.put("7157", new HashMap<String, Integer>());
+    geneSymbolCounts.get("7157").put("TP53", 40);
+    geneSymbolCounts.put("4193", new HashMap<String, Integer>());
+    geneSymbolCounts.get("4193").put("MDM2", 8);
+    geneSymbolCounts.put("22059", new HashMap<String, Integer>());
+    geneSymbolCounts.get("22059").put("Trp53", 4);
+    jcas = createEngine().newJCas();
+    jcas.setDocumentText(TEXT);
+    final int tp53 = TEXT.indexOf("TP53"), mdm2 = TEXT.indexOf("MDM2");
+    addTaxon("9606", 0, 5);
+    addTaxon("9606", TEXT.indexOf("human"), TEXT.indexOf("human") + 5);
+    addTaxon("10090", TEXT.indexOf("mouse"), TEXT.indexOf("mouse") + 5);
+    addEntity("protein", tp53, tp53 + 4);
+    addEntity("DNA", mdm2, mdm2 + 4);
+    addGene("7157", "TP53", "9606", 1.0, tp53);
+    addGene("22059", "Trp53", "10090", 0.8, tp53);
+    addGene("4193", "MDM2", "9606", 0.9, mdm2);
+    addGene("22059", "Trp53", "10090", 1.0, TEXT.indexOf("Trp53"));
+    addGene("7157", "TP53", "9606", 1.0, TEXT.lastIndexOf("TP53"));
+    addGene("7157", "TP53", "9606", 0.7, TEXT.indexOf("cells"));
+  }
+
+  AnalysisEngine createEngine() throws UIMAException, IOException {
+    final GeneRankAnnotator.Builder builder = GeneRankAnnotator.configure(ExternalResourceFactory
+        .createExternalResourceDescription(FeatureRecorder.class, "file:ranker"));
+    builder.setGeneLinkCounts(CounterResource.configure(
+        writeCounts(geneLinkCounts, "gene_links_")).create());
+    builder.setSymbolCounts(CounterResource.configure(writeCounts(symbolCounts, "symbols_"))
+        .create());
+    final Map<String, Integer> pairs = new HashMap<String, Integer>();
+    for (final String geneId : geneSymbolCounts.keySet())
+      for (final Map.Entry<String, Integer> e : geneSymbolCounts.get(geneId).entrySet())
+        pairs.put(geneId + "\t" + e.getKey(), e.getValue());
+    builder.setGeneSymbolCounts(StringCounterResource.configure(
+        writeCounts(pairs, "gene_symbols_")).create());
+    builder.setNamespace(GENE_NAMESPACE);
+    builder.setAnnotatorUri(GeneAnnotator.URI);
+    builder.setTaxaAnnotatorUri(LinnaeusAnnotator.URI);
+    builder.setGeneAnnotatorUri(GeniaTaggerAnnotator.URI);
+    return AnalysisEngineFactory.createPrimitive(builder.create());
+  }
+
+  private static String writeCounts(Map<String, Integer> counts, String prefix)
+      throws IOException {
+    final File file = File.createTempFile(prefix, ".tsv");
+    file.deleteOnExit();
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    for (final Map.Entry<String, Integer> e : counts.entrySet())
+      writer.write(e.getKey() + "\t" + e.getValue() + "\n");
+    writer.close();
+    return "file:" + file.getAbsolutePath();
+  }
+
+  private void addTaxon(String taxId, int begin, int end) {
+    final SemanticAnnotation ann = new SemanticAnnotation(jcas, begin, end);
+    ann.setAnnotator(LinnaeusAnnotator.URI);
+    ann.setNamespace(LinnaeusAnnotator.DEFAULT_NAMESPACE);
+    ann.setIdentifier(taxId);
+    ann.setConfidence(1.0);
+    ann.addToIndexes();
+  }
+
+  private void addEntity(String type, int begin, int end) {
+    final SemanticAnnotation ann = new SemanticAnnotation(jcas, begin, end);
+    ann.setAnnotator(GeniaTaggerAnnotator.URI);
+    ann.setNamespace(GeniaTaggerAnnotator.ENTITY_NAMESPACE);
+    ann.setIdentifier(type);
+    ann.setConfidence(1.0);
+    ann.addToIndexes();
+  }
+
+  private void addGene(String geneId, String symbol, String taxId, double confidence, int begin) {
+    final SemanticAnnotation ann = new SemanticAnnotation(jcas, begin, begin + 4);
+    ann.setAnnotator(GeneAnnotator.URI);
+    ann.setNamespace(GENE_NAMESPACE);
+    ann.setIdentifier(geneId);
+    ann.setConfidence(confidence);
+    ann.addProperty(jcas, makeProperty("name", symbol));
+    ann.addProperty(jcas, makeProperty(GeneAnnotator.TAX_ID_PROPERTY, taxId));
+    ann.addToIndexes();
+  }
+
+  private Property makeProperty(String name, String value) {
+    final Property p = new Property(jcas);
+    p.setName(name);
+    p.setValue(value);
+    return p;
+  }
+
+  @Test
+  public void testFeaturesMatchReference() throws UIMAException, IOException {
+    final List<String> keys = new ArrayList<String>();
+    final double[][] expected = referenceFeatures(jcas, keys);
+    Assert.assertEquals(6, expected.length);
+    createEngine().process(jcas);
+    Assert.assertNotNull(FeatureRecorder.features);
+    Assert.assertEquals(expected.length, FeatureRecorder.features.length);
+    for (int i = 0; i < expected.length; ++i)
+      Assert.assertArrayEquals(keys.get(i), expected[i], FeatureRecorder.features[i], 1e-12);
+  }
+
+  @Test
+  public void testRanks() throws UIMAException, IOException {
+    createEngine().process(jcas);
+    final FSIterator<Annotation> it = jcas.createFilteredIterator(SemanticAnnotation
+        .getIterator(jcas), TextAnnotation.makeConstraint(jcas, GeneAnnotator.URI,
+        GENE_NAMESPACE));
+    int count = 0;
+    while (it.hasNext()) {
+      final FSArray props = ((SemanticAnnotation) it.next()).getProperties();
+      final Property rank = (Property) props.get(props.size() - 1);
+      Assert.assertEquals(RankedListAnnotator.RANK_PROPERTY, rank.getName());
+      Assert.assertTrue(Double.parseDouble(rank.getValue()) > 0.0);
+      count++;
+    }
+    Assert.assertEquals(6, count);
+  }
+
+  @Test
+  public void testNearestWithoutValues() {
+    Assert.assertEquals(Integer.MAX_VALUE, GeneRankAnnotator.nearest(new int[0], 5));
+  }
+
+  @Test
+  public void testNearestBeforeFirst() {
+    Assert.assertEquals(7, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 3));
+  }
+
+  @Test
+  public void testNearestAfterLast() {
+    Assert.assertEquals(5, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 25));
+  }
+
+  @Test
+  public void testNearestEqual() {
+    Assert.assertEquals(0, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 10));
+    Assert.assertEquals(0, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 20));
+    Assert.assertEquals(0, GeneRankAnnotator.nearest(new int[] { 10, 10, 10 }, 10));
+  }
+
+  @Test
+  public void testNearestBetween() {
+    Assert.assertEquals(4, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 16));
+    Assert.assertEquals(4, GeneRankAnnotator.nearest(new int[] { 10, 20 }, 14));
+    Assert.assertEquals(1, GeneRankAnnotator.nearest(new int[] { 10, 12, 12, 20 }, 11));
+  }
+
+  /**
+   * The feature extraction as originally implemented (with a map per counter and a linear scan
+   * over the taxon offsets), to compare the optimized extraction against.
+   */
+  private double[][] referenceFeatures(JCas jcas, List<String> keys) {
+    final FSIterator<Annotation> it = jcas.createFilteredIterator(SemanticAnnotation
+        .getIterator(jcas), TextAnnotation.makeConstraint(jcas, GeneAnnotator.URI,
+        GENE_NAMESPACE));
+    final List<double[]> data = new LinkedList<double[]>();
+    final Map<String, Integer> geneIds = new HashMap<String, Integer>();
+    final Map<String, Integer> names = new HashMap<String, Integer>();
+    final Map<String, Integer> geneIdNamePairs = new HashMap<String, Integer>();
+    final Map<String, Integer> links = new HashMap<String, Integer>();
+    final Map<String, Integer> symbols = new HashMap<String, Integer>();
+    final Map<String, Integer> geneIdSymbolPairs = new HashMap<String, Integer>();
+    final Map<Offset, Integer> ambiguity = new HashMap<Offset, Integer>();
+    while (it.hasNext()) {
+      final SemanticAnnotation ann = (SemanticAnnotation) it.next();
+      final String geneId = ann.getIdentifier();
+      final String name = ann.getCoveredText();
+      final String symbol = getProperty(ann, "name");
+      final String geneIdSymbol = String.format("%s:%s", geneId, symbol);
+      // the original implementation counted each gene ID twice, which the normalization cancels
+      increment(geneIds, geneId);
+      increment(geneIds, geneId);
+      increment(names, name);
+      increment(geneIdNamePairs, String.format("%s:%s", geneId, name));
+      increment(ambiguity, ann.getOffset());
+      if (!links.containsKey(geneId))
+        links.put(geneId, geneLinkCounts.containsKey(geneId) ? geneLinkCounts.get(geneId) : 0);
+      if (!symbols.containsKey(symbol))
+        symbols.put(symbol, symbolCounts.containsKey(symbol) ? symbolCounts.get(symbol) : 0);
+      if (!geneIdSymbolPairs.containsKey(geneIdSymbol)) {
+        if (geneSymbolCounts.containsKey(geneId) &&
+            geneSymbolCounts.get(geneId).containsKey(symbol))
+          geneIdSymbolPairs.put(geneIdSymbol, geneSymbolCounts.get(geneId).get(symbol));
+        else geneIdSymbolPairs.put(geneIdSymbol, 0);
+      }
+    }
+    final Map<String, List<Offset>> taxIds = new HashMap<String, List<Offset>>();
+    final FSIterator<Annotation> taxIt = jcas.createFilteredIterator(SemanticAnnotation
+        .getIterator(jcas), SemanticAnnotation.makeConstraint(jcas, LinnaeusAnnotator.URI,
+        LinnaeusAnnotator.DEFAULT_NAMESPACE));
+    while (taxIt.hasNext()) {
+      final SemanticAnnotation ann = (SemanticAnnotation) taxIt.next();
+      if (!taxIds.containsKey(ann.getIdentifier()))
+        taxIds.put(ann.getIdentifier(), new LinkedList<Offset>());
+      taxIds.get(ann.getIdentifier()).add(ann.getOffset());
+    }
+    final Map<Offset, String> geneNers = new HashMap<Offset, String>();
+    final FSIterator<Annotation> geneIt = jcas.createFilteredIterator(SemanticAnnotation
+        .getIterator(jcas), SemanticAnnotation.makeConstraint(jcas, GeniaTaggerAnnotator.URI,
+        GeniaTaggerAnnotator.ENTITY_NAMESPACE));
+    while (geneIt.hasNext()) {
+      final SemanticAnnotation ann = (SemanticAnnotation) geneIt.next();
+      geneNers.put(ann.getOffset(), ann.getIdentifier());
+    }
+    double normTaxIds = 0;
+    for (final List<Offset> offsets : taxIds.values())
+      normTaxIds = Math.max(normTaxIds, offsets.size());
+    it.moveToFirst();
+    while (it.hasNext()) {
+      final SemanticAnnotation ann = (SemanticAnnotation) it.next();
+      final String geneId = ann.getIdentifier();
+      final String name = ann.getCoveredText();
+      final Offset offset = ann.getOffset();
+      final String geneIdName = String.format("%s:%s", geneId, name);
+      final String symbol = getProperty(ann, "name");
+      final String taxId = getProperty(ann, GeneAnnotator.TAX_ID_PROPERTY);
+      int distance = Integer.MAX_VALUE;
+      for (final Offset taxOff : taxIds.get(taxId)) {
+        distance = Math.min(distance, Math.abs(taxOff.start() - offset.end()));
+        distance = Math.min(distance, Math.abs(offset.start() - taxOff.end()));
+      }
+      final String entityType = geneNers.get(offset);
+      data.add(new double[] { entityType == null ? 1.0 : 0.0,
+          "cell_line".equals(entityType) ? 1.0 : 0.0, "cell_type".equals(entityType) ? 1.0 : 0.0,
+          "DNA".equals(entityType) ? 1.0 : 0.0, "protein".equals(entityType) ? 1.0 : 0.0,
+          "RNA".equals(entityType) ? 1.0 : 0.0, ann.getConfidence(), 1.0 / distance,
+          1.0 / ambiguity.get(offset), geneIds.get(geneId) / max(geneIds),
+          names.get(name) / max(names), geneIdNamePairs.get(geneIdName) / max(geneIdNamePairs),
+          links.get(geneId) / max(links), symbols.get(symbol) / max(symbols),
+          geneIdSymbolPairs.get(String.format("%s:%s", geneId, symbol)) / max(geneIdSymbolPairs),
+          taxIds.get(taxId).size() / normTaxIds });
+      keys.add(geneIdName);
+    }
+    return data.toArray(new double[data.size()][]);
+  }
+
+  private static String getProperty(TextAnnotation ann, String name) {
+    String value = null;
+    final FSArray props = ann.getProperties();
+    for (int i = 0; i < props.size(); ++i) {
+      final Property p = (Property) props.get(i);
+      if (p.getName().equals(name)) value = p.getValue();
+    }
+    return value;
+  }
+
+  private static <K> void increment(Map<K, Integer> counts, K key) {
+    counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+  }
+
+  private static double max(Map<String, Integer> counts) {
+    int max = 0;
+    for (final int count : counts.values())
+      max = Math.max(max, count);
+    return max;
+  }
+}
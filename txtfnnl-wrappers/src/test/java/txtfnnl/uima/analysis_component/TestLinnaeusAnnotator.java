@@ -4,6 +4,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import org.junit.After;
@@ -12,6 +18,7 @@ import org.junit.Test;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
@@ -19,6 +26,7 @@ import org.apache.uima.jcas.tcas.Annotation;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.testing.util.DisableLogging;
 
+import txtfnnl.uima.resource.LinnaeusMatcherResource;
 import txtfnnl.uima.tcas.SemanticAnnotation;
 
 public class TestLinnaeusAnnotator {
@@ -77,4 +85,53 @@ public class TestLinnaeusAnnotator {
     }
     assertEquals(1, count);
   }
+
+  @Test
+  public final void testSharedMatcher() throws UIMAException {
+    config.setConfigurationFilePath(SPECIES);
+    getAnnotatedJCas();
+    final int loaded = LinnaeusMatcherResource.loaded();
+    getAnnotatedJCas();
+    assertEquals(loaded, LinnaeusMatcherResource.loaded());
+  }
+
+  @Test
+  public final void testConcurrentMatching() throws Exception {
+    final AnalysisEngineDescription aed = config.setConfigurationFilePath(PROXY).create();
+    final String text = "This is a murine human. ";
+    final StringBuilder document = new StringBuilder();
+    for (int i = 0; i < 100; ++i)
+      document.append(text);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    try {
+      for (int t = 0; t < 4; ++t) {
+        results.add(executor.submit(new Callable<Integer>() {
+          public Integer call() throws UIMAException {
+            final AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(aed);
+            int count = 0;
+            for (int i = 0; i < 10; ++i) {
+              final JCas jcas = engine.newJCas();
+              jcas.setDocumentText(document.toString());
+              engine.process(jcas);
+              final FSIterator<Annotation> iter = jcas.getAnnotationIndex(SemanticAnnotation.type)
+                  .iterator();
+              while (iter.hasNext()) {
+                final SemanticAnnotation ann = (SemanticAnnotation) iter.next();
+                final String id = "murine".equals(ann.getCoveredText()) ? "10090" : "9606";
+                assertEquals(id, ann.getIdentifier());
+                ++count;
+              }
+            }
+            engine.destroy();
+            return count;
+          }
+        }));
+      }
+      for (final Future<Integer> f : results)
+        assertEquals(10 * 2 * 100, f.get().intValue());
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
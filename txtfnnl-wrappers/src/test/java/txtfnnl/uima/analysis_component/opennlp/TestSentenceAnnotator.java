@@ -36,6 +36,19 @@ public class TestSentenceAnnotator {
     Assert.assertTrue("success", true);
   }
 
+  @Test
+  public void testSharedModel() throws UIMAException, IOException {
+    sentenceAnnotator = AnalysisEngineFactory.createPrimitive(SentenceAnnotator.configure()
+        .create());
+    final int loaded = SharedModels.size();
+    Assert.assertTrue(loaded > 0);
+    final AnalysisEngine replica = AnalysisEngineFactory.createPrimitive(SentenceAnnotator
+        .configure().splitOnSingleNewlines().create());
+    Assert.assertEquals(loaded, SharedModels.size());
+    replica.destroy();
+    processTest("This is one sentence.", " ");
+  }
+
   @Test
   public void testProcessCAS() throws UIMAException, IOException {
     sentenceAnnotator = AnalysisEngineFactory.createPrimitive(SentenceAnnotator.configure()
@@ -92,6 +105,46 @@ public class TestSentenceAnnotator {
     processTest("This is an open sentence", "\n");
   }
 
+  @Test
+  public void testLineByLineSplit() throws UIMAException, IOException {
+    sentenceAnnotator = AnalysisEngineFactory.createPrimitive(SentenceAnnotator.configure()
+        .splitLineByLine().create());
+    final JCas jcas = sentenceAnnotator.newJCas();
+    final String text = "  first line. Still first \r\n\n\u00a0\t\nsecond\nthird line.";
+    jcas.setDocumentText(text);
+    sentenceAnnotator.process(jcas);
+    final String[] sentences = { "first line. Still first", "second", "third line." };
+    int count = 0;
+    final FSIterator<Annotation> it = SentenceAnnotation.getIterator(jcas);
+    while (it.hasNext()) {
+      final SentenceAnnotation ann = (SentenceAnnotation) it.next();
+      Assert.assertEquals(sentences[count], ann.getCoveredText());
+      Assert.assertEquals(1.0, ann.getConfidence(), 0.0);
+      Assert.assertEquals(SentenceAnnotator.URI, ann.getAnnotator());
+      count++;
+    }
+    Assert.assertEquals(sentences.length, count);
+  }
+
+  @Test
+  public void testRepeatedLinesSplit() throws UIMAException, IOException {
+    sentenceAnnotator = AnalysisEngineFactory.createPrimitive(SentenceAnnotator.configure()
+        .splitOnSingleNewlines().create());
+    final JCas jcas = sentenceAnnotator.newJCas();
+    jcas.setDocumentText("A sentence.\nA sentence.\n\nA sentence.\n");
+    sentenceAnnotator.process(jcas);
+    final int[] begins = { 0, 12, 25 };
+    int count = 0;
+    final FSIterator<Annotation> it = SentenceAnnotation.getIterator(jcas);
+    while (it.hasNext()) {
+      final SentenceAnnotation ann = (SentenceAnnotation) it.next();
+      Assert.assertEquals(begins[count], ann.getBegin());
+      Assert.assertEquals("A sentence.", ann.getCoveredText());
+      count++;
+    }
+    Assert.assertEquals(begins.length, count);
+  }
+
   void processTest(String s1, String join) throws UIMAException, IOException {
     final String s2 = "And this is another sentence.";
     final Iterator<Integer> offsets = Arrays.asList(
@@ -59,7 +59,11 @@ public class TestTokenAnnotator {
 
   @Test
   public void testProcess() throws UIMAException, IOException {
-    annotator = AnalysisEngineFactory.createPrimitive(TokenAnnotator.configure().create());
+    checkProcess(TokenAnnotator.configure().create());
+  }
+
+  private void checkProcess(AnalysisEngineDescription aed) throws UIMAException, IOException {
+    annotator = AnalysisEngineFactory.createPrimitive(aed);
     jcas = annotator.newJCas();
     final String text = "This is a nice sentence. And this is another one.";
     final int[] beginPositions = { 0, 5, 8, 10, 15, 23, 25, 29, 34, 37, 45, 48 };
@@ -0,0 +1,78 @@
+package txtfnnl.uima.collection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPatternCounter {
+  File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = File.createTempFile("txtfnnl-", "-patterns");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+  }
+
+  @After
+  public void tearDown() {
+    for (final File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+
+  PatternCounter count(int maxPatterns, String... patterns) throws IOException {
+    final PatternCounter counter = new PatternCounter(dir, maxPatterns);
+    for (final String p : patterns)
+      counter.add(p);
+    return counter;
+  }
+
+  @Test
+  public void testCountInMemory() throws IOException {
+    final PatternCounter counter = count(10, "b", "a", "c", "a", "b", "a");
+    final StringWriter out = new StringWriter();
+    Assert.assertEquals(0, counter.runs());
+    Assert.assertEquals(3, counter.write(out));
+    Assert.assertEquals("3\ta\n2\tb\n1\tc\n", out.toString());
+    Assert.assertEquals(0, dir.listFiles().length);
+  }
+
+  @Test
+  public void testSpillAndMerge() throws IOException {
+    final PatternCounter counter = count(2, "b", "a", "c", "a", "b", "d", "a", "ä x\ny");
+    Assert.assertEquals(3, counter.runs());
+    Assert.assertEquals(3, dir.listFiles().length);
+    final StringWriter out = new StringWriter();
+    final StringWriter copy = new StringWriter();
+    Assert.assertEquals(5, counter.write(out, copy));
+    Assert.assertEquals("3\ta\n2\tb\n1\tc\n1\td\n1\tä x\ny\n", out.toString());
+    Assert.assertEquals(out.toString(), copy.toString());
+    Assert.assertEquals(0, dir.listFiles().length);
+  }
+
+  @Test
+  public void testReset() throws IOException {
+    final PatternCounter counter = count(1, "a", "b");
+    counter.write(new StringWriter());
+    counter.add("c");
+    final StringWriter out = new StringWriter();
+    Assert.assertEquals(1, counter.write(out));
+    Assert.assertEquals("1\tc\n", out.toString());
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    count(1, "a", "b", "c").close();
+    Assert.assertEquals(0, dir.listFiles().length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIllegalSize() {
+    new PatternCounter(dir, 0);
+  }
+}
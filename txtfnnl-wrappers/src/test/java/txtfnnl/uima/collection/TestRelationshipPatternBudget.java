@@ -0,0 +1,123 @@
+package txtfnnl.uima.collection;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.testing.util.DisableLogging;
+
+import txtfnnl.uima.tcas.TextAnnotation;
+import txtfnnl.utils.SetUtils;
+
+public class TestRelationshipPatternBudget {
+  RelationshipPatternLineWriter writer;
+  JCas jcas;
+
+  @Before
+  public void setUp() throws UIMAException, IOException {
+    DisableLogging.enableLogging(Level.WARNING);
+    writer = new RelationshipPatternLineWriter();
+    jcas = AnalysisEngineFactory.createPrimitive(
+        RelationshipPatternLineWriter.configure("http://purl.org/relationship/")).newJCas();
+  }
+
+  @Test
+  public void testBudget() {
+    final RelationshipPatternLineWriter.Budget budget = new RelationshipPatternLineWriter.Budget(
+        2, 0);
+    Assert.assertTrue(budget.allows(2));
+    Assert.assertTrue(budget.spend());
+    Assert.assertTrue(budget.spend());
+    Assert.assertFalse(budget.isExhausted());
+    Assert.assertFalse(budget.isTruncated());
+    Assert.assertFalse(budget.spend());
+    Assert.assertTrue(budget.isExhausted());
+    Assert.assertTrue(budget.isTruncated());
+  }
+
+  @Test
+  public void testTruncatedArrangements() {
+    final RelationshipPatternLineWriter.Budget budget = new RelationshipPatternLineWriter.Budget(
+        2, 0);
+    Assert.assertFalse(budget.allows(3));
+    Assert.assertTrue(budget.isTruncated());
+    Assert.assertFalse(budget.isExhausted());
+    Assert.assertTrue(budget.spend());
+  }
+
+  @Test
+  public void testPermutationsAfterTruncatedArrangements() {
+    final RelationshipPatternLineWriter.Budget budget = new RelationshipPatternLineWriter.Budget(
+        2, 0);
+    Assert.assertFalse(budget.allows(3));
+    Assert.assertTrue(budget.allows(1));
+    Assert.assertTrue(budget.allows(2));
+  }
+
+  @Test
+  public void testTruncatedPermutations() throws AnalysisEngineProcessException {
+    Assert.assertTrue(extractPermutations(new RelationshipPatternLineWriter.Budget(2, 0))
+        .isTruncated());
+    Assert.assertFalse(extractPermutations(new RelationshipPatternLineWriter.Budget(3, 0))
+        .isTruncated());
+  }
+
+  /** Extract the patterns of three permutations of a single entity. */
+  private RelationshipPatternLineWriter.Budget extractPermutations(
+      RelationshipPatternLineWriter.Budget budget) throws AnalysisEngineProcessException {
+    final String test = "This is, a sentence.";
+    jcas.reset();
+    jcas.setDocumentText(test);
+    final List<TextAnnotation> replacements = new LinkedList<TextAnnotation>();
+    for (final int[] offset : new int[][] { { 0, 4 }, { 0, 7 }, { 5, 7 } }) {
+      final TextAnnotation entity = new TextAnnotation(jcas, offset[0], offset[1]);
+      entity.setIdentifier("id");
+      entity.setNamespace("ns:");
+      replacements.add(entity);
+    }
+    final List<Annotation> spans = new LinkedList<Annotation>();
+    spans.add(new Annotation(jcas, 0, test.length()));
+    final Set<String> patterns = new HashSet<String>();
+    writer.addNounPhraseSkippedPatterns(patterns, spans, SetUtils.combinations(
+        Arrays.asList(replacements), new TextAnnotation[1]), budget);
+    Assert.assertFalse(budget.isExhausted());
+    Assert.assertFalse(patterns.isEmpty());
+    return budget;
+  }
+
+  @Test
+  public void testCountSignificantChars() {
+    Assert.assertArrayEquals(new int[] { 0, 1, 1, 1, 2, 2, 3, 3 },
+        RelationshipPatternLineWriter.countSignificantChars("a, b-c."));
+  }
+
+  @Test
+  public void testMinPatternLength() throws AnalysisEngineProcessException {
+    final String test = "This is, a sentence.";
+    jcas.setDocumentText(test);
+    final TextAnnotation entity = new TextAnnotation(jcas, 5, 7);
+    entity.setIdentifier("id");
+    entity.setNamespace("ns:");
+    final List<Annotation> spans = new LinkedList<Annotation>();
+    spans.add(new Annotation(jcas, 0, test.length()));
+    writer.significantChars = RelationshipPatternLineWriter.countSignificantChars(test);
+    final TextAnnotation[] entities = new TextAnnotation[] { entity };
+    final int min = writer.minPatternLength(entities, spans);
+    Assert.assertEquals(17, min);
+    Assert.assertTrue(min <= writer.extractPattern(entities, spans).length());
+  }
+}
@@ -0,0 +1,30 @@
+package txtfnnl.uima.resource;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ciir.umass.edu.learning.DataPoint;
+
+public class TestDenseDataPoint {
+  @Test
+  public void testFeatureValues() {
+    final double[] features = new double[] { 1.0, 0.0, 0.25, 1.0 / 3.0 };
+    final DataPoint parsed = new DataPoint("0 qid:1 1:1.00000000 2:0.00000000 3:0.25000000 " +
+        "4:0.33333333 # key");
+    final DataPoint dense = new DenseDataPoint(features);
+    assertEquals(parsed.getFeatureCount(), dense.getFeatureCount());
+    for (int i = 1; i <= features.length; ++i)
+      assertEquals(parsed.getFeatureValue(i), dense.getFeatureValue(i), 1e-7);
+  }
+
+  @Test
+  public void testSetFeatures() {
+    final DenseDataPoint dp = new DenseDataPoint(new double[] { 1.0, 2.0 });
+    dp.setFeatures(new double[] { 3.0, 4.0, 5.0 });
+    assertEquals(3.0f, dp.getFeatureValue(1), 0.0f);
+    assertEquals(5.0f, dp.getFeatureValue(3), 0.0f);
+    dp.setFeatures(new double[] { 6.0, 7.0, 8.0 });
+    assertEquals(6.0f, dp.getFeatureValue(1), 0.0f);
+  }
+}